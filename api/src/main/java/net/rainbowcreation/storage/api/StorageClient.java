@@ -1,6 +1,8 @@
 package net.rainbowcreation.storage.api;
 
 import net.rainbowcreation.storage.api.annotations.QLQuery;
+import net.rainbowcreation.storage.api.query.Query;
+import net.rainbowcreation.storage.api.utils.Futures;
 import net.rainbowcreation.storage.api.utils.SchemaScanner;
 
 import java.time.Duration;
@@ -42,10 +44,69 @@ public interface StorageClient {
 
     CompletableFuture<Void> delete(String namespace, String key);
 
+    // --- Batch (one round trip where the backend supports it, per-key fallback otherwise) ---
+    default <T> CompletableFuture<Map<String, Optional<T>>> getMany(String ns, Collection<String> keys, Class<T> type) {
+        return Futures.perKey(keys, k -> get(ns, k, type));
+    }
+
+    default CompletableFuture<Void> setMany(String ns, Map<String, ?> values) {
+        return Futures.forEachKey(values.keySet(), k -> set(ns, k, values.get(k)));
+    }
+
+    default CompletableFuture<Void> deleteMany(String ns, Collection<String> keys) {
+        return Futures.forEachKey(keys, k -> delete(ns, k));
+    }
+
+    // --- Atomic (the backend runs each as one operation) ---
+    // compareAndSet: null expected = key absent, null update = delete
+    default CompletableFuture<Long> increment(String ns, String key, long delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Double> increment(String ns, String key, double delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Boolean> compareAndSet(String ns, String key, Object expected, Object update) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    // Value stored under the key, after storing def if the key was absent
+    default <T> CompletableFuture<T> getOrInit(String ns, String key, Class<T> type, T def) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // JSON merge-patch (RFC 7396): changes is anything serializing to a JSON object, null fields remove
+    default CompletableFuture<Void> patch(String ns, String key, Object changes) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // Typed query on the indexed columns; queryCount ignores ordering, paging and projection
+    default <T> CompletableFuture<Optional<List<T>>> query(String ns, Query query, Class<T> type) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Optional<Integer>> queryCount(String ns, Query query) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
     default <T> CompletableFuture<T> getAsyncNullable(String ns, String key, Class<T> type) {
         return get(ns, key, type).thenApply(opt -> opt.orElse(null));
     }
 
+    // --- Primitives (def when missing; override to answer without Jackson, Optional or boxing) ---
+    default long getLongOr(String ns, String key, long def) {
+        Long v = getBlocking(ns, key, Long.class, Duration.ofMillis(500));
+        return (v != null) ? v : def;
+    }
+    default double getDoubleOr(String ns, String key, double def) {
+        Double v = getBlocking(ns, key, Double.class, Duration.ofMillis(500));
+        return (v != null) ? v : def;
+    }
+    default boolean getBoolOr(String ns, String key, boolean def) {
+        Boolean v = getBlocking(ns, key, Boolean.class, Duration.ofMillis(500));
+        return (v != null) ? v : def;
+    }
+    default CompletableFuture<Void> setLong(String ns, String key, long value) { return set(ns, key, value); }
+    default CompletableFuture<Void> setDouble(String ns, String key, double value) { return set(ns, key, value); }
+    default CompletableFuture<Void> setBool(String ns, String key, boolean value) { return set(ns, key, value); }
+
     // Blocking with timeout (return null if not found)
     default <T> T getBlocking(String ns, String key, Class<T> type, Duration timeout) {
         try {
@@ -7,4 +7,5 @@ import java.lang.annotation.RetentionPolicy;
 public @interface QLQuery {
     String namespace();
     String typeName() default ""; // optional
+    String codec() default "";    // value codec by name ("bin", ...), empty = the manager's valueCodec
 }
@@ -0,0 +1,251 @@
+package net.rainbowcreation.storage.api.codec;
+
+import net.rainbowcreation.storage.api.utils.JsonTypeCache;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of the same token stream Jackson writes as JSON, so any class that maps to JSON maps to this.
+ * Integers are zig-zag varints, floating point is raw IEEE bits, and a field name is spelled out once per value and
+ * referenced by index after that (lists of objects repeat every name otherwise). Built on {@link TokenBuffer}, no
+ * extra dependency.
+ */
+public final class BinaryCodec implements ValueCodec {
+    public static final String NAME = "bin";
+    public static final byte TAG = 1;
+
+    private static final int START_OBJECT = 1, END_OBJECT = 2, START_ARRAY = 3, END_ARRAY = 4;
+    private static final int NAME_NEW = 5, NAME_REF = 6;
+    private static final int STRING = 7, INT = 8, BIG_INT = 9, FLOAT = 10, DOUBLE = 11, BIG_DEC = 12;
+    private static final int TRUE = 13, FALSE = 14, NULL = 15, BINARY = 16;
+
+    private static final int MAX_NAMES = 1024; // names past this are spelled out every time
+
+    @Override
+    public String name() { return NAME; }
+
+    @Override
+    public byte tag() { return TAG; }
+
+    @Override
+    public byte[] encode(Object value, JsonTypeCache types) throws IOException {
+        TokenBuffer tokens = new TokenBuffer(types.mapper(), false);
+        types.writer(value).writeValue(tokens, value);
+
+        Out out = new Out();
+        Map<String, Integer> names = new HashMap<>();
+        try (JsonParser p = tokens.asParser()) {
+            for (JsonToken t; (t = p.nextToken()) != null; ) {
+                switch (t) {
+                    case START_OBJECT: out.write(START_OBJECT); break;
+                    case END_OBJECT: out.write(END_OBJECT); break;
+                    case START_ARRAY: out.write(START_ARRAY); break;
+                    case END_ARRAY: out.write(END_ARRAY); break;
+                    case FIELD_NAME:
+                        String name = p.getCurrentName();
+                        Integer ref = names.get(name);
+                        if (ref != null) {
+                            out.write(NAME_REF);
+                            out.varint(ref);
+                        } else {
+                            if (names.size() < MAX_NAMES) names.put(name, names.size());
+                            out.write(NAME_NEW);
+                            out.bytes(name.getBytes(StandardCharsets.UTF_8));
+                        }
+                        break;
+                    case VALUE_STRING:
+                        out.write(STRING);
+                        out.bytes(p.getText().getBytes(StandardCharsets.UTF_8));
+                        break;
+                    case VALUE_NUMBER_INT:
+                        if (p.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                            out.write(BIG_INT);
+                            out.bytes(p.getBigIntegerValue().toByteArray());
+                        } else {
+                            out.write(INT);
+                            out.varlong(zigzag(p.getLongValue()));
+                        }
+                        break;
+                    case VALUE_NUMBER_FLOAT:
+                        JsonParser.NumberType nt = p.getNumberType();
+                        if (nt == JsonParser.NumberType.BIG_DECIMAL) {
+                            BigDecimal d = p.getDecimalValue();
+                            out.write(BIG_DEC);
+                            out.varlong(zigzag(d.scale()));
+                            out.bytes(d.unscaledValue().toByteArray());
+                        } else if (nt == JsonParser.NumberType.FLOAT) {
+                            out.write(FLOAT);
+                            out.fixed(Float.floatToIntBits(p.getFloatValue()), 4);
+                        } else {
+                            out.write(DOUBLE);
+                            out.fixed(Double.doubleToLongBits(p.getDoubleValue()), 8);
+                        }
+                        break;
+                    case VALUE_TRUE: out.write(TRUE); break;
+                    case VALUE_FALSE: out.write(FALSE); break;
+                    case VALUE_NULL: out.write(NULL); break;
+                    case VALUE_EMBEDDED_OBJECT:
+                        Object o = p.getEmbeddedObject();
+                        if (o == null) {
+                            out.write(NULL);
+                        } else if (o instanceof byte[]) {
+                            out.write(BINARY);
+                            out.bytes((byte[]) o);
+                        } else {
+                            throw new IOException("Cannot encode embedded " + o.getClass().getName());
+                        }
+                        break;
+                    default:
+                        throw new IOException("Unexpected token " + t);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> type, JsonTypeCache types) throws IOException {
+        TokenBuffer tokens = new TokenBuffer(types.mapper(), false);
+        In in = new In(data, offset, offset + length);
+        List<String> names = new ArrayList<>();
+        while (in.more()) {
+            int op = in.read();
+            switch (op) {
+                case START_OBJECT: tokens.writeStartObject(); break;
+                case END_OBJECT: tokens.writeEndObject(); break;
+                case START_ARRAY: tokens.writeStartArray(); break;
+                case END_ARRAY: tokens.writeEndArray(); break;
+                case NAME_NEW:
+                    String name = in.string();
+                    if (names.size() < MAX_NAMES) names.add(name);
+                    tokens.writeFieldName(name);
+                    break;
+                case NAME_REF:
+                    int ref = (int) in.varlong();
+                    if (ref < 0 || ref >= names.size()) throw new IOException("Bad field name reference " + ref);
+                    tokens.writeFieldName(names.get(ref));
+                    break;
+                case STRING: tokens.writeString(in.string()); break;
+                case INT:
+                    long v = unzigzag(in.varlong());
+                    if (v == (int) v) tokens.writeNumber((int) v);
+                    else tokens.writeNumber(v);
+                    break;
+                case BIG_INT: tokens.writeNumber(new BigInteger(in.bytes())); break;
+                case FLOAT: tokens.writeNumber(Float.intBitsToFloat((int) in.fixed(4))); break;
+                case DOUBLE: tokens.writeNumber(Double.longBitsToDouble(in.fixed(8))); break;
+                case BIG_DEC:
+                    int scale = (int) unzigzag(in.varlong());
+                    tokens.writeNumber(new BigDecimal(new BigInteger(in.bytes()), scale));
+                    break;
+                case TRUE: tokens.writeBoolean(true); break;
+                case FALSE: tokens.writeBoolean(false); break;
+                case NULL: tokens.writeNull(); break;
+                case BINARY: tokens.writeBinary(in.bytes()); break;
+                default: throw new IOException("Unknown token " + op);
+            }
+        }
+        try (JsonParser p = tokens.asParser()) {
+            return types.reader(type).readValue(p);
+        }
+    }
+
+    private static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+    private static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+    private static final class Out {
+        private byte[] buf = new byte[64];
+        private int len;
+
+        void write(int b) {
+            if (len == buf.length) buf = Arrays.copyOf(buf, len * 2);
+            buf[len++] = (byte) b;
+        }
+
+        void varint(int v) { varlong(v & 0xFFFFFFFFL); }
+
+        void varlong(long v) {
+            while ((v & ~0x7FL) != 0) {
+                write((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            write((int) v);
+        }
+
+        void fixed(long v, int n) {
+            for (int i = n - 1; i >= 0; i--) write((int) (v >>> (i * 8)));
+        }
+
+        void bytes(byte[] b) {
+            varint(b.length);
+            if (len + b.length > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + b.length));
+            System.arraycopy(b, 0, buf, len, b.length);
+            len += b.length;
+        }
+
+        byte[] toByteArray() { return Arrays.copyOf(buf, len); }
+    }
+
+    private static final class In {
+        private final byte[] buf;
+        private int pos;
+        private final int end;
+
+        In(byte[] buf, int pos, int end) {
+            this.buf = buf;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        boolean more() { return pos < end; }
+
+        int read() throws IOException {
+            if (pos >= end) throw new IOException("Truncated value");
+            return buf[pos++] & 0xFF;
+        }
+
+        long varlong() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                v |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        long fixed(int n) throws IOException {
+            long v = 0;
+            for (int i = 0; i < n; i++) v = (v << 8) | read();
+            return v;
+        }
+
+        byte[] bytes() throws IOException {
+            long n = varlong();
+            if (n < 0 || n > end - pos) throw new IOException("Truncated value");
+            byte[] b = Arrays.copyOfRange(buf, pos, pos + (int) n);
+            pos += (int) n;
+            return b;
+        }
+
+        String string() throws IOException {
+            long n = varlong();
+            if (n < 0 || n > end - pos) throw new IOException("Truncated value");
+            String s = new String(buf, pos, (int) n, StandardCharsets.UTF_8);
+            pos += (int) n;
+            return s;
+        }
+    }
+}
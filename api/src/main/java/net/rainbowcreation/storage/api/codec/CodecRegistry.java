@@ -0,0 +1,98 @@
+package net.rainbowcreation.storage.api.codec;
+
+import net.rainbowcreation.storage.api.utils.JsonTypeCache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which codec writes each namespace, and which codec reads a stored value (by its tag, so a namespace can switch
+ * codec without rewriting what is already stored). The built-ins and every {@link ServiceLoader} provider are known
+ * by tag from the start, so values another server wrote read back here whatever this server writes with.
+ */
+public final class CodecRegistry {
+    private final JsonTypeCache types;
+    private final Map<String, ValueCodec> byNs = new ConcurrentHashMap<>();
+    private final ValueCodec[] byTag = new ValueCodec[128];
+    private volatile ValueCodec fallback = JsonCodec.INSTANCE;
+
+    public CodecRegistry(JsonTypeCache types) {
+        this.types = types;
+        add(JsonCodec.INSTANCE);
+        add(new BinaryCodec());
+        try {
+            for (ValueCodec c : ServiceLoader.load(ValueCodec.class, ValueCodec.class.getClassLoader())) {
+                try {
+                    add(c);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("[CodecRegistry] WARN: " + e.getMessage() + ", provider ignored");
+                }
+            }
+        } catch (ServiceConfigurationError ignored) {
+            // broken provider entry, the built-ins still read
+        }
+    }
+
+    /** Codec for namespaces without one of their own. */
+    public void setDefault(ValueCodec codec) {
+        fallback = add(codec);
+    }
+
+    public void use(String ns, ValueCodec codec) {
+        byNs.put(ns, add(codec));
+    }
+
+    public ValueCodec codecFor(String ns) {
+        return byNs.getOrDefault(ns, fallback);
+    }
+
+    /** Whether values of {@code ns} are plain JSON the master can query, patch and increment. */
+    public boolean isJson(String ns) {
+        return codecFor(ns).tag() == 0;
+    }
+
+    /** Stored bytes of {@code value} in the codec of {@code ns}. */
+    public byte[] encode(String ns, Object value) throws IOException {
+        ValueCodec codec = codecFor(ns);
+        byte[] payload = codec.encode(value, types);
+        if (codec.tag() == 0) return payload;
+        byte[] out = new byte[payload.length + 2];
+        out[1] = codec.tag();
+        System.arraycopy(payload, 0, out, 2, payload.length);
+        return out;
+    }
+
+    /**
+     * Value from stored bytes, whichever codec wrote them. JSON never starts with 0x00.
+     * @throws IllegalStateException when the value was written by a codec not registered here
+     */
+    public <T> T decode(byte[] raw, Class<T> type) throws IOException {
+        if (raw.length < 2 || raw[0] != 0) return JsonCodec.INSTANCE.decode(raw, 0, raw.length, type, types);
+        return codecOf(raw).decode(raw, 2, raw.length - 2, type, types);
+    }
+
+    /** Fails when {@code raw} is tagged by a codec this registry does not know; untagged JSON always passes. */
+    public void checkReadable(byte[] raw) {
+        if (raw.length >= 2 && raw[0] == 0) codecOf(raw);
+    }
+
+    private ValueCodec codecOf(byte[] raw) {
+        ValueCodec codec = (raw[1] > 0) ? byTag[raw[1]] : null;
+        if (codec == null) throw new IllegalStateException("Value written by codec tag " + raw[1] + ", which is not registered here");
+        return codec;
+    }
+
+    private synchronized ValueCodec add(ValueCodec codec) {
+        int tag = codec.tag();
+        if (tag < 0) throw new IllegalArgumentException("Codec tag out of range: " + codec.name());
+        ValueCodec known = byTag[tag];
+        if (known != null && !known.name().equalsIgnoreCase(codec.name())) {
+            throw new IllegalArgumentException("Codec tag " + tag + " of " + codec.name() + " is taken by " + known.name());
+        }
+        if (known == null) byTag[tag] = codec;
+        return (known != null) ? known : codec;
+    }
+}
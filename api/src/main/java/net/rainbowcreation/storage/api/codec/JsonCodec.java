@@ -0,0 +1,27 @@
+package net.rainbowcreation.storage.api.codec;
+
+import net.rainbowcreation.storage.api.utils.JsonTypeCache;
+
+import java.io.IOException;
+
+/** Plain UTF-8 JSON, stored without a tag header. */
+public final class JsonCodec implements ValueCodec {
+    public static final String NAME = "json";
+    public static final JsonCodec INSTANCE = new JsonCodec();
+
+    @Override
+    public String name() { return NAME; }
+
+    @Override
+    public byte tag() { return 0; }
+
+    @Override
+    public byte[] encode(Object value, JsonTypeCache types) throws IOException {
+        return types.writer(value).writeValueAsBytes(value);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, int offset, int length, Class<T> type, JsonTypeCache types) throws IOException {
+        return types.reader(type).readValue(data, offset, length);
+    }
+}
@@ -0,0 +1,39 @@
+package net.rainbowcreation.storage.api.codec;
+
+import net.rainbowcreation.storage.api.utils.JsonTypeCache;
+
+import java.io.IOException;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * How values are turned into stored bytes. JSON is the default and the only format the master can look into
+ * (queries, PATCH, INCR); other codecs suit values that are only ever read back by key.
+ * Non-JSON values are stored as {@code 0x00, tag, payload} so readers pick the right codec whatever wrote them.
+ * Implementations are discovered with {@link ServiceLoader} (META-INF/services) and picked by {@link #name()}.
+ */
+public interface ValueCodec {
+    String name();
+
+    /** Identifies the codec inside stored values, 1..127; 0 is reserved for untagged JSON. */
+    byte tag();
+
+    /** Payload only, without the tag header. */
+    byte[] encode(Object value, JsonTypeCache types) throws IOException;
+
+    <T> T decode(byte[] data, int offset, int length, Class<T> type, JsonTypeCache types) throws IOException;
+
+    /** The codec registered under {@code name}, falling back to the built-ins ("json", "bin"). */
+    static ValueCodec load(String name) {
+        try {
+            for (ValueCodec c : ServiceLoader.load(ValueCodec.class, ValueCodec.class.getClassLoader())) {
+                if (c.name().equalsIgnoreCase(name)) return c;
+            }
+        } catch (ServiceConfigurationError ignored) {
+            // broken provider entry (e.g. relocated by shading), use the built-ins
+        }
+        if (BinaryCodec.NAME.equalsIgnoreCase(name)) return new BinaryCodec();
+        if (JsonCodec.NAME.equalsIgnoreCase(name)) return JsonCodec.INSTANCE;
+        throw new IllegalArgumentException("Unknown value codec: " + name);
+    }
+}
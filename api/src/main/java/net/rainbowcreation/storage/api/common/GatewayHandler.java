@@ -1,7 +1,12 @@
 package net.rainbowcreation.storage.api.common;
 
 import net.rainbowcreation.storage.api.ModelField;
+import net.rainbowcreation.storage.api.query.Query;
+import net.rainbowcreation.storage.api.utils.Futures;
 
+import java.nio.charset.StandardCharsets;
+
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -36,6 +41,64 @@ public interface GatewayHandler {
 
     CompletableFuture<Void> set(String ns, String key, String json);
     CompletableFuture<Void> delete(String ns, String key);
+
+    // --- Raw values (UTF-8 JSON bytes) ---
+    default CompletableFuture<Optional<byte[]>> getRaw(String ns, String key) {
+        return get(ns, key).thenApply(v -> v.map(s -> s.getBytes(StandardCharsets.UTF_8)));
+    }
+    default CompletableFuture<Optional<byte[]>> getRaw(String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset) {
+        return get(ns, filters, selections, limit, offset).thenApply(v -> v.map(s -> s.getBytes(StandardCharsets.UTF_8)));
+    }
+    default CompletableFuture<Void> setRaw(String ns, String key, byte[] value) {
+        return set(ns, key, new String(value, StandardCharsets.UTF_8));
+    }
+
+    // --- Batch (per-key fallback, override to send a single request) ---
+    default CompletableFuture<Map<String, Optional<String>>> getMany(String ns, Collection<String> keys) {
+        return Futures.perKey(keys, k -> get(ns, k));
+    }
+    default CompletableFuture<Void> setMany(String ns, Map<String, String> jsonByKey) {
+        return Futures.forEachKey(jsonByKey.keySet(), k -> set(ns, k, jsonByKey.get(k)));
+    }
+    default CompletableFuture<Void> deleteMany(String ns, Collection<String> keys) {
+        return Futures.forEachKey(keys, k -> delete(ns, k));
+    }
+    default CompletableFuture<Map<String, Optional<byte[]>>> getManyRaw(String ns, Collection<String> keys) {
+        return Futures.perKey(keys, k -> getRaw(ns, k));
+    }
+    default CompletableFuture<Void> setManyRaw(String ns, Map<String, byte[]> valueByKey) {
+        return Futures.forEachKey(valueByKey.keySet(), k -> setRaw(ns, k, valueByKey.get(k)));
+    }
+
+    // --- Atomic (the master runs each as one operation) ---
+    // Values are UTF-8 JSON; null expected = key absent, null update = delete
+    default CompletableFuture<Long> increment(String ns, String key, long delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Double> increment(String ns, String key, double delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Boolean> compareAndSet(String ns, String key, byte[] expected, byte[] update) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    // Value stored under the key, after storing def if the key was absent
+    default CompletableFuture<byte[]> getOrInit(String ns, String key, byte[] def) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // JSON merge-patch (RFC 7396) of the stored value
+    default CompletableFuture<Void> patch(String ns, String key, byte[] patch) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // Typed query: JSON array of rows, or the number of matching rows
+    default CompletableFuture<Optional<byte[]>> query(String ns, Query query) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Optional<Integer>> queryCount(String ns, Query query) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
     void registerModel(String ns, String typeName, Map<String, ModelField> fields);
     boolean flushAndAwait(long timeoutMs);
     void shutdown();
@@ -0,0 +1,23 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A single HTTP exchange handed to an {@link HttpTransport}.
+ */
+public final class HttpRequest {
+    public final String method;
+    public final String url;
+    public final Map<String, String> headers;
+    public final byte[] body;      // null when the request has no body
+    public final long timeoutMs;   // whole exchange, 0 = no deadline
+
+    public HttpRequest(String method, String url, Map<String, String> headers, byte[] body, long timeoutMs) {
+        this.method = method;
+        this.url = url;
+        this.headers = (headers != null) ? headers : Collections.<String, String>emptyMap();
+        this.body = body;
+        this.timeoutMs = timeoutMs;
+    }
+}
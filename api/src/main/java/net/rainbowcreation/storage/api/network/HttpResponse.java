@@ -0,0 +1,24 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Status, headers and the complete (still content-encoded) body of an HTTP response.
+ */
+public final class HttpResponse {
+    public final int status;
+    public final byte[] body;
+    private final Map<String, String> headers; // lower-case names
+
+    public HttpResponse(int status, Map<String, String> headers, byte[] body) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /** Header value by case-insensitive name, or null. */
+    public String header(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+}
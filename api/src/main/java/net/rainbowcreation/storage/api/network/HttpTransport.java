@@ -0,0 +1,34 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * HTTP client used by API_CLIENT mode.
+ * Implementations are discovered with {@link ServiceLoader} (META-INF/services) and picked by {@link #name()};
+ * the built-ins are "nio" (keep-alive pool on the shared selector loop) and "url" (HttpURLConnection).
+ */
+public interface HttpTransport {
+    String name();
+
+    /** Send the request; the future completes with any status, and fails only when no response was received. */
+    CompletableFuture<HttpResponse> send(HttpRequest request);
+
+    // Open connections allowed per host, further requests queue until one is free
+    default void setMaxConnections(int max) {}
+
+    default void close() {}
+
+    /** The transport registered under {@code name}, falling back to the built-in ones. */
+    static HttpTransport load(String name) {
+        try {
+            for (HttpTransport t : ServiceLoader.load(HttpTransport.class, HttpTransport.class.getClassLoader())) {
+                if (t.name().equalsIgnoreCase(name)) return t;
+            }
+        } catch (ServiceConfigurationError ignored) {
+            // broken provider entry (e.g. relocated by shading), use the built-ins
+        }
+        return "url".equalsIgnoreCase(name) ? new UrlConnectionTransport() : new NioHttpTransport();
+    }
+}
@@ -0,0 +1,140 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single selector thread that multiplexes any number of non-blocking connections.
+ * All channel I/O and handler callbacks run on the loop thread, so handlers need no locking.
+ */
+public final class NioEventLoop implements Runnable {
+    public static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static NioEventLoop shared;
+
+    /** The process-wide loop used by messengers that were not given their own. */
+    public static synchronized NioEventLoop shared() {
+        if (shared == null || !shared.running) shared = new NioEventLoop("SGW-NIO-Loop");
+        return shared;
+    }
+
+    /** Callbacks invoked on the loop thread for a registered channel. */
+    public interface Handler {
+        void onConnectable(SelectionKey key);
+        void onReadable(SelectionKey key);
+        void onWritable(SelectionKey key);
+    }
+
+    private static final class Timer implements Comparable<Timer> {
+        final long deadline;
+        final Runnable task;
+        Timer(long deadline, Runnable task) { this.deadline = deadline; this.task = task; }
+        public int compareTo(Timer o) { return Long.compare(deadline, o.deadline); }
+    }
+
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<>(); // loop thread only
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE); // shared by all channels on this loop
+    private volatile boolean running = true;
+
+    public NioEventLoop(String name) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open selector", e);
+        }
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /** Run a task on the loop thread. Safe to call from any thread. */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inLoop() && wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    /** Run a task on the loop thread after the given delay. */
+    public void schedule(Runnable task, long delayMs) {
+        long deadline = System.currentTimeMillis() + delayMs;
+        execute(() -> timers.add(new Timer(deadline, task)));
+    }
+
+    /** Register a channel with this loop's selector. Must be called on the loop thread. */
+    public SelectionKey register(SelectableChannel ch, int ops, Handler handler) throws IOException {
+        return ch.register(selector, ops, handler);
+    }
+
+    /** Scratch buffer for reads. Only valid inside a handler callback. */
+    public ByteBuffer readBuffer() {
+        readBuffer.clear();
+        return readBuffer;
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                long timeout = 0;
+                if (!timers.isEmpty()) timeout = Math.max(1, timers.peek().deadline - System.currentTimeMillis());
+                selector.select(timeout);
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    Handler h = (Handler) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) h.onConnectable(key);
+                        if (key.isValid() && key.isReadable()) h.onReadable(key);
+                        if (key.isValid() && key.isWritable()) h.onWritable(key);
+                    } catch (CancelledKeyException ignored) {}
+                }
+
+                Runnable task;
+                while ((task = tasks.poll()) != null) runSafely(task);
+
+                long now = System.currentTimeMillis();
+                while (!timers.isEmpty() && timers.peek().deadline <= now) runSafely(timers.poll().task);
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (Throwable t) {
+                System.err.println("[NioEventLoop] WARN: " + t);
+            }
+        }
+        try { selector.close(); } catch (IOException ignored) {}
+    }
+
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable t) {
+            System.err.println("[NioEventLoop] WARN: Task failed: " + t);
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URL;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Non-blocking HTTP/1.1 client on the shared {@link NioEventLoop}.
+ * Connections are kept alive and pooled per host (bounded by {@link #setMaxConnections}); requests over the
+ * limit wait in the pool's queue and responses complete their futures straight from the loop.
+ * Plain http only, https requests go to a {@link UrlConnectionTransport}.
+ */
+public class NioHttpTransport implements HttpTransport {
+    protected static final int MAX_HEAD_SIZE = 64 * 1024;
+    protected static final int MAX_BODY_SIZE = 64 * 1024 * 1024;
+
+    private NioEventLoop loop; // resolved on first use so merely discovering the provider starts no thread
+    private final UrlConnectionTransport tls = new UrlConnectionTransport();
+    private volatile int maxConnections = 8;
+
+    // --- Loop thread state ---
+    private final Map<String, Pool> pools = new HashMap<>();
+
+    public NioHttpTransport() {}
+
+    public NioHttpTransport(NioEventLoop loop) {
+        this.loop = loop;
+    }
+
+    @Override
+    public String name() {
+        return "nio";
+    }
+
+    @Override
+    public void setMaxConnections(int max) {
+        this.maxConnections = Math.max(1, max);
+        tls.setMaxConnections(max);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> send(HttpRequest request) {
+        URL url;
+        try {
+            url = new URL(request.url);
+        } catch (IOException e) {
+            CompletableFuture<HttpResponse> f = new CompletableFuture<>();
+            f.completeExceptionally(e);
+            return f;
+        }
+        if (!"http".equalsIgnoreCase(url.getProtocol())) return tls.send(request);
+
+        String host = url.getHost();
+        int port = (url.getPort() >= 0) ? url.getPort() : 80;
+        Exchange ex = new Exchange(request, encode(request, url, host, port));
+        NioEventLoop l = loop();
+        if (request.timeoutMs > 0) {
+            ex.timeout = TimingWheel.shared().schedule(() -> l.execute(() -> ex.expire(request.timeoutMs)), request.timeoutMs);
+        }
+        l.execute(() -> pool(host, port).dispatch(ex));
+        return ex.future;
+    }
+
+    @Override
+    public void close() {
+        NioEventLoop l;
+        synchronized (this) { l = loop; }
+        if (l != null) l.execute(() -> {
+            for (Pool p : pools.values()) p.closeAll();
+            pools.clear();
+        });
+        tls.close();
+    }
+
+    private synchronized NioEventLoop loop() {
+        if (loop == null) loop = NioEventLoop.shared();
+        return loop;
+    }
+
+    private Pool pool(String host, int port) {
+        return pools.computeIfAbsent(host + ':' + port, k -> new Pool(host, port));
+    }
+
+    private static byte[] encode(HttpRequest r, URL url, String host, int port) {
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(r.method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(host);
+        if (port != 80) sb.append(':').append(port);
+        sb.append("\r\nConnection: keep-alive\r\n");
+        for (Map.Entry<String, String> h : r.headers.entrySet()) sb.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
+        if (r.body != null || "POST".equals(r.method) || "PUT".equals(r.method)) {
+            sb.append("Content-Length: ").append(r.body != null ? r.body.length : 0).append("\r\n");
+        }
+        sb.append("\r\n");
+        byte[] head = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+        if (r.body == null || r.body.length == 0) return head;
+        byte[] out = new byte[head.length + r.body.length];
+        System.arraycopy(head, 0, out, 0, head.length);
+        System.arraycopy(r.body, 0, out, head.length, r.body.length);
+        return out;
+    }
+
+    /** One request/response; touched only on the loop thread after creation. */
+    private static final class Exchange {
+        final HttpRequest request;
+        final byte[] bytes;
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        TimingWheel.Timeout timeout;
+        Pool pool;
+        Conn conn;
+        boolean retried;
+
+        Exchange(HttpRequest request, byte[] bytes) {
+            this.request = request;
+            this.bytes = bytes;
+        }
+
+        void expire(long timeoutMs) {
+            if (future.isDone()) return;
+            future.completeExceptionally(new TimeoutException(request.method + " " + request.url + " timed out after " + timeoutMs + "ms"));
+            if (conn != null) conn.close(); // response may still be on its way, the connection cannot be reused
+            else if (pool != null) pool.waiting.remove(this);
+        }
+
+        void complete(HttpResponse response) {
+            if (timeout != null) timeout.cancel();
+            future.complete(response);
+        }
+
+        void fail(Throwable t) {
+            if (timeout != null) timeout.cancel();
+            future.completeExceptionally(t);
+        }
+    }
+
+    private final class Pool {
+        final InetSocketAddress address;
+        final ArrayDeque<Conn> idle = new ArrayDeque<>();
+        final ArrayDeque<Exchange> waiting = new ArrayDeque<>();
+        int open;
+
+        Pool(String host, int port) {
+            this.address = new InetSocketAddress(host, port);
+        }
+
+        void dispatch(Exchange ex) {
+            if (ex.future.isDone()) return;
+            ex.pool = this;
+            Conn c = idle.pollLast(); // most recently used, least likely to have been closed by the server
+            if (c != null) {
+                c.start(ex);
+            } else if (open < maxConnections) {
+                open++;
+                new Conn(this).connect(ex);
+            } else {
+                waiting.add(ex);
+            }
+        }
+
+        // Called with a connection that finished its exchange and may be reused
+        void release(Conn c) {
+            Exchange next = nextWaiting();
+            if (next != null) c.start(next);
+            else idle.add(c);
+        }
+
+        void closed(Conn c) {
+            open--;
+            idle.remove(c);
+            Exchange next = nextWaiting();
+            if (next != null) dispatch(next);
+        }
+
+        private Exchange nextWaiting() {
+            Exchange ex;
+            while ((ex = waiting.poll()) != null && ex.future.isDone()) { } // skip timed-out ones
+            return ex;
+        }
+
+        void closeAll() {
+            for (Conn c : new ArrayList<>(idle)) c.close();
+            for (Exchange ex : waiting) ex.fail(new IOException("HTTP transport closed"));
+            waiting.clear();
+        }
+    }
+
+    private final class Conn implements NioEventLoop.Handler {
+        final Pool pool;
+        final ResponseParser parser = new ResponseParser();
+        SocketChannel channel;
+        SelectionKey key;
+        Exchange ex;
+        ByteBuffer out;
+        boolean reused;
+        boolean closed;
+
+        Conn(Pool pool) {
+            this.pool = pool;
+        }
+
+        void connect(Exchange first) {
+            ex = first;
+            first.conn = this;
+            out = ByteBuffer.wrap(first.bytes);
+            parser.reset("HEAD".equals(first.request.method));
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                boolean done = channel.connect(pool.address);
+                key = loop.register(channel, done ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, this);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        void start(Exchange next) {
+            ex = next;
+            next.conn = this;
+            reused = true;
+            out = ByteBuffer.wrap(next.bytes);
+            parser.reset("HEAD".equals(next.request.method));
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+
+        @Override
+        public void onConnectable(SelectionKey key) {
+            try {
+                if (channel.finishConnect()) key.interestOps(SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onWritable(SelectionKey key) {
+            try {
+                channel.write(out);
+                if (!out.hasRemaining()) key.interestOps(SelectionKey.OP_READ);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void onReadable(SelectionKey key) {
+            try {
+                ByteBuffer rb = loop.readBuffer();
+                int n;
+                while ((n = channel.read(rb)) > 0) {
+                    rb.flip();
+                    if (ex == null) throw new IOException("Unexpected data on idle connection");
+                    boolean done = parser.feed(rb);
+                    rb.clear();
+                    if (done) {
+                        finish();
+                        if (closed || ex == null) return;
+                    }
+                }
+                if (n < 0) {
+                    if (ex != null && parser.endOfStream()) finish();
+                    else throw new IOException("Connection closed by server");
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void finish() {
+            Exchange done = ex;
+            ex = null;
+            done.conn = null;
+            HttpResponse response = parser.response();
+            if (parser.keepAlive && !closed) pool.release(this);
+            else close();
+            done.complete(response);
+        }
+
+        private void fail(IOException e) {
+            Exchange failed = ex;
+            boolean retry = failed != null && reused && !failed.retried && parser.nothingReceived() && idempotent(failed.request.method);
+            ex = null;
+            close();
+            if (failed == null || failed.future.isDone()) return;
+            failed.conn = null;
+            if (retry) {
+                // The server dropped an idle keep-alive connection just as we reused it; one retry on a fresh socket.
+                // Only for methods that are safe to send twice: the server may have acted on the request before closing
+                failed.retried = true;
+                pool.dispatch(failed);
+            } else {
+                failed.fail(e);
+            }
+        }
+
+        private boolean idempotent(String method) {
+            return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method) || "DELETE".equals(method);
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            if (key != null) key.cancel();
+            if (channel != null) {
+                try { channel.close(); } catch (IOException ignored) {}
+            }
+            pool.closed(this);
+        }
+    }
+
+    /** Incremental HTTP/1.1 response decoder: Content-Length, chunked, or read-until-close bodies. */
+    static final class ResponseParser {
+        private static final int HEAD = 0, BODY = 1, CHUNK_SIZE = 2, CHUNK_DATA = 3, CHUNK_END = 4, TRAILER = 5, UNTIL_CLOSE = 6, DONE = 7;
+
+        private final ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final StringBuilder line = new StringBuilder();
+        private final byte[] scratch = new byte[8192];
+        private int state;
+        private int match;      // progress through the CRLFCRLF that ends the head
+        private long remaining; // body or chunk bytes still expected
+        private boolean headRequest;
+        private boolean received;
+        private int status;
+        private Map<String, String> headers;
+        boolean keepAlive;
+
+        void reset(boolean headRequest) {
+            this.headRequest = headRequest;
+            head.reset();
+            body.reset();
+            line.setLength(0);
+            state = HEAD;
+            match = 0;
+            received = false;
+            headers = null;
+        }
+
+        boolean nothingReceived() {
+            return !received;
+        }
+
+        /** Consume bytes; true once the response is complete. */
+        boolean feed(ByteBuffer in) throws IOException {
+            if (in.hasRemaining()) received = true;
+            while (in.hasRemaining() && state != DONE) {
+                switch (state) {
+                    case HEAD:
+                        byte b = in.get();
+                        head.write(b);
+                        if (head.size() > MAX_HEAD_SIZE) throw new IOException("Response head too large");
+                        match = (b == (match % 2 == 0 ? '\r' : '\n')) ? match + 1 : (b == '\r' ? 1 : 0);
+                        if (match == 4) parseHead();
+                        break;
+
+                    case BODY:
+                    case CHUNK_DATA:
+                        int n = (int) Math.min(in.remaining(), remaining);
+                        copy(in, n);
+                        remaining -= n;
+                        if (remaining == 0) state = (state == BODY) ? DONE : CHUNK_END;
+                        break;
+
+                    case UNTIL_CLOSE:
+                        copy(in, in.remaining());
+                        break;
+
+                    default: // CHUNK_SIZE, CHUNK_END, TRAILER are line based
+                        if (!readLine(in)) break;
+                        String l = line.toString();
+                        line.setLength(0);
+                        if (state == CHUNK_SIZE) {
+                            int semi = l.indexOf(';');
+                            long size;
+                            try {
+                                size = Long.parseLong((semi >= 0 ? l.substring(0, semi) : l).trim(), 16);
+                            } catch (NumberFormatException e) {
+                                throw new IOException("Bad chunk size: " + l);
+                            }
+                            if (size == 0) state = TRAILER;
+                            else {
+                                remaining = size;
+                                state = CHUNK_DATA;
+                            }
+                        } else if (state == CHUNK_END) {
+                            state = CHUNK_SIZE;
+                        } else if (l.isEmpty()) { // end of trailers
+                            state = DONE;
+                        }
+                }
+            }
+            return state == DONE;
+        }
+
+        /** The server closed the connection; true if that legitimately ends the body. */
+        boolean endOfStream() {
+            if (state == UNTIL_CLOSE) state = DONE;
+            return state == DONE;
+        }
+
+        HttpResponse response() {
+            return new HttpResponse(status, headers, body.toByteArray());
+        }
+
+        // The loop's read buffer is direct, so body bytes go through a small heap scratch array
+        private void copy(ByteBuffer in, int n) throws IOException {
+            if (body.size() + n > MAX_BODY_SIZE) throw new IOException("Response body too large");
+            while (n > 0) {
+                int k = Math.min(n, scratch.length);
+                in.get(scratch, 0, k);
+                body.write(scratch, 0, k);
+                n -= k;
+            }
+        }
+
+        private boolean readLine(ByteBuffer in) throws IOException {
+            while (in.hasRemaining()) {
+                char c = (char) (in.get() & 0xFF);
+                if (c == '\n') return true;
+                if (c != '\r') line.append(c);
+                if (line.length() > MAX_HEAD_SIZE) throw new IOException("Response line too long");
+            }
+            return false;
+        }
+
+        private void parseHead() throws IOException {
+            String[] lines = new String(head.toByteArray(), StandardCharsets.ISO_8859_1).split("\r\n");
+            String[] statusLine = lines[0].split(" ", 3);
+            if (statusLine.length < 2 || !statusLine[0].startsWith("HTTP/")) throw new IOException("Bad status line: " + lines[0]);
+            try {
+                status = Integer.parseInt(statusLine[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad status line: " + lines[0]);
+            }
+            headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) continue;
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = lines[i].substring(colon + 1).trim();
+                headers.merge(name, value, (a, b) -> a + "," + b);
+            }
+            head.reset();
+            match = 0;
+
+            if (status >= 100 && status < 200) { // interim response, the real one follows
+                state = HEAD;
+                return;
+            }
+            String connection = headers.get("connection");
+            keepAlive = statusLine[0].equals("HTTP/1.1")
+                    ? !"close".equalsIgnoreCase(connection)
+                    : "keep-alive".equalsIgnoreCase(connection);
+
+            String te = headers.get("transfer-encoding");
+            String cl = headers.get("content-length");
+            if (headRequest || status == 204 || status == 304) {
+                state = DONE;
+            } else if (te != null && te.toLowerCase(Locale.ROOT).contains("chunked")) {
+                state = CHUNK_SIZE;
+            } else if (cl != null) {
+                try {
+                    remaining = Long.parseLong(cl.trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad Content-Length: " + cl);
+                }
+                if (remaining < 0) throw new IOException("Bad Content-Length: " + cl);
+                if (remaining > MAX_BODY_SIZE) throw new IOException("Response body too large");
+                state = (remaining == 0) ? DONE : BODY;
+            } else {
+                keepAlive = false;
+                state = UNTIL_CLOSE;
+            }
+        }
+    }
+}
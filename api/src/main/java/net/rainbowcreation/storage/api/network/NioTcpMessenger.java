@@ -0,0 +1,269 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.io.IOException;
+
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Non-blocking variant of {@link SimpleTcpMessenger}.
+ * Callers only enqueue encoded frames; a shared {@link NioEventLoop} batches them into a reusable
+ * direct buffer and performs all socket I/O, so no caller thread ever contends on a stream lock.
+ */
+public class NioTcpMessenger extends SimpleTcpMessenger implements NioEventLoop.Handler {
+    protected static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    protected static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    protected static final long CONNECT_TIMEOUT_MS = 5000;
+    protected static final long RECONNECT_DELAY_MS = 2000;
+
+    protected final NioEventLoop loop;
+
+    private final Queue<Outbound> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean connected;
+
+    // --- Loop thread state ---
+    private SocketChannel channel;
+    private SelectionKey key;
+    private CompletableFuture<Void> pendingConnect;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+    private byte[] current;         // frame being copied into writeBuffer
+    private int currentOffset;
+    private boolean currentLengthWritten;
+    private byte[] frame;           // frame being read
+    private int frameFilled;
+
+    private static final class Outbound {
+        final Link link;
+        final byte[] data;
+        Outbound(Link link, byte[] data) { this.link = link; this.data = data; }
+    }
+
+    public NioTcpMessenger(String host, int port) {
+        this(host, port, NioEventLoop.shared());
+    }
+
+    public NioTcpMessenger(String host, int port, NioEventLoop loop) {
+        super(host, port);
+        this.loop = loop;
+        this.writeBuffer.flip(); // start empty, in drain mode
+    }
+
+    @Override
+    public void register() {
+        connect();
+    }
+
+    @Override
+    public void unregister() {
+        running = false;
+        disconnect();
+        failAll(new IOException("Messenger closed"));
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    protected void connect() {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        loop.execute(() -> openChannel(f));
+        try {
+            f.get(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logSevere("Connection failed: " + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
+        }
+    }
+
+    @Override
+    protected void disconnect() {
+        loop.execute(() -> {
+            closeChannel();
+            logInfo("Disconnected.");
+        });
+    }
+
+    @Override
+    protected void sendRaw(Link origin, byte[] data) throws IOException {
+        if (!connected || origin != link) throw new IOException("Socket closed");
+        outbound.add(new Outbound(origin, data));
+        if (flushScheduled.compareAndSet(false, true)) loop.execute(this::flush);
+    }
+
+    // --- Loop thread ---
+
+    private void openChannel(CompletableFuture<Void> f) {
+        pendingConnect = f;
+        resetLink();
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            if (channel.connect(new InetSocketAddress(host, port))) {
+                key = loop.register(channel, SelectionKey.OP_READ, this);
+                onChannelConnected();
+            } else {
+                key = loop.register(channel, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    private void onChannelConnected() {
+        connected = true;
+        logInfo("Connected to Master at " + host + ":" + port);
+        onConnected();
+        if (pendingConnect != null) pendingConnect.complete(null);
+        pendingConnect = null;
+        if (!outbound.isEmpty()) flush();
+    }
+
+    @Override
+    public void onConnectable(SelectionKey key) {
+        try {
+            if (channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                onChannelConnected();
+            }
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    @Override
+    public void onReadable(SelectionKey key) {
+        try {
+            ByteBuffer rb = loop.readBuffer();
+            int n;
+            while ((n = channel.read(rb)) > 0) {
+                rb.flip();
+                decode(rb);
+                rb.clear();
+            }
+            if (n < 0) throw new IOException("Connection closed by master");
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    @Override
+    public void onWritable(SelectionKey key) {
+        flush();
+    }
+
+    private void decode(ByteBuffer rb) throws IOException {
+        while (rb.hasRemaining()) {
+            if (frame == null) {
+                while (lengthBuffer.hasRemaining() && rb.hasRemaining()) lengthBuffer.put(rb.get());
+                if (lengthBuffer.hasRemaining()) return;
+                lengthBuffer.flip();
+                int len = lengthBuffer.getInt();
+                lengthBuffer.clear();
+                if (len < 0 || len > MAX_FRAME_SIZE) throw new IOException("Bad frame length: " + len);
+                frame = new byte[len];
+                frameFilled = 0;
+            }
+            int n = Math.min(rb.remaining(), frame.length - frameFilled);
+            rb.get(frame, frameFilled, n);
+            frameFilled += n;
+            if (frameFilled == frame.length) {
+                byte[] done = frame;
+                frame = null;
+                processResponse(done);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        if (!connected || channel == null) return;
+        try {
+            for (;;) {
+                if (!writeBuffer.hasRemaining()) {
+                    writeBuffer.clear();
+                    fill(writeBuffer);
+                    writeBuffer.flip();
+                    if (!writeBuffer.hasRemaining()) break;
+                }
+                channel.write(writeBuffer);
+                if (writeBuffer.hasRemaining()) {
+                    // Kernel buffer full: resume when the socket becomes writable again
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            connectionLost(e);
+        }
+    }
+
+    /** Copy queued frames (length prefix + payload) into the buffer until it is full. */
+    private void fill(ByteBuffer wb) {
+        while (wb.hasRemaining()) {
+            if (current == null) {
+                Outbound o;
+                do {
+                    o = outbound.poll();
+                    if (o == null) return;
+                } while (o.link != link); // queued for a previous connection, its request was already failed
+                current = o.data;
+                currentOffset = 0;
+                currentLengthWritten = false;
+            }
+            if (!currentLengthWritten) {
+                if (wb.remaining() < 4) return;
+                wb.putInt(current.length);
+                currentLengthWritten = true;
+            }
+            int n = Math.min(wb.remaining(), current.length - currentOffset);
+            wb.put(current, currentOffset, n);
+            currentOffset += n;
+            if (currentOffset == current.length) current = null;
+        }
+    }
+
+    private void connectionLost(IOException e) {
+        boolean wasConnected = connected;
+        closeChannel();
+        failAll(new IOException("Connection lost: " + e.getMessage(), e));
+        invalidateAll();
+        if (pendingConnect != null) {
+            pendingConnect.completeExceptionally(e);
+            pendingConnect = null;
+        }
+        if (running) {
+            if (wasConnected) logWarn("Link broken (" + e.getMessage() + "), reconnecting in 2s...");
+            loop.schedule(() -> { if (running && channel == null) openChannel(null); }, RECONNECT_DELAY_MS);
+        }
+    }
+
+    private void closeChannel() {
+        connected = false;
+        if (key != null) key.cancel();
+        if (channel != null) {
+            try { channel.close(); } catch (IOException ignored) {}
+        }
+        key = null;
+        channel = null;
+        outbound.clear();
+        writeBuffer.clear().flip();
+        lengthBuffer.clear();
+        current = null;
+        frame = null;
+    }
+}
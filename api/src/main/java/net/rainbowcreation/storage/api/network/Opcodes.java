@@ -0,0 +1,62 @@
+package net.rainbowcreation.storage.api.network;
+
+/**
+ * Single-byte opcodes of the TCP protocol. {@link PendingTable} also records them so the response decoder
+ * can pick the result shape.
+ */
+public final class Opcodes {
+    public static final byte RESPONSE = 0; // first byte of every frame sent by the master in reply to a request
+
+    public static final byte GET = 1;
+    public static final byte SEARCH = 2;
+    public static final byte COUNT = 3;
+    public static final byte SET = 4;
+    public static final byte DELETE = 5;
+    public static final byte REGISTER = 6;
+    public static final byte MGET = 7;
+    public static final byte MSET = 8;
+    public static final byte MDEL = 9;
+    public static final byte HELLO = 10;
+    public static final byte AUTH = 11;      // binds db + secret to a session handle on this connection
+    public static final byte DEFINE_NS = 12; // binds a namespace name to a connection-local id, no response
+    public static final byte INVALIDATE = 13; // pushed by the master: UTF db, UTF ns, int n (-1 = whole namespace), n x UTF key
+    // Atomic ops (CAP_ATOMIC). INCR: UTF key, bool floating, 8 byte delta -> 8 byte new value (long or double bits)
+    public static final byte INCR = 14;
+    public static final byte CAS = 15;         // UTF key, bool hasExpected, [blob], bool hasUpdate, [blob] -> 1 byte swapped
+    public static final byte GET_OR_INIT = 16; // UTF key, blob default -> blob now stored under the key
+    public static final byte PATCH = 17;       // CAP_PATCH. UTF key, blob JSON merge-patch (RFC 7396), applied to the stored value
+    public static final byte QUERY = 18;       // CAP_QUERY. bool count, query (see SimpleTcpMessenger.writeQuery) -> blob JSON rows, or the count as text
+
+    // --- Capability bits exchanged in HELLO ---
+    public static final int CAP_DEFLATE = 1;    // value blobs may be deflate-compressed
+    public static final int CAP_INVALIDATE = 2; // master pushes INVALIDATE frames when keys change
+    public static final int CAP_ATOMIC = 4;     // master executes INCR / CAS / GET_OR_INIT
+    public static final int CAP_PATCH = 8;      // master applies PATCH server-side
+    public static final int CAP_QUERY = 16;     // master runs typed QUERY frames
+
+    private Opcodes() {}
+
+    public static String name(byte op) {
+        switch (op) {
+            case GET: return "GET";
+            case SEARCH: return "SEARCH";
+            case COUNT: return "COUNT";
+            case SET: return "SET";
+            case DELETE: return "DELETE";
+            case REGISTER: return "REGISTER";
+            case MGET: return "MGET";
+            case MSET: return "MSET";
+            case MDEL: return "MDEL";
+            case HELLO: return "HELLO";
+            case AUTH: return "AUTH";
+            case DEFINE_NS: return "DEFINE_NS";
+            case INVALIDATE: return "INVALIDATE";
+            case INCR: return "INCR";
+            case CAS: return "CAS";
+            case GET_OR_INIT: return "GET_OR_INIT";
+            case PATCH: return "PATCH";
+            case QUERY: return "QUERY";
+            default: return "OP_" + op;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * In-flight requests keyed by their numeric correlation id.
+ * Lock-striped open addressing over primitive {@code long} keys: no boxing and one probe per response.
+ */
+public final class PendingTable {
+    private static final int SEGMENTS = 16; // power of two
+    private static final long EMPTY = 0L;   // ids start at 1
+
+    /** A request waiting for its response. */
+    public static final class Pending {
+        public final byte op;
+        public final CompletableFuture<?> future;
+        public final TimingWheel.Timeout timeout; // null when the request has no deadline
+
+        public Pending(byte op, CompletableFuture<?> future, TimingWheel.Timeout timeout) {
+            this.op = op;
+            this.future = future;
+            this.timeout = timeout;
+        }
+
+        /** Complete exceptionally and release the deadline slot. */
+        public void fail(Throwable t) {
+            if (timeout != null) timeout.cancel();
+            future.completeExceptionally(t);
+        }
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    public PendingTable() {
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment();
+    }
+
+    public void put(long id, Pending p) {
+        if (id == EMPTY) throw new IllegalArgumentException("Request id 0 is reserved");
+        long h = mix(id);
+        segments[(int) h & (SEGMENTS - 1)].put(id, h >>> 4, p);
+    }
+
+    public Pending remove(long id) {
+        long h = mix(id);
+        return segments[(int) h & (SEGMENTS - 1)].remove(id, h >>> 4);
+    }
+
+    /** Remove and return every pending request, e.g. to fail them when the link drops. */
+    public List<Pending> drain() {
+        List<Pending> all = new ArrayList<>();
+        for (Segment s : segments) s.drainTo(all);
+        return all;
+    }
+
+    public int size() {
+        int n = 0;
+        for (Segment s : segments) n += s.size();
+        return n;
+    }
+
+    private static long mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private static final class Segment {
+        private long[] keys = new long[16];
+        private Pending[] values = new Pending[16];
+        private int size;
+
+        synchronized void put(long id, long hash, Pending p) {
+            if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (keys[i] != EMPTY && keys[i] != id) i = (i + 1) & mask;
+            if (keys[i] == EMPTY) size++;
+            keys[i] = id;
+            values[i] = p;
+        }
+
+        synchronized Pending remove(long id, long hash) {
+            int mask = keys.length - 1;
+            int i = (int) hash & mask;
+            while (keys[i] != id) {
+                if (keys[i] == EMPTY) return null;
+                i = (i + 1) & mask;
+            }
+            Pending p = values[i];
+            size--;
+            // Backward-shift deletion keeps probe chains intact without tombstones
+            int gap = i;
+            int j = i;
+            for (;;) {
+                j = (j + 1) & mask;
+                if (keys[j] == EMPTY) break;
+                int home = (int) (mix(keys[j]) >>> 4) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            keys[gap] = EMPTY;
+            values[gap] = null;
+            return p;
+        }
+
+        synchronized void drainTo(List<Pending> out) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    out.add(values[i]);
+                    keys[i] = EMPTY;
+                    values[i] = null;
+                }
+            }
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Pending[] oldValues = values;
+            keys = new long[capacity];
+            values = new Pending[capacity];
+            int mask = capacity - 1;
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldKeys[k] == EMPTY) continue;
+                int i = (int) (mix(oldKeys[k]) >>> 4) & mask;
+                while (keys[i] != EMPTY) i = (i + 1) & mask;
+                keys[i] = oldKeys[k];
+                values[i] = oldValues[k];
+            }
+        }
+    }
+}
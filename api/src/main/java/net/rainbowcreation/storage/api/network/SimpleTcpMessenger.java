@@ -1,17 +1,36 @@
 package net.rainbowcreation.storage.api.network;
 
 import net.rainbowcreation.storage.api.ModelField;
+import net.rainbowcreation.storage.api.proxy.InvalidationListener;
 import net.rainbowcreation.storage.api.proxy.ProxyMessenger;
+import net.rainbowcreation.storage.api.query.Query;
+import net.rainbowcreation.storage.api.utils.AsyncSemaphore;
+import net.rainbowcreation.storage.api.utils.Compression;
+import net.rainbowcreation.storage.api.utils.Futures;
+import net.rainbowcreation.storage.api.utils.SingleFlight;
 
 import java.io.*;
 
 import java.net.Socket;
 
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A lightweight TCP Client that handles the StorageGatewayAPI protocol.
@@ -19,17 +38,47 @@ import java.util.concurrent.ConcurrentHashMap;
 public class SimpleTcpMessenger implements ProxyMessenger {
     protected final String host;
     protected final int port;
-    protected Socket socket;
+    protected volatile Socket socket;
     protected DataOutputStream out;
     protected DataInputStream in;
     protected boolean running = true;
     private Thread listenerThread;
 
     // --- Callbacks for pending requests ---
-    protected final Map<String, CompletableFuture<Optional<String>>> pendingGet = new ConcurrentHashMap<>();
-    protected final Map<String, CompletableFuture<Void>> pendingSet = new ConcurrentHashMap<>();
-    protected final Map<String, CompletableFuture<Void>> pendingDelete = new ConcurrentHashMap<>();
-    protected final Map<String, CompletableFuture<Optional<Integer>>> pendingCount = new ConcurrentHashMap<>();
+    protected final PendingTable pending = new PendingTable();
+    private final AtomicLong nextRequestId = new AtomicLong();
+    protected final TimingWheel timeouts = TimingWheel.shared();
+    protected volatile long defaultTimeoutMs = DEFAULT_TIMEOUT_MS;
+    protected final AsyncSemaphore window = newWindow();
+    private final List<InvalidationListener> invalidationListeners = new CopyOnWriteArrayList<>();
+
+    // Concurrent GET/SEARCH for the same key or query share one request. Keys include the secret, so a session
+    // never receives a reply fetched under another one; searches also include a write epoch bumped by every write
+    private final SingleFlight<List<Object>, Optional<byte[]>> reads = new SingleFlight<>();
+    private final AtomicLong writeEpoch = new AtomicLong();
+
+    // --- Per-connection state, renegotiated after every (re)connect ---
+    protected volatile int capabilities;
+    protected volatile int compressionThreshold = Compression.DEFAULT_THRESHOLD;
+    protected volatile Link link = new Link();
+
+    /**
+     * Session handles and namespace ids bound on one physical connection.
+     * Replaced on every (re)connect, frames built against an older link are never written to a newer one.
+     */
+    protected static final class Link {
+        final Map<String, CompletableFuture<Integer>> sessions = new ConcurrentHashMap<>();
+        final Map<String, CompletableFuture<Integer>> namespaces = new ConcurrentHashMap<>();
+        final AtomicInteger nextNamespaceId = new AtomicInteger();
+        volatile CompletableFuture<Integer> hello; // accepted capabilities, set once the transport is up
+        volatile CompletableFuture<Void> queued = CompletableFuture.completedFuture(null); // frames waiting for HELLO / AUTH
+    }
+
+    private static AsyncSemaphore newWindow() {
+        AsyncSemaphore w = new AsyncSemaphore(DEFAULT_MAX_IN_FLIGHT);
+        w.setWaitTimeout(DEFAULT_TIMEOUT_MS);
+        return w;
+    }
 
     public SimpleTcpMessenger(String host, int port) {
         this.host = host;
@@ -50,14 +99,74 @@ public class SimpleTcpMessenger implements ProxyMessenger {
         running = false;
         disconnect();
         if (listenerThread != null) listenerThread.interrupt();
+        failAll(new IOException("Messenger closed"));
+    }
+
+    @Override
+    public void setDefaultTimeout(long timeoutMs) {
+        this.defaultTimeoutMs = timeoutMs;
+        window.setWaitTimeout(timeoutMs); // a frame still waiting for a window slot counts against the same deadline
+    }
+
+    @Override
+    public long getDefaultTimeout() {
+        return defaultTimeoutMs;
+    }
+
+    @Override
+    public void setMaxInFlight(int max) {
+        window.setCapacity(max);
+    }
+
+    @Override
+    public int inFlight() {
+        return window.inFlight();
+    }
+
+    @Override
+    public int waiting() {
+        return window.waiting();
+    }
+
+    @Override
+    public long coalesceHits() {
+        return reads.hits();
+    }
+
+    @Override
+    public long coalesceMisses() {
+        return reads.misses();
+    }
+
+    @Override
+    public boolean isConnected() {
+        Socket s = socket;
+        return s != null && !s.isClosed();
+    }
+
+    @Override
+    public void addInvalidationListener(InvalidationListener listener) {
+        invalidationListeners.add(listener);
+    }
+
+    @Override
+    public boolean canPushInvalidations() {
+        return true;
+    }
+
+    @Override
+    public boolean pushesInvalidations() {
+        return (capabilities & Opcodes.CAP_INVALIDATE) != 0;
     }
 
     protected void connect() {
+        resetLink();
         try {
             socket = new Socket(host, port);
             out = new DataOutputStream(socket.getOutputStream());
             in = new DataInputStream(socket.getInputStream());
             logInfo("Connected to Master at " + host + ":" + port);
+            onConnected();
         } catch (IOException e) {
             logSevere("Connection failed: " + e.getMessage());
         }
@@ -72,127 +181,207 @@ public class SimpleTcpMessenger implements ProxyMessenger {
         } catch (Exception ignored) {}
     }
 
+    // Values at least this large are compressed if the master supports it, <= 0 disables compression
+    public void setCompressionThreshold(int bytes) {
+        this.compressionThreshold = bytes;
+    }
+
+    /** Start a fresh link. Must run before the new transport accepts frames. */
+    protected void resetLink() {
+        link = new Link();
+        capabilities = 0;
+        invalidateAll(); // whatever changed while we were away was never pushed
+    }
+
+    /** Called once the transport is up, before any other frame is sent on the new connection. */
+    protected void onConnected() {
+        int offered = offeredCapabilities();
+        Link l = link;
+        l.hello = this.<Integer>send(l, Opcodes.HELLO, 0, null, out -> out.writeInt(offered))
+                .handle((accepted, t) -> {
+                    if (t != null) {
+                        logWarn("Capability handshake failed, using plain frames: " + t.getMessage());
+                        return 0;
+                    }
+                    capabilities = accepted & offered;
+                    return capabilities;
+                });
+    }
+
+    protected int offeredCapabilities() {
+        int caps = compressionThreshold > 0 ? Opcodes.CAP_DEFLATE : 0;
+        if (!invalidationListeners.isEmpty()) caps |= Opcodes.CAP_INVALIDATE;
+        caps |= Opcodes.CAP_ATOMIC | Opcodes.CAP_PATCH | Opcodes.CAP_QUERY;
+        return caps;
+    }
+
     // --- Protocol Implementation ---
 
     @Override
     public CompletableFuture<Optional<String>> get(String db, String secret, String ns, String key) {
-        CompletableFuture<Optional<String>> f = new CompletableFuture<>();
-        String reqId = UUID.randomUUID().toString();
-        pendingGet.put(reqId, f);
-
-        try {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            DataOutputStream out = new DataOutputStream(bout);
-
-            writeHeader(out, "GET", reqId, db, secret, ns);
-            out.writeUTF(key);
+        return getRaw(db, secret, ns, key).thenApply(SimpleTcpMessenger::utf8);
+    }
 
-            sendRaw(bout.toByteArray());
-        } catch (Throwable t) {
-            pendingGet.remove(reqId);
-            f.completeExceptionally(t);
-        }
-        return f;
+    @Override
+    public CompletableFuture<Optional<byte[]>> getRaw(String db, String secret, String ns, String key) {
+        return reads.run(Arrays.asList(db, secret, ns, key), () -> request(Opcodes.GET, db, secret, ns, out -> out.writeUTF(key)));
     }
 
     @Override
     public CompletableFuture<Optional<String>> get(String db, String secret, String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset) {
-        CompletableFuture<Optional<String>> f = new CompletableFuture<>();
-        String reqId = UUID.randomUUID().toString();
-        pendingGet.put(reqId, f);
-
-        try {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            DataOutputStream out = new DataOutputStream(bout);
+        return getRaw(db, secret, ns, filters, selections, limit, offset).thenApply(SimpleTcpMessenger::utf8);
+    }
 
-            writeHeader(out, "SEARCH", reqId, db, secret, ns);
+    @Override
+    public CompletableFuture<Optional<byte[]>> getRaw(String db, String secret, String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset) {
+        List<Object> query = Arrays.asList(writeEpoch.get(), db, secret, ns, copy(filters), copy(selections), limit, offset);
+        return reads.run(query, () -> request(Opcodes.SEARCH, db, secret, ns, out -> {
             writeMap(out, filters);
             writeMap(out, selections);
             out.writeInt(limit);
             out.writeInt(offset);
-
-            sendRaw(bout.toByteArray());
-        } catch (Throwable t) {
-            pendingGet.remove(reqId);
-            f.completeExceptionally(t);
-        }
-        return f;
+        }));
     }
 
     @Override
     public CompletableFuture<Optional<Integer>> count(String db, String secret, String ns, Map<String, String> filters, int limit, int offset) {
-        CompletableFuture<Optional<Integer>> f = new CompletableFuture<>();
-        String reqId = UUID.randomUUID().toString();
-        pendingCount.put(reqId, f);
-
-        try {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            DataOutputStream out = new DataOutputStream(bout);
-
-            writeHeader(out, "COUNT", reqId, db, secret, ns);
+        return request(Opcodes.COUNT, db, secret, ns, out -> {
             writeMap(out, filters);
             out.writeInt(limit);
             out.writeInt(offset);
-
-            sendRaw(bout.toByteArray());
-        } catch (Throwable t) {
-            pendingCount.remove(reqId);
-            f.completeExceptionally(t);
-        }
-        return f;
+        });
     }
 
     @Override
     public CompletableFuture<Void> set(String db, String secret, String ns, String key, String json) {
-        CompletableFuture<Void> f = new CompletableFuture<>();
-        String reqId = UUID.randomUUID().toString();
-        pendingSet.put(reqId, f);
+        return setRaw(db, secret, ns, key, json.getBytes(StandardCharsets.UTF_8));
+    }
 
-        try {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            DataOutputStream out = new DataOutputStream(bout);
+    @Override
+    public CompletableFuture<Void> setRaw(String db, String secret, String ns, String key, byte[] value) {
+        wrote(db, secret, ns, Collections.singleton(key));
+        return request(Opcodes.SET, db, secret, ns, out -> {
+            out.writeUTF(key);
+            writeBlob(out, value);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String db, String secret, String ns, String key) {
+        wrote(db, secret, ns, Collections.singleton(key));
+        return request(Opcodes.DELETE, db, secret, ns, out -> out.writeUTF(key));
+    }
 
-            writeHeader(out, "SET", reqId, db, secret, ns);
+    @Override
+    public CompletableFuture<Map<String, Optional<String>>> getMany(String db, String secret, String ns, Collection<String> keys) {
+        return getManyRaw(db, secret, ns, keys).thenApply(raw -> {
+            Map<String, Optional<String>> values = new LinkedHashMap<>(raw.size() * 2);
+            raw.forEach((k, v) -> values.put(k, utf8(v)));
+            return values;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Optional<byte[]>>> getManyRaw(String db, String secret, String ns, Collection<String> keys) {
+        return request(Opcodes.MGET, db, secret, ns, out -> writeKeys(out, keys));
+    }
+
+    @Override
+    public CompletableFuture<Void> setMany(String db, String secret, String ns, Map<String, String> jsonByKey) {
+        Map<String, byte[]> raw = new LinkedHashMap<>(jsonByKey.size() * 2);
+        jsonByKey.forEach((k, v) -> raw.put(k, v.getBytes(StandardCharsets.UTF_8)));
+        return setManyRaw(db, secret, ns, raw);
+    }
+
+    @Override
+    public CompletableFuture<Void> setManyRaw(String db, String secret, String ns, Map<String, byte[]> valueByKey) {
+        wrote(db, secret, ns, valueByKey.keySet());
+        return request(Opcodes.MSET, db, secret, ns, out -> {
+            out.writeInt(valueByKey.size());
+            for (Map.Entry<String, byte[]> entry : valueByKey.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeBlob(out, entry.getValue());
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteMany(String db, String secret, String ns, Collection<String> keys) {
+        wrote(db, secret, ns, keys);
+        return request(Opcodes.MDEL, db, secret, ns, out -> writeKeys(out, keys));
+    }
+
+    // --- Atomic ---
+
+    @Override
+    public CompletableFuture<Long> increment(String db, String secret, String ns, String key, long delta) {
+        wrote(db, secret, ns, Collections.singleton(key));
+        return request(Opcodes.INCR, db, secret, ns, out -> {
             out.writeUTF(key);
-            out.writeUTF(json);
+            out.writeBoolean(false);
+            out.writeLong(delta);
+        });
+    }
 
-            sendRaw(bout.toByteArray());
-        } catch (Throwable t) {
-            pendingSet.remove(reqId);
-            f.completeExceptionally(t);
-        }
-        return f;
+    @Override
+    public CompletableFuture<Double> increment(String db, String secret, String ns, String key, double delta) {
+        wrote(db, secret, ns, Collections.singleton(key));
+        return this.<Long>request(Opcodes.INCR, db, secret, ns, out -> {
+            out.writeUTF(key);
+            out.writeBoolean(true);
+            out.writeDouble(delta);
+        }).thenApply(Double::longBitsToDouble);
     }
 
     @Override
-    public CompletableFuture<Void> delete(String db, String secret, String ns, String key) {
-        CompletableFuture<Void> f = new CompletableFuture<>();
-        String reqId = UUID.randomUUID().toString();
-        pendingDelete.put(reqId, f);
+    public CompletableFuture<Boolean> compareAndSet(String db, String secret, String ns, String key, byte[] expected, byte[] update) {
+        wrote(db, secret, ns, Collections.singleton(key));
+        return request(Opcodes.CAS, db, secret, ns, out -> {
+            out.writeUTF(key);
+            writeOptionalBlob(out, expected);
+            writeOptionalBlob(out, update);
+        });
+    }
 
-        try {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            DataOutputStream out = new DataOutputStream(bout);
+    @Override
+    public CompletableFuture<byte[]> getOrInit(String db, String secret, String ns, String key, byte[] def) {
+        wrote(db, secret, ns, Collections.singleton(key));
+        return request(Opcodes.GET_OR_INIT, db, secret, ns, out -> {
+            out.writeUTF(key);
+            writeBlob(out, def);
+        });
+    }
 
-            writeHeader(out, "DELETE", reqId, db, secret, ns);
+    @Override
+    public CompletableFuture<Void> patch(String db, String secret, String ns, String key, byte[] patch) {
+        wrote(db, secret, ns, Collections.singleton(key));
+        return request(Opcodes.PATCH, db, secret, ns, out -> {
             out.writeUTF(key);
+            writeBlob(out, patch);
+        });
+    }
 
-            sendRaw(bout.toByteArray());
-        } catch (Throwable t) {
-            pendingDelete.remove(reqId);
-            f.completeExceptionally(t);
-        }
-        return f;
+    @Override
+    public CompletableFuture<Optional<byte[]>> query(String db, String secret, String ns, Query query) {
+        List<Object> key = Arrays.asList(writeEpoch.get(), db, secret, ns, query);
+        return reads.run(key, () -> request(Opcodes.QUERY, db, secret, ns, out -> {
+            out.writeBoolean(false);
+            writeQuery(out, query);
+        }));
     }
 
     @Override
-    public void sendRegisterModel(String db, String secret, String ns, String typeName, Map<String, ModelField> fields) {
-        try {
-            ByteArrayOutputStream bout = new ByteArrayOutputStream();
-            DataOutputStream out = new DataOutputStream(bout);
+    public CompletableFuture<Optional<Integer>> queryCount(String db, String secret, String ns, Query query) {
+        CompletableFuture<Optional<byte[]>> sent = request(Opcodes.QUERY, db, secret, ns, out -> {
+            out.writeBoolean(true);
+            writeQuery(out, query);
+        });
+        return sent.thenApply(opt -> opt.map(b -> Integer.parseInt(new String(b, StandardCharsets.UTF_8).trim())));
+    }
 
-            // Register doesn't strictly need a reqId or response, so we use "NO-OP" or random
-            writeHeader(out, "REGISTER", UUID.randomUUID().toString(), db, secret, ns);
+    @Override
+    public void sendRegisterModel(String db, String secret, String ns, String typeName, Map<String, ModelField> fields) {
+        this.<Void>request(Opcodes.REGISTER, db, secret, ns, out -> {
             out.writeUTF(typeName);
 
             out.writeInt(fields.size());
@@ -202,20 +391,181 @@ public class SimpleTcpMessenger implements ProxyMessenger {
                 out.writeUTF(mf.jsonPath);
                 out.writeUTF(mf.sqlType);
             }
-            sendRaw(bout.toByteArray());
-        } catch (Throwable t) {
+        }).exceptionally(t -> {
             logWarn("Failed to register model: " + t.getMessage());
+            return null;
+        });
+    }
+
+    // Reads issued from now on must not join ones that may have been answered before this write
+    private void wrote(String db, String secret, String ns, Collection<String> keys) {
+        writeEpoch.incrementAndGet();
+        for (String key : keys) reads.forget(Arrays.asList(db, secret, ns, key));
+    }
+
+    // Query maps become part of a coalescing key, so callers mutating theirs later cannot corrupt it
+    private static Map<String, String> copy(Map<String, String> m) {
+        return (m == null || m.isEmpty()) ? Collections.emptyMap() : new HashMap<>(m);
+    }
+
+    /** Writes the op specific part of a request frame. */
+    protected interface FrameWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Send a request once the in-flight window has room. Over the limit the caller gets a queued future, never a blocked thread. */
+    protected <T> CompletableFuture<T> request(byte op, String db, String secret, String ns, FrameWriter body) {
+        return window.run(() -> dispatch(op, db, secret, ns, body));
+    }
+
+    // Send in the caller's (db, secret) session, authenticating this connection first if needed
+    private <T> CompletableFuture<T> dispatch(byte op, String db, String secret, String ns, FrameWriter body) {
+        Link l = link;
+        CompletableFuture<Integer> session = session(l, db, secret);
+        CompletableFuture<Integer> hello = l.hello;
+        if (session.isDone() && !session.isCompletedExceptionally() && (hello == null || hello.isDone()) && l.queued.isDone()) {
+            return sendIfSupported(l, op, session.join(), ns, body); // steady state: no extra stage
+        }
+        // Queue behind earlier waiting frames: dependents of one future run last-in first-out, which would
+        // let a later write to a key overtake an earlier one
+        CompletableFuture<T> f = new CompletableFuture<>();
+        synchronized (l) {
+            l.queued = l.queued
+                    .thenCompose(v -> (hello != null) ? hello : CompletableFuture.completedFuture(0))
+                    .thenCompose(caps -> session)
+                    .handle((handle, t) -> {
+                        if (t != null) f.completeExceptionally(t);
+                        else this.<T>sendIfSupported(l, op, handle, ns, body).whenComplete((r, e) -> {
+                            if (e != null) f.completeExceptionally(e);
+                            else f.complete(r);
+                        });
+                        return null;
+                    });
+        }
+        return f;
+    }
+
+    // Ops behind a capability bit fail locally when the master did not accept it in HELLO
+    private <T> CompletableFuture<T> sendIfSupported(Link l, byte op, int session, String ns, FrameWriter body) {
+        int needs = requiredCapability(op);
+        if ((capabilities & needs) != needs) {
+            return Futures.failed(new UnsupportedOperationException("Master does not support " + Opcodes.name(op)));
+        }
+        return send(l, op, session, ns, body);
+    }
+
+    private static int requiredCapability(byte op) {
+        switch (op) {
+            case Opcodes.INCR:
+            case Opcodes.CAS:
+            case Opcodes.GET_OR_INIT:
+                return Opcodes.CAP_ATOMIC;
+            case Opcodes.PATCH:
+                return Opcodes.CAP_PATCH;
+            case Opcodes.QUERY:
+                return Opcodes.CAP_QUERY;
+            default:
+                return 0;
+        }
+    }
+
+    protected <T> CompletableFuture<T> send(Link l, byte op, int session, String ns, FrameWriter body) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        long reqId = nextRequestId.incrementAndGet();
+        long timeoutMs = defaultTimeoutMs;
+        TimingWheel.Timeout deadline = (timeoutMs > 0) ? timeouts.schedule(() -> expire(reqId, timeoutMs), timeoutMs) : null;
+        pending.put(reqId, new PendingTable.Pending(op, f, deadline));
+
+        try {
+            int nsId = (ns != null) ? namespaceId(l, ns) : 0;
+
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bout);
+
+            writeHeader(out, op, reqId, session, nsId);
+            body.write(out);
+
+            sendRaw(l, bout.toByteArray());
+        } catch (Throwable t) {
+            PendingTable.Pending p = pending.remove(reqId);
+            if (p != null) p.fail(t);
+        }
+        return f;
+    }
+
+    private CompletableFuture<Integer> session(Link l, String db, String secret) {
+        String k = db + '\0' + secret;
+        CompletableFuture<Integer> s = l.sessions.get(k);
+        if (s != null) return s;
+
+        CompletableFuture<Integer> created = new CompletableFuture<>();
+        s = l.sessions.putIfAbsent(k, created);
+        if (s != null) return s;
+
+        this.<Integer>send(l, Opcodes.AUTH, 0, null, out -> {
+            out.writeUTF(db);
+            out.writeUTF(secret);
+        }).whenComplete((handle, t) -> {
+            if (t == null) {
+                created.complete(handle);
+            } else {
+                l.sessions.remove(k, created); // let the next request retry
+                created.completeExceptionally(t);
+            }
+        });
+        return created;
+    }
+
+    // Frames are ordered on the connection, so the definition always reaches the master before its first use.
+    // The first caller sends DEFINE_NS outside the map, so the write never holds a map lock other namespaces need;
+    // concurrent callers for the same namespace wait for that write
+    private int namespaceId(Link l, String ns) throws IOException {
+        CompletableFuture<Integer> id = l.namespaces.get(ns);
+        if (id == null) {
+            CompletableFuture<Integer> mine = new CompletableFuture<>();
+            id = l.namespaces.putIfAbsent(ns, mine);
+            if (id == null) {
+                id = mine;
+                int nsId = l.nextNamespaceId.incrementAndGet();
+                try {
+                    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                    DataOutputStream out = new DataOutputStream(bout);
+                    writeHeader(out, Opcodes.DEFINE_NS, 0L, 0, nsId);
+                    out.writeUTF(ns);
+                    sendRaw(l, bout.toByteArray());
+                } catch (IOException | RuntimeException e) {
+                    l.namespaces.remove(ns, mine); // the next frame defines it again
+                    mine.completeExceptionally(e);
+                    throw e;
+                }
+                mine.complete(nsId);
+            }
+        }
+        try {
+            return id.join();
+        } catch (CompletionException e) {
+            throw new IOException("Namespace " + ns + " could not be defined", e.getCause());
         }
     }
 
+    private void expire(long reqId, long timeoutMs) {
+        PendingTable.Pending p = pending.remove(reqId);
+        if (p != null) p.future.completeExceptionally(new TimeoutException(Opcodes.name(p.op) + " timed out after " + timeoutMs + "ms"));
+    }
+
+    /** Fail every in-flight request at once, e.g. when the link drops and no response can arrive anymore. */
+    protected void failAll(Throwable cause) {
+        for (PendingTable.Pending p : pending.drain()) p.fail(cause);
+    }
+
     // --- Helper Methods ---
 
-    protected void writeHeader(DataOutputStream out, String op, String reqId, String db, String secret, String ns) throws IOException {
-        out.writeUTF(op);
-        out.writeUTF(reqId);
-        out.writeUTF(db);
-        out.writeUTF(secret); // Auth Secret
-        out.writeUTF(ns);
+    // 17 bytes: opcode, correlation id, session handle, namespace id
+    protected void writeHeader(DataOutputStream out, byte op, long reqId, int session, int nsId) throws IOException {
+        out.writeByte(op);
+        out.writeLong(reqId);
+        out.writeInt(session);
+        out.writeInt(nsId);
     }
 
     protected void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
@@ -230,9 +580,97 @@ public class SimpleTcpMessenger implements ProxyMessenger {
         }
     }
 
-    protected void sendRaw(byte[] data) throws IOException {
-        if (socket == null || socket.isClosed()) throw new IOException("Socket closed");
+    // short n, n x (UTF field, byte op code, short count, count x value); byte n, n x (UTF field, bool descending);
+    // short n, n x UTF selected field; int limit; int offset. Values: byte type (1 long, 2 double, 3 string, 4 bool), payload
+    protected void writeQuery(DataOutputStream out, Query q) throws IOException {
+        out.writeShort(count(q.conditions().size(), 0xFFFF, "conditions"));
+        for (Query.Condition c : q.conditions()) {
+            out.writeUTF(c.field);
+            out.writeByte(c.op.code);
+            out.writeShort(count(c.values.size(), 0xFFFF, "values for " + c.field));
+            for (Object v : c.values) {
+                if (v instanceof Long) {
+                    out.writeByte(1);
+                    out.writeLong((Long) v);
+                } else if (v instanceof Double) {
+                    out.writeByte(2);
+                    out.writeDouble((Double) v);
+                } else if (v instanceof String) {
+                    out.writeByte(3);
+                    out.writeUTF((String) v);
+                } else {
+                    out.writeByte(4);
+                    out.writeBoolean((Boolean) v);
+                }
+            }
+        }
+        out.writeByte(count(q.orders().size(), 0xFF, "orderings"));
+        for (Query.Order o : q.orders()) {
+            out.writeUTF(o.field);
+            out.writeBoolean(o.descending);
+        }
+        out.writeShort(count(q.fields().size(), 0xFFFF, "selected fields"));
+        for (String f : q.fields()) out.writeUTF(f);
+        out.writeInt(q.limit());
+        out.writeInt(q.offset());
+    }
+
+    // Counts go out as unsigned bytes or shorts; a larger one would wrap and desync the frame
+    private static int count(int n, int max, String what) throws IOException {
+        if (n > max) throw new IOException("Query has " + n + " " + what + ", at most " + max + " fit the frame");
+        return n;
+    }
+
+    // Values are length-prefixed raw bytes: no 64 KB writeUTF cap and no modified UTF-8 pass.
+    // A negative length marks a deflated value: int -compressedLen, int rawLen, compressed bytes.
+    protected void writeBlob(DataOutputStream out, byte[] value) throws IOException {
+        int threshold = compressionThreshold;
+        if ((capabilities & Opcodes.CAP_DEFLATE) != 0 && threshold > 0 && value.length >= threshold) {
+            byte[] packed = Compression.deflate(value);
+            if (packed != null) {
+                out.writeInt(-packed.length);
+                out.writeInt(value.length);
+                out.write(packed);
+                return;
+            }
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    protected void writeOptionalBlob(DataOutputStream out, byte[] value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) writeBlob(out, value);
+    }
+
+    protected byte[] readBlob(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len == Integer.MIN_VALUE || Math.abs(len) > Compression.MAX_RAW_LENGTH) throw new IOException("Bad value length " + len);
+        if (len < 0) {
+            int rawLen = in.readInt();
+            byte[] packed = new byte[-len];
+            in.readFully(packed);
+            return Compression.inflate(packed, rawLen);
+        }
+        byte[] value = new byte[len];
+        in.readFully(value);
+        return value;
+    }
+
+    protected static Optional<String> utf8(Optional<byte[]> value) {
+        return value.map(b -> new String(b, StandardCharsets.UTF_8));
+    }
+
+    protected void writeKeys(DataOutputStream out, Collection<String> keys) throws IOException {
+        out.writeInt(keys.size());
+        for (String k : keys) out.writeUTF(k);
+    }
+
+    protected void sendRaw(Link origin, byte[] data) throws IOException {
+        DataOutputStream out = this.out;
+        if (socket == null || socket.isClosed() || out == null) throw new IOException("Socket closed");
         synchronized (out) {
+            if (origin != link) throw new IOException("Connection reset");
             out.writeInt(data.length); // Frame Length
             out.write(data);           // Payload
             out.flush();
@@ -257,9 +695,12 @@ public class SimpleTcpMessenger implements ProxyMessenger {
                 processResponse(data);
 
             } catch (Exception e) {
+                try { if (socket != null) socket.close(); } catch (Exception ignored) {} // isConnected() is false before callers see the failure
+                failAll(new IOException("Connection lost: " + e.getMessage(), e));
+                invalidateAll();
                 if (running) {
                     logWarn("Link broken (" + e.getMessage() + "), reconnecting in 2s...");
-                    try { socket.close(); Thread.sleep(2000); } catch (Exception ignored) {}
+                    try { Thread.sleep(2000); } catch (Exception ignored) {}
                 }
             }
         }
@@ -268,58 +709,121 @@ public class SimpleTcpMessenger implements ProxyMessenger {
     protected void processResponse(byte[] data) {
         try {
             DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
-            String tag = in.readUTF(); // "RES"
-            if (!"RES".equals(tag)) return;
+            byte type = in.readByte();
+            if (type == Opcodes.INVALIDATE) {
+                onInvalidate(in);
+                return;
+            }
+            if (type != Opcodes.RESPONSE) return;
 
-            String reqId = in.readUTF();
+            long reqId = in.readLong();
             boolean ok = in.readBoolean();
 
             boolean hasVal = in.readBoolean();
-            String val = hasVal ? in.readUTF() : null;
+            byte[] val = hasVal ? readBlob(in) : null;
             boolean hasErr = in.readBoolean();
             String err = hasErr ? in.readUTF() : null;
 
-            // GET / SEARCH
-            CompletableFuture<Optional<String>> fg = pendingGet.remove(reqId);
-            if (fg != null) {
-                if (ok) fg.complete(Optional.ofNullable(val));
-                else fg.completeExceptionally(new IOException(err != null ? err : "Get request failed"));
-                return;
-            }
+            PendingTable.Pending p = pending.remove(reqId);
+            if (p == null) return; // late response (already timed out)
+            if (p.timeout != null) p.timeout.cancel();
 
-            // COUNT
-            CompletableFuture<Optional<Integer>> fc = pendingCount.remove(reqId);
-            if (fc != null) {
-                if (ok && val != null) {
-                    try {
-                        fc.complete(Optional.of(Integer.parseInt(val)));
-                    } catch (Exception e) {
-                        fc.completeExceptionally(new IOException("Invalid count response: " + val));
-                    }
-                } else {
-                    if (!ok) fc.completeExceptionally(new IOException(err != null ? err : "Count request failed"));
-                    else fc.complete(Optional.empty());
-                }
+            if (!ok) {
+                p.future.completeExceptionally(new IOException(err != null ? err : Opcodes.name(p.op) + " request failed"));
                 return;
             }
+            complete(p, val, in);
 
-            // SET
-            CompletableFuture<Void> fs = pendingSet.remove(reqId);
-            if (fs != null) {
-                if (ok) fs.complete(null);
-                else fs.completeExceptionally(new IOException(err != null ? err : "Set request failed"));
-                return;
-            }
+        } catch (Throwable t) {
+            logWarn("Bad response format: " + t);
+        }
+    }
+
+    // Push frame: db, ns, int n (-1 = whole namespace), n keys
+    protected void onInvalidate(DataInputStream in) throws IOException {
+        String db = in.readUTF();
+        String ns = in.readUTF();
+        int n = in.readInt();
+        List<String> keys = null;
+        if (n >= 0) {
+            keys = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) keys.add(in.readUTF());
+        }
+        notifyInvalidation(db, ns, keys);
+    }
 
-            // DELETE
-            CompletableFuture<Void> fd = pendingDelete.remove(reqId);
-            if (fd != null) {
-                if (ok) fd.complete(null);
-                else fd.completeExceptionally(new IOException(err != null ? err : "Delete request failed"));
+    /** Tell listeners to drop everything, e.g. after the link dropped. */
+    protected void invalidateAll() {
+        notifyInvalidation(null, null, null);
+    }
+
+    private void notifyInvalidation(String db, String ns, Collection<String> keys) {
+        reads.forgetAll(); // someone else wrote: later reads must not join ones answered before that
+        for (InvalidationListener l : invalidationListeners) {
+            try {
+                l.onInvalidate(db, ns, keys);
+            } catch (Throwable t) {
+                logWarn("Invalidation listener failed: " + t);
             }
+        }
+    }
 
-        } catch (Throwable t) {
-            logWarn("Bad response format: " + t);
+    @SuppressWarnings("unchecked")
+    protected void complete(PendingTable.Pending p, byte[] val, DataInputStream in) throws IOException {
+        switch (p.op) {
+            case Opcodes.GET:
+            case Opcodes.SEARCH:
+            case Opcodes.QUERY:
+                ((CompletableFuture<Optional<byte[]>>) p.future).complete(Optional.ofNullable(val));
+                break;
+
+            case Opcodes.COUNT:
+                CompletableFuture<Optional<Integer>> fc = (CompletableFuture<Optional<Integer>>) p.future;
+                if (val == null) {
+                    fc.complete(Optional.empty());
+                    break;
+                }
+                String count = new String(val, StandardCharsets.UTF_8);
+                try {
+                    fc.complete(Optional.of(Integer.parseInt(count)));
+                } catch (Exception e) {
+                    fc.completeExceptionally(new IOException("Invalid count response: " + count));
+                }
+                break;
+
+            case Opcodes.HELLO: // accepted capability bits
+            case Opcodes.AUTH:  // session handle
+                int v = (val != null && val.length >= 4) ? new DataInputStream(new ByteArrayInputStream(val)).readInt() : 0;
+                ((CompletableFuture<Integer>) p.future).complete(v);
+                break;
+
+            case Opcodes.MGET:
+                // Trailer: int n, then n x (key, present, [value]) in request order
+                int n = in.readInt();
+                Map<String, Optional<byte[]>> values = new LinkedHashMap<>(n * 2);
+                for (int i = 0; i < n; i++) {
+                    String key = in.readUTF();
+                    values.put(key, in.readBoolean() ? Optional.of(readBlob(in)) : Optional.empty());
+                }
+                ((CompletableFuture<Map<String, Optional<byte[]>>>) p.future).complete(values);
+                break;
+
+            case Opcodes.INCR:
+                CompletableFuture<Long> fi = (CompletableFuture<Long>) p.future;
+                if (val != null && val.length == 8) fi.complete(new DataInputStream(new ByteArrayInputStream(val)).readLong());
+                else fi.completeExceptionally(new IOException("Invalid INCR response"));
+                break;
+
+            case Opcodes.CAS:
+                ((CompletableFuture<Boolean>) p.future).complete(val != null && val.length > 0 && val[0] != 0);
+                break;
+
+            case Opcodes.GET_OR_INIT:
+                ((CompletableFuture<byte[]>) p.future).complete(val);
+                break;
+
+            default: // SET / DELETE / MSET / MDEL / PATCH / REGISTER
+                p.future.complete(null);
         }
     }
 
@@ -0,0 +1,121 @@
+package net.rainbowcreation.storage.api.network;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timing wheel for request deadlines.
+ * Scheduling and cancelling are O(1) and lock-free for callers; a single ticker thread owns the buckets
+ * and drops cancelled entries lazily when it passes over them.
+ */
+public final class TimingWheel {
+    private static TimingWheel shared;
+
+    public static synchronized TimingWheel shared() {
+        if (shared == null) shared = new TimingWheel("SGW-Timeouts", 50, 512);
+        return shared;
+    }
+
+    /** Handle returned by {@link #schedule}. */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled;
+        // --- Ticker thread only ---
+        private long rounds;
+        private int bucket;
+        private Timeout prev, next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() { cancelled = true; }
+        public boolean isCancelled() { return cancelled; }
+    }
+
+    private final long tickMs;
+    private final Timeout[] heads;
+    private final int mask;
+    private final Queue<Timeout> incoming = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+    private long tick; // ticker thread only
+
+    public TimingWheel(String name, long tickMs, int buckets) {
+        if (Integer.bitCount(buckets) != 1) throw new IllegalArgumentException("buckets must be a power of two");
+        this.tickMs = tickMs;
+        this.heads = new Timeout[buckets];
+        this.mask = buckets - 1;
+        Thread t = new Thread(this::run, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /** Run the task on the ticker thread once the delay elapsed, unless cancelled first. Keep tasks short. */
+    public Timeout schedule(Runnable task, long delayMs) {
+        Timeout t = new Timeout(task, elapsedMs() + Math.max(0, delayMs));
+        incoming.add(t);
+        return t;
+    }
+
+    private long elapsedMs() {
+        return (System.nanoTime() - startTime) / 1_000_000L;
+    }
+
+    private void run() {
+        while (true) {
+            long wakeAt = (tick + 1) * tickMs;
+            long now;
+            while ((now = elapsedMs()) < wakeAt) {
+                try {
+                    Thread.sleep(wakeAt - now);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferIncoming();
+            expire(heads[(int) (tick & mask)], now);
+            tick++;
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout t;
+        while ((t = incoming.poll()) != null) {
+            if (t.cancelled) continue;
+            long ticks = Math.max(t.deadline / tickMs, tick); // never schedule into the past
+            t.rounds = (ticks - tick) / heads.length;
+            t.bucket = (int) (ticks & mask);
+            t.next = heads[t.bucket];
+            if (t.next != null) t.next.prev = t;
+            heads[t.bucket] = t;
+        }
+    }
+
+    private void expire(Timeout t, long now) {
+        while (t != null) {
+            Timeout next = t.next;
+            if (t.cancelled) {
+                unlink(t);
+            } else if (t.rounds <= 0 && t.deadline <= now) {
+                unlink(t);
+                try {
+                    t.task.run();
+                } catch (Throwable ex) {
+                    System.err.println("[TimingWheel] WARN: Timeout task failed: " + ex);
+                }
+            } else if (t.rounds > 0) {
+                t.rounds--;
+            }
+            t = next;
+        }
+    }
+
+    private void unlink(Timeout t) {
+        if (t.prev != null) t.prev.next = t.next;
+        else heads[t.bucket] = t.next;
+        if (t.next != null) t.next.prev = t.prev;
+        t.prev = t.next = null;
+    }
+}
@@ -0,0 +1,107 @@
+package net.rainbowcreation.storage.api.network;
+
+import net.rainbowcreation.storage.api.utils.SgwExecutors;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * {@link HttpTransport} over {@link HttpURLConnection}, for https and as a fallback.
+ * Blocking calls run on a small dedicated pool instead of the common ForkJoinPool, and connections are
+ * never {@code disconnect()}ed: fully read responses return the socket to the JDK keep-alive cache
+ * (sized by the {@code http.maxConnections} system property).
+ */
+public class UrlConnectionTransport implements HttpTransport {
+    private volatile int maxConnections = 8;
+    private ThreadPoolExecutor executor;
+
+    @Override
+    public String name() {
+        return "url";
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> send(HttpRequest request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return exchange(request);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor());
+    }
+
+    @Override
+    public synchronized void setMaxConnections(int max) {
+        this.maxConnections = Math.max(1, max);
+        if (executor != null) {
+            // grow first so core <= max holds at every step
+            if (maxConnections > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(maxConnections);
+                executor.setCorePoolSize(maxConnections);
+            } else {
+                executor.setCorePoolSize(maxConnections);
+                executor.setMaximumPoolSize(maxConnections);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) executor.shutdown();
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = SgwExecutors.newBounded("SGW-HTTP", maxConnections); // platform threads: the pool size is the connection bound
+        }
+        return executor;
+    }
+
+    protected HttpResponse exchange(HttpRequest request) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(request.url).openConnection();
+        conn.setRequestMethod(request.method);
+        int timeout = (int) Math.min(Integer.MAX_VALUE, request.timeoutMs);
+        conn.setConnectTimeout(timeout);
+        conn.setReadTimeout(timeout);
+        for (Map.Entry<String, String> h : request.headers.entrySet()) conn.setRequestProperty(h.getKey(), h.getValue());
+        if (request.body != null) {
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(request.body.length);
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(request.body);
+            }
+        }
+        int status = conn.getResponseCode();
+        byte[] body;
+        try (InputStream is = (status >= 400) ? conn.getErrorStream() : conn.getInputStream()) {
+            body = (is != null) ? readFully(is) : new byte[0]; // draining lets the socket be reused
+        }
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, List<String>> h : conn.getHeaderFields().entrySet()) {
+            if (h.getKey() != null && !h.getValue().isEmpty()) headers.put(h.getKey().toLowerCase(Locale.ROOT), String.join(",", h.getValue()));
+        }
+        return new HttpResponse(status, headers, body);
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        for (int n; (n = is.read(buf)) != -1; ) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,15 @@
+package net.rainbowcreation.storage.api.proxy;
+
+import java.util.Collection;
+
+/**
+ * Told when values the client may hold copies of have changed on the master.
+ */
+@FunctionalInterface
+public interface InvalidationListener {
+    /**
+     * @param keys changed keys, or null for every key in the namespace
+     * @param ns   namespace, or null when everything must be dropped (e.g. the link was lost and updates may have been missed)
+     */
+    void onInvalidate(String db, String ns, Collection<String> keys);
+}
@@ -1,18 +1,121 @@
 package net.rainbowcreation.storage.api.proxy;
 
 import net.rainbowcreation.storage.api.ModelField;
+import net.rainbowcreation.storage.api.query.Query;
+import net.rainbowcreation.storage.api.utils.Futures;
 
+import java.nio.charset.StandardCharsets;
+
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 public interface ProxyMessenger {
+    long DEFAULT_TIMEOUT_MS = 10_000;
+    int DEFAULT_MAX_IN_FLIGHT = 4096;
+
     CompletableFuture<Optional<String>> get(String db, String secret, String ns, String key);
     CompletableFuture<Optional<String>> get(String db, String secret, String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset);
     CompletableFuture<Optional<Integer>> count(String db, String secret, String ns, Map<String, String> filters, int limit, int offset);
     void sendRegisterModel(String db, String secret, String ns, String typeName, Map<String, ModelField> fields);
     CompletableFuture<Void> set(String db, String secret, String ns, String key, String json);
     CompletableFuture<Void> delete(String db, String secret, String ns, String key);
+
+    // --- Raw values (UTF-8 JSON bytes, lets the transport skip String conversions) ---
+    default CompletableFuture<Optional<byte[]>> getRaw(String db, String secret, String ns, String key) {
+        return get(db, secret, ns, key).thenApply(v -> v.map(s -> s.getBytes(StandardCharsets.UTF_8)));
+    }
+    default CompletableFuture<Optional<byte[]>> getRaw(String db, String secret, String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset) {
+        return get(db, secret, ns, filters, selections, limit, offset).thenApply(v -> v.map(s -> s.getBytes(StandardCharsets.UTF_8)));
+    }
+    default CompletableFuture<Void> setRaw(String db, String secret, String ns, String key, byte[] value) {
+        return set(db, secret, ns, key, new String(value, StandardCharsets.UTF_8));
+    }
+
+    // --- Batch (per-key fallback, override to send a single frame) ---
+    default CompletableFuture<Map<String, Optional<String>>> getMany(String db, String secret, String ns, Collection<String> keys) {
+        return Futures.perKey(keys, k -> get(db, secret, ns, k));
+    }
+    default CompletableFuture<Void> setMany(String db, String secret, String ns, Map<String, String> jsonByKey) {
+        return Futures.forEachKey(jsonByKey.keySet(), k -> set(db, secret, ns, k, jsonByKey.get(k)));
+    }
+    default CompletableFuture<Void> deleteMany(String db, String secret, String ns, Collection<String> keys) {
+        return Futures.forEachKey(keys, k -> delete(db, secret, ns, k));
+    }
+    default CompletableFuture<Map<String, Optional<byte[]>>> getManyRaw(String db, String secret, String ns, Collection<String> keys) {
+        return Futures.perKey(keys, k -> getRaw(db, secret, ns, k));
+    }
+    default CompletableFuture<Void> setManyRaw(String db, String secret, String ns, Map<String, byte[]> valueByKey) {
+        return Futures.forEachKey(valueByKey.keySet(), k -> setRaw(db, secret, ns, k, valueByKey.get(k)));
+    }
+
+    // --- Atomic (one server-side operation: no read-modify-write round trips, safe across servers) ---
+    // Values are UTF-8 JSON. compareAndSet: expected == null means "key absent", update == null deletes on match
+    default CompletableFuture<Long> increment(String db, String secret, String ns, String key, long delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Double> increment(String db, String secret, String ns, String key, double delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Boolean> compareAndSet(String db, String secret, String ns, String key, byte[] expected, byte[] update) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    // Value stored under the key, after storing def if the key was absent
+    default CompletableFuture<byte[]> getOrInit(String db, String secret, String ns, String key, byte[] def) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // JSON merge-patch (RFC 7396) applied by the master, so only changed fields cross the link
+    default CompletableFuture<Void> patch(String db, String secret, String ns, String key, byte[] patch) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // Typed query run by the master on its indexed columns: JSON array of rows, or the number of matching rows
+    default CompletableFuture<Optional<byte[]>> query(String db, String secret, String ns, Query query) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+    default CompletableFuture<Optional<Integer>> queryCount(String db, String secret, String ns, Query query) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // --- Invalidation push (near caches) ---
+    // Add listeners before register() so the capability is offered on the first handshake.
+    // Transports that cannot push invalidations keep this no-op; caches then rely on their TTL
+    default void addInvalidationListener(InvalidationListener listener) {
+    }
+    // True when this transport delivers invalidations to its listeners at all (if the master offers them)
+    default boolean canPushInvalidations() {
+        return false;
+    }
+    // True while the master pushes invalidations on the current connection; otherwise caches must rely on TTL
+    default boolean pushesInvalidations() {
+        return false;
+    }
+
     void register();
     void unregister();
+
+    // False while the link to the master is down and requests would fail immediately
+    default boolean isConnected() {
+        return true;
+    }
+
+    // Deadline applied to each request from now on, 0 disables it. Optional tuning hook: ignored unless overridden
+    default void setDefaultTimeout(long timeoutMs) {
+    }
+    default long getDefaultTimeout() {
+        return DEFAULT_TIMEOUT_MS;
+    }
+
+    // Requests allowed on the wire at once, further ones queue without blocking. <= 0 means unbounded.
+    // Optional tuning hook: ignored unless overridden
+    default void setMaxInFlight(int max) {
+    }
+    default int inFlight() { return 0; }
+    default int waiting() { return 0; }
+
+    // Reads that joined an identical GET/SEARCH already in flight (hits) vs reads that sent their own (misses)
+    default long coalesceHits() { return 0; }
+    default long coalesceMisses() { return 0; }
 }
\ No newline at end of file
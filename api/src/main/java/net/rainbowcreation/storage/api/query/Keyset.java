@@ -0,0 +1,210 @@
+package net.rainbowcreation.storage.api.query;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Keyset paging of a {@link Query}: each page is read as "rows past the last one returned" instead of an offset, so
+ * page n costs the same as page 1. The query is ordered by the row key ({@link Query#KEY}) last, which makes the sort
+ * order total; the cursor carries the sort values and key of the last row returned. "Past" is a row-value comparison
+ * the query cannot express in one AND, so it is read as one query per sort field, deepest first: same values and a
+ * later key, then same leading values and a later value of the next field up, and so on.
+ * <p>
+ * Rows with a null sort value have no values to resume from; they are paged by offset. Ascending they come first,
+ * descending they follow the rows past the cursor in their group and are read by offset once those run out.
+ * <pre>
+ *   Keyset k = Keyset.of(query);                       // query.cursor() = previous Page.next(), or null
+ *   Page&lt;JsonNode&gt; page = k.page(backend::run).join();
+ * </pre>
+ */
+public final class Keyset {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Query base;
+    private final Query request;       // base ordered by the key last, selecting the sort fields, cursor cleared
+    private final List<Query.Order> sort; // orders up to and including the key
+    private final Set<String> strip;   // members only read for the cursor
+    private final byte[] fingerprint;
+    private final JsonNode last;       // sort values of the last row returned, null = resume by offset
+    private final long returned;       // rows returned so far, counting the first page's offset
+
+    private Keyset(Query base, byte[] fingerprint, JsonNode last, long returned) {
+        this.base = base;
+        this.fingerprint = fingerprint;
+        this.last = last;
+        this.returned = returned;
+
+        boolean keyed = false;
+        for (Query.Order o : base.orders()) keyed |= o.field.equals(Query.KEY);
+        Query q = keyed ? base : base.orderBy(Query.KEY);
+        List<Query.Order> sort = new ArrayList<>();
+        for (Query.Order o : q.orders()) {
+            sort.add(o);
+            if (o.field.equals(Query.KEY)) break;
+        }
+        this.sort = sort;
+        this.strip = new LinkedHashSet<>();
+        if (!keyed && !base.fields().contains(Query.KEY)) strip.add(Query.KEY);
+        q = q.after(null).offset(0);
+        if (!base.fields().isEmpty()) {
+            for (Query.Order o : sort) {
+                if (!o.field.equals(Query.KEY) && !base.fields().contains(o.field) && strip.add(o.field)) q = q.select(o.field);
+            }
+        }
+        this.request = q;
+    }
+
+    /** Paging state of {@code query}: needs an orderBy; limit is the page size, offset applies to the first page. */
+    public static Keyset of(Query query) {
+        if (query.orders().isEmpty()) throw new IllegalArgumentException("Cursor paging needs an orderBy");
+        byte[] fingerprint = fingerprint(query);
+        String cursor = query.cursor();
+        if (cursor == null) return new Keyset(query, fingerprint, null, query.offset());
+
+        JsonNode token;
+        byte[] h;
+        try {
+            token = MAPPER.readTree(Base64.getUrlDecoder().decode(cursor));
+            h = Base64.getUrlDecoder().decode(token.path("h").asText());
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+        }
+        if (!token.path("o").canConvertToLong()) throw new IllegalArgumentException("Invalid cursor " + cursor);
+        if (!MessageDigest.isEqual(h, fingerprint)) throw new IllegalArgumentException("Cursor belongs to another query");
+        Keyset k = new Keyset(query, fingerprint, token.get("v"), token.get("o").asLong());
+        if (k.last != null) {
+            boolean valid = k.last.isArray() && k.last.size() == k.sort.size();
+            for (JsonNode v : k.last) valid &= v.isValueNode() && !v.isNull();
+            if (!valid) throw new IllegalArgumentException("Invalid cursor " + cursor);
+        }
+        return k;
+    }
+
+    /**
+     * Read the page with {@code run}, which executes a query and returns its rows, and the cursor for the one after
+     * it. Rows must carry their {@link Query#KEY}.
+     */
+    public CompletableFuture<Page<JsonNode>> page(Function<? super Query, ? extends CompletableFuture<List<JsonNode>>> run) {
+        CompletableFuture<List<JsonNode>> rows;
+        if (last == null || base.limit() < 0) {
+            Query q = request.offset(offset(returned)).limit(base.limit());
+            rows = run.apply(q).thenApply(ArrayList::new);
+        } else {
+            rows = fill(run, new ArrayList<>(), sort.size() - 1);
+        }
+        return rows.thenApply(this::toPage);
+    }
+
+    // Rows past last, from the deepest sort field up, until the page is full
+    private CompletableFuture<List<JsonNode>> fill(Function<? super Query, ? extends CompletableFuture<List<JsonNode>>> run,
+                                                   List<JsonNode> got, int level) {
+        if (got.size() >= base.limit() || level < 0) return CompletableFuture.completedFuture(got);
+        Query q = past(level);
+        CompletableFuture<List<JsonNode>> rows = (q == null) ? CompletableFuture.completedFuture(new ArrayList<>())
+                : run.apply(q.limit(base.limit() - got.size()));
+        return rows.thenCompose(r -> {
+            got.addAll(r);
+            Query.Order o = sort.get(level);
+            if (got.size() < base.limit() && o.descending && !o.field.equals(Query.KEY)) {
+                // nulls of this field come next and no condition reaches them: read on by offset
+                Query rest = request.offset(offset(returned + got.size())).limit(base.limit() - got.size());
+                return run.apply(rest).thenApply(more -> {
+                    got.addAll(more);
+                    return got;
+                });
+            }
+            return fill(run, got, level - 1);
+        });
+    }
+
+    private Page<JsonNode> toPage(List<JsonNode> items) {
+        if (base.limit() >= 0 && items.size() > base.limit()) items = new ArrayList<>(items.subList(0, base.limit()));
+        String next = null;
+        if (base.limit() >= 0 && !items.isEmpty() && items.size() == base.limit()) {
+            next = token(items.get(items.size() - 1), returned + items.size());
+        }
+        if (!strip.isEmpty()) {
+            for (int i = 0; i < items.size(); i++) {
+                JsonNode row = items.get(i);
+                if (row instanceof ObjectNode) items.set(i, ((ObjectNode) row).deepCopy().without(strip));
+            }
+        }
+        return new Page<>(items, next);
+    }
+
+    // Same values as last on the fields before level, past it on level; null when no value can be past it
+    private Query past(int level) {
+        Query q = request;
+        for (int i = 0; i < level; i++) {
+            JsonNode v = last.get(i);
+            String f = sort.get(i).field;
+            q = v.isBoolean() ? q.eq(f, v.asBoolean()) : q.eq(f, value(v));
+        }
+        JsonNode v = last.get(level);
+        Query.Order o = sort.get(level);
+        if (v.isBoolean()) {
+            // false sorts before true
+            return (v.asBoolean() == o.descending) ? q.eq(o.field, !v.asBoolean()) : null;
+        }
+        return o.descending ? q.lt(o.field, value(v)) : q.gt(o.field, value(v));
+    }
+
+    private static Object value(JsonNode v) {
+        return v.isIntegralNumber() && v.canConvertToLong() ? (Object) v.asLong() : v.isNumber() ? (Object) v.asDouble() : v.asText();
+    }
+
+    private static int offset(long n) {
+        return (int) Math.min(n, Integer.MAX_VALUE);
+    }
+
+    private String token(JsonNode row, long returned) {
+        ObjectNode t = MAPPER.createObjectNode();
+        t.put("h", ENCODER.encodeToString(fingerprint));
+        ArrayNode values = MAPPER.createArrayNode();
+        for (Query.Order o : sort) {
+            JsonNode v = row.get(o.field);
+            if (v == null || v.isNull()) {
+                if (o.field.equals(Query.KEY)) throw new IllegalStateException("Row carries no " + Query.KEY + ", the backend does not return row keys");
+                values = null; // resume by offset
+                break;
+            }
+            values.add(v);
+        }
+        if (values != null) t.set("v", values);
+        t.put("o", returned);
+        return ENCODER.encodeToString(t.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // SHA-256 of the conditions, ordering and selection, written as typed JSON so it is stable across processes
+    private static byte[] fingerprint(Query q) {
+        ArrayNode shape = MAPPER.createArrayNode();
+        ArrayNode where = shape.addArray();
+        for (Query.Condition c : q.conditions()) {
+            ArrayNode w = where.addArray().add(c.field).add(c.op.code);
+            for (Object v : c.values) w.addPOJO(v);
+        }
+        ArrayNode order = shape.addArray();
+        for (Query.Order o : q.orders()) order.addArray().add(o.field).add(o.descending);
+        ArrayNode fields = shape.addArray();
+        for (String f : q.fields()) fields.add(f);
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(MAPPER.writeValueAsBytes(shape));
+        } catch (NoSuchAlgorithmException | java.io.IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
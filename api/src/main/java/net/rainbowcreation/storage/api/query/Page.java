@@ -0,0 +1,36 @@
+package net.rainbowcreation.storage.api.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a cursor-paged query. Pass {@link #next()} to {@link Query#after(String)} for the following page;
+ * it is null once there are no more rows.
+ */
+public final class Page<T> {
+    private final List<T> items;
+    private final String next;
+
+    public Page(List<T> items, String next) {
+        this.items = Collections.unmodifiableList(items);
+        this.next = next;
+    }
+
+    public List<T> items() { return items; }
+
+    /** Opaque continuation token, null on the last page. */
+    public String next() { return next; }
+
+    public boolean hasNext() { return next != null; }
+
+    public <R> Page<R> map(Function<? super T, ? extends R> f) {
+        List<R> out = new ArrayList<>(items.size());
+        for (T item : items) out.add(f.apply(item));
+        return new Page<>(out, next);
+    }
+
+    @Override
+    public String toString() { return items.size() + " items" + (next != null ? ", next " + next : ""); }
+}
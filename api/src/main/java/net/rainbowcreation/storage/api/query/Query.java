@@ -0,0 +1,354 @@
+package net.rainbowcreation.storage.api.query;
+
+import net.rainbowcreation.storage.api.utils.ModelSchema;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Typed query over the @EnableQuery fields of a namespace: comparisons, ranges, IN, string prefixes and ordering,
+ * all run by the backend on its indexed columns. Immutable, every call returns a new query:
+ * <pre>
+ *   Query.where().gt("balance", 1000).orderByDesc("balance").limit(10)
+ * </pre>
+ * Conditions are ANDed. Values are strings, numbers or booleans.
+ */
+public final class Query {
+    /**
+     * Pseudo-field naming the row key: conditions compare it as a string and orderBy sorts by it. A query ordered by
+     * it returns the key of each row as a member of that name (read such rows as JsonNode or Map unless the model
+     * has the member), so it can serve as the unique last sort field.
+     */
+    public static final String KEY = "_key";
+
+    public enum Op {
+        EQ(1, "="), NE(2, "!="), LT(3, "<"), LE(4, "<="), GT(5, ">"), GE(6, ">="),
+        BETWEEN(7, "between"), // inclusive on both ends
+        IN(8, "in"),
+        PREFIX(9, "prefix");
+
+        /** Wire code, stable across versions (unlike the ordinal). */
+        public final byte code;
+        public final String symbol;
+
+        Op(int code, String symbol) {
+            this.code = (byte) code;
+            this.symbol = symbol;
+        }
+
+        boolean isRange() {
+            return this == LT || this == LE || this == GT || this == GE || this == BETWEEN;
+        }
+    }
+
+    public static final class Condition {
+        public final String field;
+        public final Op op;
+        public final List<Object> values; // Long, Double, String or Boolean
+
+        Condition(String field, Op op, List<Object> values) {
+            this.field = field;
+            this.op = op;
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Condition)) return false;
+            Condition c = (Condition) o;
+            return field.equals(c.field) && op == c.op && values.equals(c.values);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(field, op, values); }
+
+        @Override
+        public String toString() { return field + " " + op.symbol + " " + values; }
+    }
+
+    public static final class Order {
+        public final String field;
+        public final boolean descending;
+
+        Order(String field, boolean descending) {
+            this.field = field;
+            this.descending = descending;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Order && field.equals(((Order) o).field) && descending == ((Order) o).descending;
+        }
+
+        @Override
+        public int hashCode() { return field.hashCode() * 31 + (descending ? 1 : 0); }
+
+        @Override
+        public String toString() { return field + (descending ? " desc" : " asc"); }
+    }
+
+    private static final Query EMPTY = new Query(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), 1000, 0, null);
+
+    private final List<Condition> conditions;
+    private final List<Order> orders;
+    private final List<String> fields;
+    private final int limit;
+    private final int offset;
+    private final String cursor;
+
+    private Query(List<Condition> conditions, List<Order> orders, List<String> fields, int limit, int offset, String cursor) {
+        this.conditions = conditions;
+        this.orders = orders;
+        this.fields = fields;
+        this.limit = limit;
+        this.offset = offset;
+        this.cursor = cursor;
+    }
+
+    /** No conditions, natural order, first 1000 rows (the same default as the map-filter reads). */
+    public static Query where() {
+        return EMPTY;
+    }
+
+    // --- Conditions ---
+    public Query eq(String field, Object value) { return with(field, Op.EQ, value); }
+    public Query ne(String field, Object value) { return with(field, Op.NE, value); }
+    public Query lt(String field, Object value) { return with(field, Op.LT, value); }
+    public Query le(String field, Object value) { return with(field, Op.LE, value); }
+    public Query gt(String field, Object value) { return with(field, Op.GT, value); }
+    public Query ge(String field, Object value) { return with(field, Op.GE, value); }
+    public Query between(String field, Object from, Object to) { return with(field, Op.BETWEEN, from, to); }
+    public Query in(String field, Object... values) { return in(field, Arrays.asList(values)); }
+    public Query startsWith(String field, String prefix) { return with(field, Op.PREFIX, prefix); }
+
+    public Query in(String field, Collection<?> values) {
+        if (values.isEmpty()) throw new IllegalArgumentException("IN on " + field + " needs at least one value");
+        if (values.size() > 0xFFFF) throw new IllegalArgumentException("IN on " + field + " has more than 65535 values");
+        return with(field, Op.IN, values.toArray());
+    }
+
+    // --- Ordering, paging, projection ---
+    public Query orderBy(String field) { return order(field, false); }
+    public Query orderByDesc(String field) { return order(field, true); }
+
+    /** Max rows returned (the page size for cursor reads), -1 = unlimited. */
+    public Query limit(int limit) {
+        return new Query(conditions, orders, fields, limit, offset, cursor);
+    }
+
+    public Query offset(int offset) {
+        if (offset < 0) throw new IllegalArgumentException("offset < 0");
+        return new Query(conditions, orders, fields, limit, offset, cursor);
+    }
+
+    /** Continue after the page that returned {@code cursor} (see Page.next()); null starts from the first page. */
+    public Query after(String cursor) {
+        return new Query(conditions, orders, fields, limit, offset, cursor);
+    }
+
+    /** Return only these fields of each row (the whole value when none are selected). */
+    public Query select(String... names) {
+        List<String> f = new ArrayList<>(fields);
+        f.addAll(Arrays.asList(names));
+        return new Query(conditions, orders, Collections.unmodifiableList(f), limit, offset, cursor);
+    }
+
+    public List<Condition> conditions() { return conditions; }
+    public List<Order> orders() { return orders; }
+    public List<String> fields() { return fields; }
+    public int limit() { return limit; }
+    public int offset() { return offset; }
+    public String cursor() { return cursor; }
+
+    /** Whether a condition or ordering names {@code field}. */
+    public boolean uses(String field) {
+        for (Condition c : conditions) if (c.field.equals(field)) return true;
+        for (Order o : orders) if (o.field.equals(field)) return true;
+        return false;
+    }
+
+    /**
+     * Only equality conditions on stored fields, one per field, and no ordering: what the map-filter reads can
+     * express. The row key is not a stored field.
+     */
+    public boolean isPlainEquality() {
+        if (!orders.isEmpty()) return false;
+        Set<String> seen = new HashSet<>();
+        for (Condition c : conditions) {
+            if (c.op != Op.EQ || c.field.equals(KEY) || !seen.add(c.field) || c.values.get(0) instanceof Double) return false;
+        }
+        return true;
+    }
+
+    /** The equality conditions as map filters (text-matched, so floating point ones and the row key are left out). */
+    public Map<String, String> equalityFilters() {
+        Map<String, String> filters = new LinkedHashMap<>();
+        for (Condition c : conditions) {
+            if (c.op == Op.EQ && !c.field.equals(KEY) && !(c.values.get(0) instanceof Double)) {
+                filters.put(c.field, String.valueOf(c.values.get(0)));
+            }
+        }
+        return filters;
+    }
+
+    /**
+     * Check the query against the @EnableQuery fields of {@code model}: every condition and ordering must name an
+     * indexed field (or {@link #KEY}, a string), values must fit its type, ranges need numbers or strings and
+     * prefixes need strings.
+     */
+    public void validate(Class<?> model) {
+        ModelSchema schema = ModelSchema.of(model);
+        for (Condition c : conditions) {
+            Class<?> t = fieldType(schema, model, c.field);
+            Kind kind = Kind.of(t);
+            if (c.op == Op.PREFIX && kind != Kind.STRING) throw new IllegalArgumentException("Prefix match on non-string field " + c.field);
+            if (c.op.isRange() && kind == Kind.BOOLEAN) throw new IllegalArgumentException("Range on boolean field " + c.field);
+            for (Object v : c.values) {
+                if (Kind.of(v.getClass()) != kind) {
+                    throw new IllegalArgumentException("Field " + c.field + " is " + t.getSimpleName() + ", got " + v.getClass().getSimpleName() + " " + v);
+                }
+            }
+        }
+        for (Order o : orders) fieldType(schema, model, o.field);
+    }
+
+    // --- Evaluation over JSON rows, for backends that cannot run the query themselves ---
+
+    public boolean test(JsonNode row) {
+        for (Condition c : conditions) {
+            JsonNode v = (row != null) ? row.get(c.field) : null;
+            if (v == null || v.isNull()) return false; // SQL: comparisons with NULL are never true
+            switch (c.op) {
+                case EQ: if (compare(v, c.values.get(0)) != 0) return false; break;
+                case NE: if (compare(v, c.values.get(0)) == 0) return false; break;
+                case LT: if (compare(v, c.values.get(0)) >= 0) return false; break;
+                case LE: if (compare(v, c.values.get(0)) > 0) return false; break;
+                case GT: if (compare(v, c.values.get(0)) <= 0) return false; break;
+                case GE: if (compare(v, c.values.get(0)) < 0) return false; break;
+                case BETWEEN:
+                    if (compare(v, c.values.get(0)) < 0 || compare(v, c.values.get(1)) > 0) return false;
+                    break;
+                case IN:
+                    boolean any = false;
+                    for (Object x : c.values) any |= compare(v, x) == 0;
+                    if (!any) return false;
+                    break;
+                case PREFIX:
+                    if (!v.isTextual() || !v.asText().startsWith((String) c.values.get(0))) return false;
+                    break;
+            }
+        }
+        return true;
+    }
+
+    /** Row order of {@link #orders()}; nulls sort first ascending, last descending (as in SQL). */
+    public Comparator<JsonNode> ordering() {
+        return (a, b) -> {
+            for (Order o : orders) {
+                int r = compareNodes(a.get(o.field), b.get(o.field));
+                if (r != 0) return o.descending ? -r : r;
+            }
+            return 0;
+        };
+    }
+
+    /** Only the selected fields of {@code row}, or row itself when nothing is selected. */
+    public JsonNode project(JsonNode row) {
+        if (fields.isEmpty() || !(row instanceof ObjectNode)) return row;
+        return ((ObjectNode) row).deepCopy().retain(fields);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Query)) return false;
+        Query q = (Query) o;
+        return limit == q.limit && offset == q.offset && conditions.equals(q.conditions) && orders.equals(q.orders)
+                && fields.equals(q.fields) && Objects.equals(cursor, q.cursor);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(conditions, orders, fields, limit, offset, cursor); }
+
+    @Override
+    public String toString() {
+        return "where " + conditions + " order " + orders + " select " + fields + " limit " + limit + " offset " + offset
+                + (cursor != null ? " after " + cursor : "");
+    }
+
+    private Query with(String field, Op op, Object... values) {
+        List<Object> vs = new ArrayList<>(values.length);
+        for (Object v : values) vs.add(normalize(field, v));
+        List<Condition> cs = new ArrayList<>(conditions);
+        cs.add(new Condition(field, op, Collections.unmodifiableList(vs)));
+        return new Query(Collections.unmodifiableList(cs), orders, fields, limit, offset, cursor);
+    }
+
+    private Query order(String field, boolean descending) {
+        if (orders.size() >= 0xFF) throw new IllegalArgumentException("More than 255 orderings");
+        List<Order> os = new ArrayList<>(orders);
+        os.add(new Order(field, descending));
+        return new Query(conditions, Collections.unmodifiableList(os), fields, limit, offset, cursor);
+    }
+
+    // One representation per kind so equal queries compare equal and encode the same
+    private static Object normalize(String field, Object v) {
+        if (v == null) throw new IllegalArgumentException("Null value for " + field + ", comparisons with null never match");
+        if (v instanceof String || v instanceof Boolean) return v;
+        if (v instanceof Double || v instanceof Float || v instanceof java.math.BigDecimal) return ((Number) v).doubleValue();
+        if (v instanceof Number) return ((Number) v).longValue();
+        if (v instanceof Character || v instanceof Enum) return v.toString();
+        throw new IllegalArgumentException("Unsupported value type for " + field + ": " + v.getClass().getName());
+    }
+
+    private static Class<?> fieldType(ModelSchema schema, Class<?> model, String field) {
+        if (field.equals(KEY)) return String.class;
+        Class<?> t = schema.fieldType(field);
+        if (t == null) throw new IllegalArgumentException(field + " is not an @EnableQuery field of " + model.getSimpleName());
+        return t;
+    }
+
+    private enum Kind {
+        NUMBER, STRING, BOOLEAN;
+
+        static Kind of(Class<?> t) {
+            if (t == String.class) return STRING;
+            if (t == boolean.class || t == Boolean.class) return BOOLEAN;
+            return NUMBER;
+        }
+    }
+
+    // Row value against a query value; values of another kind never compare equal
+    private static int compare(JsonNode v, Object x) {
+        if (x instanceof Long) {
+            if (!v.isNumber()) return 1;
+            return v.isIntegralNumber() && v.canConvertToLong() ? Long.compare(v.asLong(), (Long) x) : Double.compare(v.asDouble(), (Long) x);
+        }
+        if (x instanceof Double) return v.isNumber() ? Double.compare(v.asDouble(), (Double) x) : 1;
+        if (x instanceof Boolean) return v.isBoolean() ? Boolean.compare(v.asBoolean(), (Boolean) x) : 1;
+        return v.isTextual() ? v.asText().compareTo((String) x) : 1;
+    }
+
+    // Row value against row value, in ordering() order
+    static int compareNodes(JsonNode a, JsonNode b) {
+        boolean an = a == null || a.isNull(), bn = b == null || b.isNull();
+        if (an || bn) return an == bn ? 0 : an ? -1 : 1;
+        if (a.isNumber() && b.isNumber()) {
+            return (a.isIntegralNumber() && b.isIntegralNumber() && a.canConvertToLong() && b.canConvertToLong())
+                    ? Long.compare(a.asLong(), b.asLong()) : Double.compare(a.asDouble(), b.asDouble());
+        }
+        if (a.isBoolean() && b.isBoolean()) return Boolean.compare(a.asBoolean(), b.asBoolean());
+        return a.asText().compareTo(b.asText());
+    }
+}
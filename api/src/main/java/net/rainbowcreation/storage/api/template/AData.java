@@ -1,12 +1,33 @@
 package net.rainbowcreation.storage.api.template;
 
+import net.rainbowcreation.storage.api.utils.JsonMergePatch;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 public abstract class AData<T extends AData<T>> {
 
     @JsonIgnore
     protected transient IDataManager dm;
 
+    /** Form last loaded or saved (once the remote confirmed it); save() sends only the difference to it. */
+    @JsonIgnore
+    protected transient volatile JsonNode persisted;
+
+    /** Set by markDirty(), cleared by save() and set again if that save fails; only consulted when dirtyTracking() is on. */
+    @JsonIgnore
+    protected transient volatile boolean dirty;
+
+    /** Form of the latest save still in flight, null once it completed. */
+    @JsonIgnore
+    private transient JsonNode saving;
+
+    private static final LongAdder SKIPPED_SAVES = new LongAdder();
+
     /** Per-entity: storage namespace, e.g. "userById". */
     protected abstract String ns();
 
@@ -17,22 +38,83 @@ public abstract class AData<T extends AData<T>> {
     @SuppressWarnings("unchecked")
     public T with(IDataManager dm) { this.dm = dm; return (T) this; }
 
-    /** Persist this instance. */
+    /**
+     * Override to return true when every mutation of this entity calls {@link #markDirty()}: save() on a clean
+     * instance then returns without serializing. Only this opt-in skips the serialization; by default every save()
+     * serializes the entity and compares it against the last persisted form (sending nothing when they match).
+     */
+    protected boolean dirtyTracking() { return false; }
+
+    /** Record that this instance changed since it was loaded or saved. Has no effect unless dirtyTracking() is on. */
+    protected void markDirty() { dirty = true; }
+
+    @JsonIgnore
+    public boolean isDirty() { return persisted == null || dirty; }
+
+    /** Saves that sent nothing because the entity had not changed, across all entities. */
+    public static long skippedSaves() { return SKIPPED_SAVES.sum(); }
+
+    /** Persist this instance: the whole object the first time, a merge-patch of the changed fields after that. */
     protected boolean save() {
-        if (dm != null) dm.set(ns(), key(), this);
+        if (dm == null) return true;
+        if ((persisted != null || saving != null) && !dirty && dirtyTracking()) {
+            SKIPPED_SAVES.increment();
+            return true;
+        }
+        dirty = false; // before serializing, so a concurrent markDirty() is kept for the next save
+        JsonNode base = persisted;
+        JsonNode now = dm.toTree(this);
+        ObjectNode changes = (base != null) ? JsonMergePatch.diff(base, now) : null;
+        CompletableFuture<Void> sent;
+        if (changes == null || (changes.size() > 0 && !dm.patchesInPlace(ns()))) {
+            sent = dm.setAsync(ns(), key(), now); // the recorded form, not whatever the entity holds once it is sent
+            dm.adoptEntity(ns(), key(), this);
+        } else if (changes.size() > 0) {
+            // If the patch fails, the whole form goes out instead
+            sent = dm.patchAsync(ns(), key(), changes)
+                    .handle((v, t) -> (t == null) ? CompletableFuture.<Void>completedFuture(null) : dm.setAsync(ns(), key(), now))
+                    .thenCompose(f -> f);
+        } else {
+            SKIPPED_SAVES.increment();
+            return true;
+        }
+        synchronized (this) {
+            saving = now;
+        }
+        sent.whenComplete((v, t) -> saved(base, now, t));
         return true;
     }
 
+    // persisted only moves once the remote has the form, and a save that completes after a later one does not move
+    // it back (at worst the next diff is larger). A failed latest save leaves the entity dirty for the next one
+    private synchronized void saved(JsonNode base, JsonNode now, Throwable failure) {
+        if (failure == null && persisted == base) persisted = now;
+        if (saving == now) {
+            saving = null;
+            if (failure != null) dirty = true;
+        }
+    }
+
     /** delete from sgw */
     protected boolean delete() {
-        if (dm != null) dm.delete(ns(), key());
+        if (dm != null) {
+            dm.delete(ns(), key());
+            dm.releaseEntity(ns(), key());
+        }
+        persisted = null;
         return true;
     }
 
-    /** Generic load that also re-attaches dm. */
+    /** Generic load that also re-attaches dm. With an identity map on dm, returns the instance already in use. */
     protected static <R extends AData<R>> R load(IDataManager dm, Class<R> type, String ns, String key) {
+        R live = dm.liveEntity(ns, key, type);
+        if (live != null) return live;
         R r = dm.get(ns, key, type);
-        if (r != null) r.with(dm);
+        if (r != null) {
+            r.with(dm);
+            r.persisted = dm.toTree(r);
+            r = dm.adoptEntity(ns, key, r);
+        }
         return r;
     }
-}
\ No newline at end of file
+}
@@ -5,19 +5,46 @@ import net.rainbowcreation.storage.api.SgwAPI;
 import net.rainbowcreation.storage.api.StorageClient;
 import net.rainbowcreation.storage.api.StorageGateway;
 import net.rainbowcreation.storage.api.annotations.QLQuery;
+import net.rainbowcreation.storage.api.codec.CodecRegistry;
+import net.rainbowcreation.storage.api.codec.JsonCodec;
+import net.rainbowcreation.storage.api.codec.ValueCodec;
 import net.rainbowcreation.storage.api.common.GatewayHandler;
+import net.rainbowcreation.storage.api.network.HttpRequest;
+import net.rainbowcreation.storage.api.network.HttpResponse;
+import net.rainbowcreation.storage.api.network.HttpTransport;
+import net.rainbowcreation.storage.api.network.NioTcpMessenger;
 import net.rainbowcreation.storage.api.network.SimpleTcpMessenger;
 import net.rainbowcreation.storage.api.proxy.ProxyMessenger;
+import net.rainbowcreation.storage.api.query.Keyset;
+import net.rainbowcreation.storage.api.query.Page;
+import net.rainbowcreation.storage.api.query.Query;
+import net.rainbowcreation.storage.api.utils.AsyncSemaphore;
+import net.rainbowcreation.storage.api.utils.Compression;
+import net.rainbowcreation.storage.api.utils.IdentityMap;
+import net.rainbowcreation.storage.api.utils.JsonMergePatch;
+import net.rainbowcreation.storage.api.utils.JsonScalars;
+import net.rainbowcreation.storage.api.utils.JsonTypeCache;
+import net.rainbowcreation.storage.api.utils.ModelAccessors;
+import net.rainbowcreation.storage.api.utils.NearCache;
+import net.rainbowcreation.storage.api.utils.Outbox;
 import net.rainbowcreation.storage.api.utils.SchemaScanner;
+import net.rainbowcreation.storage.api.utils.SgwExecutors;
+import net.rainbowcreation.storage.api.utils.SingleFlight;
+import net.rainbowcreation.storage.api.utils.WriteBuffer;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLEncoder;
 
 import java.nio.charset.StandardCharsets;
@@ -26,6 +53,15 @@ import java.time.Duration;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public abstract class ADataManager implements IDataManager {
 
@@ -51,14 +87,77 @@ public abstract class ADataManager implements IDataManager {
     protected boolean tcpEnabled = false;
     protected String tcpHost = "127.0.0.1";
     protected int tcpPort = 7071;
+    protected boolean tcpNio = false; // multiplex over a shared selector loop instead of a blocking socket + reader thread
+    protected long tcpTimeoutMs = ProxyMessenger.DEFAULT_TIMEOUT_MS; // per-request deadline, 0 = wait forever
 
     // REST API Config
     protected String apiBaseUrl = "http://localhost:7070";
+    protected boolean apiGzipRequests = false; // negotiated in initialize()
+    protected String apiTransport = "nio";     // HttpTransport by name: "nio" (pooled keep-alive, non-blocking), "url", or a plugged-in one
+    protected int apiMaxConnections = 8;       // keep-alive connections to the REST endpoint
+    protected long apiTimeoutMs = 5000;
+    protected HttpTransport http;
+    // Concurrent identical REST reads share one request (over TCP the messenger does this itself)
+    private final SingleFlight<String, HttpResponse> keyReads = new SingleFlight<>();
+    private final SingleFlight<String, HttpResponse> queryReads = new SingleFlight<>();
 
-    protected final ObjectMapper objectMapper = new ObjectMapper();
+    // Async requests allowed in flight per manager, the rest queue without blocking. <= 0 = unbounded
+    protected int maxInFlight = 0;
+    protected int tcpMaxInFlight = ProxyMessenger.DEFAULT_MAX_IN_FLIGHT; // per connection, under maxInFlight
+
+    // Near cache for TCP/API modes (DIRECT_LIBRARY already has the core's L1). 0 entries = off.
+    // Over TCP the master pushes invalidations if it supports them; the TTL bounds staleness otherwise.
+    protected int nearCacheSize = 0;
+    protected long nearCacheTtlMs = 30_000;
+    protected NearCache nearCache;
+
+    // Identity map for AData.load: one live instance per (ns, key) while anything holds it (weak entries)
+    protected boolean entityCache = false;
+    protected IdentityMap entities;
+
+    // Write-behind outbox for TCP/API modes: writes the remote cannot take are logged here and replayed in order. null = off
+    protected String outboxFile = null;
+    protected long outboxRetryMs = 2000;
+    protected Outbox outbox;
+    private final Map<String, CompletableFuture<Void>> keyWrites = new ConcurrentHashMap<>(); // last write per ns/key, see writeBehind
+
+    // Write coalescing for TCP/API modes: writes are held this long, only the last value per key is sent,
+    // batched into one MSET/MDEL per namespace; reads see buffered values, filtered reads and queries flush the
+    // namespace first. 0 = off
+    protected long writeCoalesceMs = 0;
+    protected int writeCoalesceMaxKeys = 512; // flush early once a batch holds this many keys
+    protected WriteBuffer writeBuffer;
+
+    // Decoding and async completions run here instead of on the network threads or the commonPool
+    protected int ioThreads = 0;              // bounded pool size, 0 = max(4, 2 x cores)
+    protected boolean virtualThreads = true;  // use virtual threads instead when running on Java 21+
+    protected Executor executor;
+
+    // Values at least this large are compressed on the wire (TCP and REST), <= 0 disables compression
+    protected int compressThreshold = Compression.DEFAULT_THRESHOLD;
+
+    // Value format for TCP mode writes: "json", "bin" or a ValueCodec plugged in by name; per class with @QLQuery(codec).
+    // The master can only query, patch and increment JSON values. REST and DIRECT_LIBRARY always store JSON
+    protected String valueCodec = JsonCodec.NAME;
+
+    // Typed queries the remote cannot run itself fail with UnsupportedOperationException unless queryFallback is on;
+    // then they are filtered here over at most queryScanLimit rows of the namespace, and miss any match past those.
+    // Plain equality queries always run, as map-filter reads
+    protected boolean queryFallback = false;
+    protected int queryScanLimit = 10_000;
+    private final Map<String, Class<?>> models = new ConcurrentHashMap<>(); // ns -> registered class, for Query.validate
+
+    protected final ObjectMapper objectMapper = new ObjectMapper().registerModule(new ModelAccessors()); // @QLQuery models via MethodHandles
+    protected final JsonTypeCache jsonTypes = new JsonTypeCache(objectMapper); // per-class readers/writers, warmed by registerClass
+    protected final CodecRegistry codecs = new CodecRegistry(jsonTypes);
+    protected final AsyncSemaphore window = new AsyncSemaphore(0, r -> executor().execute(r)); // queued requests start on the manager's executor
 
     public void initialize() {
         logInfo("Initializing Connection for DB: " + dbName);
+        window.setCapacity(maxInFlight);
+        if (executor == null) executor = createExecutor();
+        if (entityCache && entities == null) entities = new IdentityMap();
+        codecs.setDefault(ValueCodec.load(valueCodec));
 
         try {
             Class.forName("net.rainbowcreation.storage.api.SgwAPI");
@@ -78,11 +177,17 @@ public abstract class ADataManager implements IDataManager {
         if (tcpEnabled) {
             try {
                 logInfo("Connecting via TCP to " + tcpHost + ":" + tcpPort + "...");
-                this.tcpMessenger = new SimpleTcpMessenger(tcpHost, tcpPort);
+                this.tcpMessenger = createMessenger();
+                this.tcpMessenger.setDefaultTimeout(tcpTimeoutMs);
+                window.setWaitTimeout(tcpTimeoutMs);
+                boolean cached = openNearCache();
+                if (cached || entities != null) listenForInvalidations(this.tcpMessenger);
                 this.tcpMessenger.register();
                 this.tcpHandler = createSimpleHandler(dbName, token, this.tcpMessenger);
                 this.mode = ConnectionMode.TCP_CLIENT;
                 logInfo("Mode: TCP_CLIENT");
+                openOutbox();
+                openWriteBuffer();
                 registerClasses();
                 return;
             } catch (Exception e) {
@@ -92,7 +197,13 @@ public abstract class ADataManager implements IDataManager {
 
         if (apiBaseUrl != null && !apiBaseUrl.isEmpty()) {
             this.mode = ConnectionMode.API_CLIENT;
-            logInfo("Mode: API_CLIENT (" + apiBaseUrl + ")");
+            this.http = createHttpTransport();
+            window.setWaitTimeout(apiTimeoutMs);
+            this.apiGzipRequests = negotiateApiCompression();
+            openNearCache();
+            logInfo("Mode: API_CLIENT (" + apiBaseUrl + ", " + http.name() + ")" + (apiGzipRequests ? " [gzip]" : ""));
+            openOutbox();
+            openWriteBuffer();
             return;
         }
 
@@ -100,8 +211,316 @@ public abstract class ADataManager implements IDataManager {
     }
 
     public void shutdown() {
+        if (writeBuffer != null) {
+            try { writeBuffer.flush().get(5, TimeUnit.SECONDS); } catch (Exception e) { logWarn("Buffered writes not flushed: " + e); }
+        }
+        if (outbox != null) outbox.close();
         if (tcpMessenger != null) tcpMessenger.unregister();
         if (tcpHandler != null) tcpHandler.shutdown();
+        if (http != null) http.close();
+        if (executor instanceof ExecutorService) ((ExecutorService) executor).shutdown();
+    }
+
+    // Override to plug in a custom transport
+    protected ProxyMessenger createMessenger() {
+        SimpleTcpMessenger m = tcpNio ? new NioTcpMessenger(tcpHost, tcpPort) : new SimpleTcpMessenger(tcpHost, tcpPort);
+        m.setCompressionThreshold(compressThreshold);
+        m.setMaxInFlight(tcpMaxInFlight);
+        return m;
+    }
+
+    // Override to plug in a custom HTTP client (or register one under META-INF/services and set apiTransport)
+    protected HttpTransport createHttpTransport() {
+        HttpTransport t = HttpTransport.load(apiTransport);
+        t.setMaxConnections(apiMaxConnections);
+        return t;
+    }
+
+    // Override to supply a shared or instrumented executor; it is shut down with the manager if it is an ExecutorService
+    protected Executor createExecutor() {
+        return SgwExecutors.newExecutor("SGW-" + dbName, ioThreads, virtualThreads);
+    }
+
+    @Override
+    public Executor executor() {
+        Executor e = executor;
+        return (e != null) ? e : IDataManager.super.executor();
+    }
+
+    // --- Metrics ---
+
+    /** Async requests currently running through this manager. */
+    public int inFlight() {
+        return window.inFlight();
+    }
+
+    /** Async requests waiting for a free slot in the window. */
+    public int waiting() {
+        return window.waiting();
+    }
+
+    /** Reads served by joining an identical read already in flight. */
+    public long coalesceHits() {
+        return keyReads.hits() + queryReads.hits() + (tcpMessenger != null ? tcpMessenger.coalesceHits() : 0);
+    }
+
+    /** Reads that had to send their own request. */
+    public long coalesceMisses() {
+        return keyReads.misses() + queryReads.misses() + (tcpMessenger != null ? tcpMessenger.coalesceMisses() : 0);
+    }
+
+    // --- Near Cache ---
+
+    private boolean openNearCache() {
+        if (nearCacheSize <= 0) return false;
+        if (nearCache == null) nearCache = new NearCache(nearCacheSize, nearCacheTtlMs);
+        logInfo("Near cache: " + nearCacheSize + " entries, TTL " + nearCacheTtlMs + "ms");
+        return true;
+    }
+
+    // A messenger that cannot push invalidations keeps the no-op default: say so once instead of failing startup
+    private void listenForInvalidations(ProxyMessenger m) {
+        m.addInvalidationListener(this::onInvalidate);
+        if (!m.canPushInvalidations()) logWarn(m.getClass().getName() + " does not push invalidations: near cache entries live until their TTL, "
+                + "the identity map only sees writes made through this manager");
+    }
+
+    private void onInvalidate(String db, String ns, Collection<String> keys) {
+        NearCache c = nearCache;
+        if (c != null) {
+            if (ns == null) c.clear();
+            else if (db.equals(dbName)) {
+                if (keys == null) c.invalidateNamespace(ns);
+                else c.invalidate(ns, keys);
+            }
+        }
+        IdentityMap m = entities; // changed elsewhere: the next load reads the new value instead of the live copy
+        if (m != null) {
+            if (ns == null) m.clear();
+            else if (db.equals(dbName)) {
+                if (keys == null) m.invalidateNamespace(ns);
+                else m.invalidate(ns, keys);
+            }
+        }
+    }
+
+    // --- Identity Map ---
+
+    @Override
+    public <T> T liveEntity(String ns, String key, Class<T> type) {
+        IdentityMap m = entities;
+        return (m != null) ? m.get(nss(ns), key, type) : null;
+    }
+
+    @Override
+    public <T> T adoptEntity(String ns, String key, T entity) {
+        IdentityMap m = entities;
+        return (m != null) ? m.putIfAbsent(nss(ns), key, entity) : entity;
+    }
+
+    @Override
+    public void releaseEntity(String ns, String key) {
+        IdentityMap m = entities;
+        if (m != null) m.invalidate(nss(ns), Collections.singleton(key));
+    }
+
+    private byte[] cached(String n, String key) {
+        NearCache c = nearCache;
+        return (c != null) ? c.get(n, key) : null;
+    }
+
+    // Take before a fetch starts, see NearCache.stamp()
+    private long cacheStamp() {
+        NearCache c = nearCache;
+        return (c != null) ? c.stamp() : 0;
+    }
+
+    private void cacheFill(String n, String key, byte[] value, long stamp) {
+        NearCache c = nearCache;
+        if (c != null && value != null) c.put(n, key, value, stamp);
+    }
+
+    // Called before and after a write: the second pass drops values read while the write was in flight.
+    // Later REST reads also stop joining coalesced ones that may have been answered before the write
+    private void cacheEvict(String n, Collection<String> keys) {
+        NearCache c = nearCache;
+        if (c != null) c.invalidate(n, keys);
+        if (mode == ConnectionMode.API_CLIENT) {
+            for (String k : keys) keyReads.forget(String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, k, token));
+            queryReads.forgetAll();
+        }
+    }
+
+    // --- Write Buffer ---
+
+    private void openWriteBuffer() {
+        if (writeCoalesceMs <= 0) return;
+        writeBuffer = new WriteBuffer(writeCoalesceMs, writeCoalesceMaxKeys, this::writeBatch, executor);
+        logInfo("Write coalescing: " + writeCoalesceMs + "ms window, up to " + writeCoalesceMaxKeys + " keys per batch");
+    }
+
+    /** Send buffered writes now instead of waiting for the window to close. */
+    @Override
+    public CompletableFuture<Void> flush() {
+        return (writeBuffer != null) ? offload(writeBuffer.flush()) : CompletableFuture.completedFuture(null);
+    }
+
+    /** Writes that were folded into a newer value for the same key instead of being sent. */
+    public long coalescedWrites() {
+        return (writeBuffer != null) ? writeBuffer.coalesced() : 0;
+    }
+
+    // Null when the key has no buffered write, empty for a buffered delete
+    private Optional<byte[]> buffered(String n, String key) {
+        WriteBuffer b = writeBuffer;
+        return (b != null) ? b.lookup(n, key) : null;
+    }
+
+    // Filtered reads and queries run on the remote, which has not seen writes still buffered for the namespace: send
+    // those first. A failed flush has already failed its writers, the read goes ahead without them
+    private CompletableFuture<Void> flushed(String n) {
+        WriteBuffer b = writeBuffer;
+        if (b == null) return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> f = b.flush(n);
+        return f.isDone() ? CompletableFuture.completedFuture(null) : offload(f.handle((v, t) -> null));
+    }
+
+    // One namespace of a flushed batch: one MSET and one MDEL, or key by key while the outbox may have to keep them
+    private CompletableFuture<Void> writeBatch(String n, Map<String, byte[]> sets, List<String> deletes) {
+        List<CompletableFuture<Void>> sent = new ArrayList<>(2);
+        if (outbox != null) {
+            for (Map.Entry<String, byte[]> e : sets.entrySet()) sent.add(window.run(() -> sendSet(n, e.getKey(), e.getValue())));
+            for (String k : deletes) sent.add(window.run(() -> sendDelete(n, k)));
+        } else {
+            if (!sets.isEmpty()) sent.add(window.run(() -> sendSetMany(n, sets)));
+            if (!deletes.isEmpty()) sent.add(window.run(() -> sendDeleteMany(n, deletes)));
+        }
+        List<String> keys = new ArrayList<>(sets.keySet());
+        keys.addAll(deletes);
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).whenComplete((v, t) -> cacheEvict(n, keys));
+    }
+
+    private CompletableFuture<Void> sendSetMany(String n, Map<String, byte[]> values) {
+        try {
+            if (mode == ConnectionMode.TCP_CLIENT) return tcpHandler.setManyRaw(n, values);
+            // Values are JSON already: splice them into the _mset object as they are
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (JsonGenerator g = objectMapper.getFactory().createGenerator(body)) {
+                g.writeStartObject();
+                for (Map.Entry<String, byte[]> e : values.entrySet()) {
+                    g.writeFieldName(e.getKey());
+                    g.writeRawValue(new String(e.getValue(), StandardCharsets.UTF_8));
+                }
+                g.writeEndObject();
+            }
+            return httpPostAsync(String.format("%s/%s/%s/_mset?token=%s", apiBaseUrl, dbName, n, token), body.toByteArray());
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<Void> sendDeleteMany(String n, List<String> keys) {
+        if (mode == ConnectionMode.TCP_CLIENT) return tcpHandler.deleteMany(n, keys);
+        try {
+            return httpPostAsync(String.format("%s/%s/%s/_mdel?token=%s", apiBaseUrl, dbName, n, token), objectMapper.writeValueAsBytes(keys));
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+    }
+
+    // --- Outbox ---
+
+    private void openOutbox() {
+        if (outboxFile == null || outboxFile.isEmpty()) return;
+        try {
+            outbox = new Outbox(new File(outboxFile));
+            outbox.drainTo(this::replay, this::remoteUp, outboxRetryMs);
+            logInfo("Outbox: " + outboxFile);
+        } catch (IOException e) {
+            logSevere("Cannot open outbox " + outboxFile + ", writes will not survive link loss: " + e.getMessage());
+        }
+    }
+
+    private boolean remoteUp() {
+        return mode != ConnectionMode.TCP_CLIENT || tcpMessenger.isConnected(); // REST has no link state, just try
+    }
+
+    // Send directly, or log to the outbox while the remote is down or older writes are still queued there (keeps order).
+    // A write to a key waits for the previous direct write to that key, so one that fails and goes to the outbox is
+    // queued ahead of the later ones instead of behind them (where replay would apply the stale value last)
+    private CompletableFuture<Void> writeBehind(byte type, String n, String key, byte[] value, Supplier<CompletableFuture<Void>> send) {
+        Outbox box = outbox;
+        if (box == null) return send.get();
+        Outbox.Record record = new Outbox.Record(type, n, key, value);
+        String id = n + '\0' + key;
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        CompletableFuture<Void> previous = keyWrites.put(id, f);
+        f.whenComplete((v, t) -> keyWrites.remove(id, f));
+        if (previous == null) sendOrQueue(box, record, send, f);
+        else previous.whenCompleteAsync((v, t) -> sendOrQueue(box, record, send, f), executor());
+        return f;
+    }
+
+    private void sendOrQueue(Outbox box, Outbox.Record record, Supplier<CompletableFuture<Void>> send, CompletableFuture<Void> f) {
+        if (box.hasBacklog() || !remoteUp()) {
+            box.append(record).whenComplete((v, t) -> {
+                if (t == null) f.complete(null);
+                else f.completeExceptionally(t);
+            });
+            return;
+        }
+        CompletableFuture<Void> sent;
+        try { sent = send.get(); } catch (Exception e) { sent = failedFuture(e); }
+        sent.whenComplete((v, t) -> {
+            if (t == null) f.complete(null);
+            else if (!isLinkFailure(t)) f.completeExceptionally(t);
+            else box.append(record).whenComplete((v2, t2) -> {
+                if (t2 == null) f.complete(null);
+                else f.completeExceptionally(t);
+            });
+        });
+    }
+
+    private CompletableFuture<Void> replay(Outbox.Record r) {
+        CompletableFuture<Void> sent;
+        switch (mode) {
+            case TCP_CLIENT:
+                sent = (r.type == Outbox.PATCH) ? sendPatch(r.ns, r.key, r.value)
+                        : (r.type == Outbox.SET) ? tcpHandler.setRaw(r.ns, r.key, r.value) : tcpHandler.delete(r.ns, r.key);
+                break;
+            case API_CLIENT:
+                String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, r.ns, r.key, token);
+                sent = (r.type == Outbox.PATCH) ? sendPatch(r.ns, r.key, r.value)
+                        : (r.type == Outbox.SET) ? httpPostAsync(url, r.value) : httpDeleteAsync(url);
+                break;
+            default:
+                return CompletableFuture.completedFuture(null);
+        }
+        return sent.handle((v, t) -> {
+            if (t != null && (isLinkFailure(t) || isTimeout(t))) throw new CompletionException(t); // keep it, retry later
+            if (t != null) logWarn("Dropping queued write " + r.ns + "/" + r.key + " refused by the remote: " + t.getMessage());
+            cacheEvict(r.ns, Collections.singleton(r.key));
+            return null;
+        });
+    }
+
+    // True when the write did not reach the remote, as opposed to the remote refusing it. A timeout is neither:
+    // the remote may have applied it, so the caller gets the timeout instead of a queued duplicate
+    private boolean isLinkFailure(Throwable t) {
+        t = unwrap(t);
+        if (t instanceof TimeoutException) return false;
+        if (mode == ConnectionMode.TCP_CLIENT) return !tcpMessenger.isConnected();
+        if (t instanceof HttpStatusException) return ((HttpStatusException) t).status >= 500;
+        return t instanceof IOException;
+    }
+
+    private static boolean isTimeout(Throwable t) {
+        return unwrap(t) instanceof TimeoutException;
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t.getClass() == RuntimeException.class) && t.getCause() != null) t = t.getCause();
+        return t;
     }
 
     // Override for complex namespace keying (e.g., adding region prefix)
@@ -119,11 +538,14 @@ public abstract class ADataManager implements IDataManager {
             return;
         }
 
+        jsonTypes.warm(cls);
         QLQuery ql = cls.getAnnotation(QLQuery.class);
         String finalNs = nss(ql.namespace());
         String typeName = ql.typeName();
 
+        models.put(finalNs, cls);
         try {
+            if (!ql.codec().isEmpty()) useCodec(finalNs, ql.codec());
             if (mode == ConnectionMode.DIRECT_LIBRARY) {
                 SC.registerClass(finalNs, cls);
                 logInfo("Registered Direct Model: " + typeName);
@@ -138,43 +560,204 @@ public abstract class ADataManager implements IDataManager {
         }
     }
 
+    /** Write values of {@code ns} with the codec registered under {@code name}; values stored before stay readable. */
+    public void useCodec(String ns, String name) {
+        codecs.use(nss(ns), ValueCodec.load(name));
+    }
+
+    // Stored bytes of a value: the namespace's codec over TCP, JSON everywhere else
+    private byte[] encode(String n, Object value) throws IOException {
+        return (mode == ConnectionMode.TCP_CLIENT) ? codecs.encode(n, value) : jsonTypes.writer(value).writeValueAsBytes(value);
+    }
+
+    // Values of n are JSON on the remote, so it can patch, increment and query them
+    private boolean remoteJson(String n) {
+        return mode != ConnectionMode.TCP_CLIENT || codecs.isJson(n);
+    }
+
+    // Patches are rewritten here for other codecs, but the master has no way to increment or query them
+    private void requireJson(String n, String op) {
+        if (!remoteJson(n)) {
+            throw new IllegalArgumentException("Cannot " + op + " " + n + ": its values are stored as " + codecs.codecFor(n).name() + ", not JSON");
+        }
+    }
+
+    @Override
+    public boolean patchesInPlace(String ns) {
+        return remoteJson(nss(ns));
+    }
+
+    @Override
+    public JsonNode toTree(Object value) {
+        return (value instanceof JsonNode) ? (JsonNode) value : objectMapper.valueToTree(value);
+    }
+
     @Override
     public <T> T get(String ns, String key, Class<T> type) {
         String n = nss(ns);
         try {
-            switch (mode) {
-                case DIRECT_LIBRARY:
-                    return SC.getBlocking(n, key, type, Duration.ofMillis(500));
+            if (mode == ConnectionMode.DIRECT_LIBRARY) return SC.getBlocking(n, key, type, Duration.ofMillis(500));
+            byte[] raw = rawValue(n, key);
+            return (raw != null) ? convert(raw, type) : null;
+        } catch (Exception e) { e.printStackTrace(); }
+        return null;
+    }
 
-                case TCP_CLIENT:
-                    Optional<String> opt = tcpHandler.get(n, key).join();
-                    return opt.map(s -> convert(s, type)).orElse(null);
+    // Stored JSON of a key in TCP/API modes, null when missing: a buffered write, the near cache, then the remote
+    private byte[] rawValue(String n, String key) throws Exception {
+        Optional<byte[]> pending = buffered(n, key);
+        if (pending != null) return pending.orElse(null);
+        byte[] hit = cached(n, key);
+        if (hit != null) return hit;
+        long stamp = cacheStamp();
+        byte[] body = (mode == ConnectionMode.TCP_CLIENT)
+                ? tcpHandler.getRaw(n, key).join().orElse(null)
+                : httpGetBytes(String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token));
+        cacheFill(n, key, body, stamp);
+        return body;
+    }
 
-                case API_CLIENT:
-                    String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
-                    return httpGet(url, type);
+    // --- Primitives (numbers and booleans parsed off / written into their JSON bytes, see JsonScalars) ---
+
+    @Override
+    public int getIntOr(String ns, String key, int def) {
+        String n = nss(ns);
+        try {
+            if (mode == ConnectionMode.DIRECT_LIBRARY) return Math.toIntExact(SC.getLongOr(n, key, def));
+            byte[] raw = rawValue(n, key);
+            if (raw == null) return def;
+            try { return JsonScalars.parseInt(raw); }
+            catch (NumberFormatException e) { // not a plain number, e.g. "42" stored as a string
+                Integer v = convert(raw, Integer.class);
+                return (v != null) ? v : def;
             }
         } catch (Exception e) { e.printStackTrace(); }
-        return null;
+        return def;
+    }
+
+    @Override
+    public long getLongOr(String ns, String key, long def) {
+        String n = nss(ns);
+        try {
+            if (mode == ConnectionMode.DIRECT_LIBRARY) return SC.getLongOr(n, key, def);
+            byte[] raw = rawValue(n, key);
+            if (raw == null) return def;
+            try { return JsonScalars.parseLong(raw); }
+            catch (NumberFormatException e) {
+                Long v = convert(raw, Long.class);
+                return (v != null) ? v : def;
+            }
+        } catch (Exception e) { e.printStackTrace(); }
+        return def;
+    }
+
+    @Override
+    public double getDoubleOr(String ns, String key, double def) {
+        String n = nss(ns);
+        try {
+            if (mode == ConnectionMode.DIRECT_LIBRARY) return SC.getDoubleOr(n, key, def);
+            byte[] raw = rawValue(n, key);
+            if (raw == null) return def;
+            try { return JsonScalars.parseDouble(raw); }
+            catch (NumberFormatException e) {
+                Double v = convert(raw, Double.class);
+                return (v != null) ? v : def;
+            }
+        } catch (Exception e) { e.printStackTrace(); }
+        return def;
+    }
+
+    @Override
+    public boolean getBoolOr(String ns, String key, boolean def) {
+        String n = nss(ns);
+        try {
+            if (mode == ConnectionMode.DIRECT_LIBRARY) return SC.getBoolOr(n, key, def);
+            byte[] raw = rawValue(n, key);
+            if (raw == null) return def;
+            try { return JsonScalars.parseBoolean(raw); }
+            catch (NumberFormatException e) {
+                Boolean v = convert(raw, Boolean.class);
+                return (v != null) ? v : def;
+            }
+        } catch (Exception e) { e.printStackTrace(); }
+        return def;
+    }
+
+    @Override
+    public void setInt(String ns, String key, int val) { setLongAsync(ns, key, val); }
+    @Override
+    public CompletableFuture<Void> setIntAsync(String ns, String key, int val) { return setLongAsync(ns, key, val); }
+
+    @Override
+    public void setLong(String ns, String key, long val) { setLongAsync(ns, key, val); }
+    @Override
+    public CompletableFuture<Void> setLongAsync(String ns, String key, long val) {
+        return setEncoded(ns, key, () -> JsonScalars.bytes(val), n -> SC.setLong(n, key, val));
+    }
+
+    @Override
+    public void setDouble(String ns, String key, double val) { setDoubleAsync(ns, key, val); }
+    @Override
+    public CompletableFuture<Void> setDoubleAsync(String ns, String key, double val) {
+        return setEncoded(ns, key, () -> JsonScalars.bytes(val), n -> SC.setDouble(n, key, val));
+    }
+
+    @Override
+    public void setBool(String ns, String key, boolean val) { setBoolAsync(ns, key, val); }
+    @Override
+    public CompletableFuture<Void> setBoolAsync(String ns, String key, boolean val) {
+        return setEncoded(ns, key, () -> JsonScalars.bytes(val), n -> SC.setBool(n, key, val));
+    }
+
+    // setAsync for values encoded by hand: raw is only built for the remote modes, direct is the DIRECT_LIBRARY call
+    private CompletableFuture<Void> setEncoded(String ns, String key, Supplier<byte[]> raw, Function<String, CompletableFuture<Void>> direct) {
+        String n = nss(ns);
+        Collection<String> keys = Collections.singleton(key);
+        cacheEvict(n, keys);
+        try {
+            if (mode == ConnectionMode.DIRECT_LIBRARY) return offload(window.run(() -> direct.apply(n)));
+            byte[] json = raw.get();
+            if (writeBuffer != null) return offload(writeBuffer.put(n, key, json));
+            return offload(window.run(() -> sendSet(n, key, json))).whenComplete((r, t) -> cacheEvict(n, keys));
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
     }
 
     @Override
     public <T> CompletableFuture<T> getAsync(String ns, String key, Class<T> type) {
+        Optional<byte[]> pending = buffered(nss(ns), key);
+        if (pending != null) return CompletableFuture.completedFuture(pending.map(b -> convert(b, type)).orElse(null));
+        byte[] hit = cached(nss(ns), key); // a hit needs neither a window slot nor the network
+        if (hit != null) return CompletableFuture.completedFuture(convert(hit, type));
+        return window.run(() -> getNow(ns, key, type));
+    }
+
+    private <T> CompletableFuture<T> getNow(String ns, String key, Class<T> type) {
         String n = nss(ns);
+        long stamp = cacheStamp();
         try {
             switch (mode) {
                 case DIRECT_LIBRARY:
                     return SC.get(n, key, type).thenApply(opt -> opt.orElse(null));
 
                 case TCP_CLIENT:
-                    return tcpHandler.get(n, key).thenApply(opt ->
-                            opt.map(s -> convert(s, type)).orElse(null)
-                    );
+                    return offload(tcpHandler.getRaw(n, key)).thenApply(opt -> {
+                        opt.ifPresent(b -> cacheFill(n, key, b, stamp));
+                        return opt.map(b -> convert(b, type)).orElse(null);
+                    });
 
                 case API_CLIENT:
-                    return CompletableFuture.supplyAsync(() -> {
-                        String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
-                        try { return httpGet(url, type); } catch (Exception e) { return null; }
+                    String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
+                    return readKey(url).handle((r, t) -> {
+                        if (t != null || r == null) return null;
+                        try {
+                            byte[] body = bytes(r);
+                            cacheFill(n, key, body, stamp);
+                            return convert(body, type);
+                        } catch (IOException e) {
+                            return null;
+                        }
                     });
             }
         } catch (Exception e) {
@@ -192,6 +775,17 @@ public abstract class ADataManager implements IDataManager {
 
     @Override
     public CompletableFuture<Void> setAsync(String ns, String key, Object value) {
+        Collection<String> keys = Collections.singleton(key);
+        String n = nss(ns);
+        cacheEvict(n, keys);
+        if (writeBuffer != null) {
+            try { return offload(writeBuffer.put(n, key, encode(n, value))); }
+            catch (Exception e) { return failedFuture(e); }
+        }
+        return offload(window.run(() -> setNow(ns, key, value))).whenComplete((r, t) -> cacheEvict(n, keys));
+    }
+
+    private CompletableFuture<Void> setNow(String ns, String key, Object value) {
         String n = nss(ns);
         try {
             switch (mode) {
@@ -199,18 +793,9 @@ public abstract class ADataManager implements IDataManager {
                     return SC.set(n, key, value);
 
                 case TCP_CLIENT:
-                    String json = objectMapper.writeValueAsString(value);
-                    return tcpHandler.set(n, key, json);
-
                 case API_CLIENT:
-                    return CompletableFuture.runAsync(() -> {
-                        try {
-                            String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
-                            httpPost(url, objectMapper.writeValueAsString(value));
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
+                    // Encoded bytes go straight into the frame, no String round trip
+                    return sendSet(n, key, encode(n, value));
             }
         } catch (Exception e) {
             return failedFuture(e);
@@ -218,43 +803,419 @@ public abstract class ADataManager implements IDataManager {
         return CompletableFuture.completedFuture(null);
     }
 
+    private CompletableFuture<Void> sendSet(String n, String key, byte[] raw) {
+        if (mode == ConnectionMode.TCP_CLIENT) return writeBehind(Outbox.SET, n, key, raw, () -> tcpHandler.setRaw(n, key, raw));
+        String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
+        return writeBehind(Outbox.SET, n, key, raw, () -> httpPostAsync(url, raw));
+    }
+
+    private CompletableFuture<Void> sendDelete(String n, String key) {
+        if (mode == ConnectionMode.TCP_CLIENT) return writeBehind(Outbox.DELETE, n, key, null, () -> tcpHandler.delete(n, key));
+        String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
+        return writeBehind(Outbox.DELETE, n, key, null, () -> httpDeleteAsync(url));
+    }
+
     @Override
     public void delete(String ns, String key) {
         String n = nss(ns);
+        Collection<String> keys = Collections.singleton(key);
+        cacheEvict(n, keys);
+        if (writeBuffer != null) {
+            writeBuffer.put(n, key, null);
+            return;
+        }
         try {
             switch (mode) {
                 case DIRECT_LIBRARY: SC.delete(n, key); break;
-                case TCP_CLIENT:     tcpHandler.delete(n, key); break;
+                case TCP_CLIENT:
+                    sendDelete(n, key).whenComplete((r, t) -> cacheEvict(n, keys));
+                    break;
                 case API_CLIENT:
-                    String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
-                    httpDelete(url);
+                    await(sendDelete(n, key));
+                    cacheEvict(n, keys);
                     break;
             }
         } catch (Exception e) { e.printStackTrace(); }
     }
 
+    @Override
+    public <T> CompletableFuture<Map<String, T>> getManyAsync(String ns, Collection<String> keys, Class<T> type) {
+        if (nearCache == null && writeBuffer == null) return window.run(() -> getManyNow(ns, keys, type));
+
+        // Serve what the write buffer and near cache hold, fetch only the rest
+        String n = nss(ns);
+        Map<String, T> hits = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String k : keys) {
+            Optional<byte[]> pending = buffered(n, k);
+            byte[] b = (pending != null) ? pending.orElse(null) : cached(n, k);
+            if (pending != null || b != null) hits.put(k, (b != null) ? convert(b, type) : null);
+            else missing.add(k);
+        }
+        CompletableFuture<Map<String, T>> fetched = missing.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyMap())
+                : window.run(() -> getManyNow(ns, missing, type));
+        return fetched.thenApply(res -> {
+            Map<String, T> out = new LinkedHashMap<>();
+            for (String k : keys) out.put(k, hits.containsKey(k) ? hits.get(k) : res.get(k));
+            return out;
+        });
+    }
+
+    private <T> CompletableFuture<Map<String, T>> getManyNow(String ns, Collection<String> keys, Class<T> type) {
+        String n = nss(ns);
+        try {
+            switch (mode) {
+                case DIRECT_LIBRARY:
+                    return SC.getMany(n, keys, type).thenApply(res -> {
+                        Map<String, T> out = new LinkedHashMap<>();
+                        res.forEach((k, opt) -> out.put(k, opt.orElse(null)));
+                        return out;
+                    });
+
+                case TCP_CLIENT:
+                    long stamp = cacheStamp();
+                    return offload(tcpHandler.getManyRaw(n, keys)).thenApply(res -> {
+                        Map<String, T> out = new LinkedHashMap<>();
+                        res.forEach((k, opt) -> {
+                            opt.ifPresent(b -> cacheFill(n, k, b, stamp));
+                            out.put(k, opt.map(b -> convert(b, type)).orElse(null));
+                        });
+                        return out;
+                    });
+
+                case API_CLIENT:
+                    String url = String.format("%s/%s/%s/_mget?token=%s", apiBaseUrl, dbName, n, token);
+                    return httpPostReadAsync(url, objectMapper.writeValueAsBytes(keys))
+                            .handle((r, t) -> convertMany(t == null ? r : null, keys, type));
+            }
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(new LinkedHashMap<>());
+    }
+
+    @Override
+    public CompletableFuture<Void> setManyAsync(String ns, Map<String, ?> values) {
+        String n = nss(ns);
+        cacheEvict(n, values.keySet());
+        if (writeBuffer != null) {
+            List<CompletableFuture<Void>> puts = new ArrayList<>(values.size());
+            try {
+                for (Map.Entry<String, ?> e : values.entrySet()) puts.add(writeBuffer.put(n, e.getKey(), encode(n, e.getValue())));
+            } catch (Exception e) {
+                return failedFuture(e);
+            }
+            return offload(CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0])));
+        }
+        if (outbox != null) {
+            // key by key behind any writes to the same keys queued in the outbox, as a flushed batch is
+            Map<String, byte[]> raw = new LinkedHashMap<>();
+            try {
+                for (Map.Entry<String, ?> e : values.entrySet()) raw.put(e.getKey(), encode(n, e.getValue()));
+            } catch (Exception e) {
+                return failedFuture(e);
+            }
+            return offload(writeBatch(n, raw, Collections.emptyList()));
+        }
+        return offload(window.run(() -> setManyNow(ns, values))).whenComplete((r, t) -> cacheEvict(n, values.keySet()));
+    }
+
+    private CompletableFuture<Void> setManyNow(String ns, Map<String, ?> values) {
+        String n = nss(ns);
+        try {
+            switch (mode) {
+                case DIRECT_LIBRARY:
+                    return SC.setMany(n, values);
+
+                case TCP_CLIENT:
+                    Map<String, byte[]> rawByKey = new LinkedHashMap<>();
+                    for (Map.Entry<String, ?> e : values.entrySet()) rawByKey.put(e.getKey(), encode(n, e.getValue()));
+                    return tcpHandler.setManyRaw(n, rawByKey);
+
+                case API_CLIENT:
+                    String url = String.format("%s/%s/%s/_mset?token=%s", apiBaseUrl, dbName, n, token);
+                    return httpPostAsync(url, objectMapper.writeValueAsBytes(values));
+            }
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteManyAsync(String ns, Collection<String> keys) {
+        String n = nss(ns);
+        cacheEvict(n, keys);
+        if (writeBuffer != null) {
+            List<CompletableFuture<Void>> puts = new ArrayList<>(keys.size());
+            for (String k : keys) puts.add(writeBuffer.put(n, k, null));
+            return offload(CompletableFuture.allOf(puts.toArray(new CompletableFuture<?>[0])));
+        }
+        if (outbox != null) return offload(writeBatch(n, Collections.emptyMap(), new ArrayList<>(keys)));
+        return offload(window.run(() -> deleteManyNow(ns, keys))).whenComplete((r, t) -> cacheEvict(n, keys));
+    }
+
+    private CompletableFuture<Void> deleteManyNow(String ns, Collection<String> keys) {
+        String n = nss(ns);
+        try {
+            switch (mode) {
+                case DIRECT_LIBRARY:
+                    return SC.deleteMany(n, keys);
+
+                case TCP_CLIENT:
+                    return tcpHandler.deleteMany(n, keys);
+
+                case API_CLIENT:
+                    String url = String.format("%s/%s/%s/_mdel?token=%s", apiBaseUrl, dbName, n, token);
+                    return httpPostAsync(url, objectMapper.writeValueAsBytes(keys));
+            }
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // --- Atomic (single server-side ops; never queued in the outbox, replaying one is not idempotent, but they wait
+    // for the writes queued there so they never overtake them) ---
+
+    @Override
+    public CompletableFuture<Long> incrementAsync(String ns, String key, long delta) {
+        String n = nss(ns);
+        try { requireJson(n, "increment"); }
+        catch (IllegalArgumentException e) { return failedFuture(e); }
+        return atomic(n, key, () -> {
+            switch (mode) {
+                case DIRECT_LIBRARY: return SC.increment(n, key, delta);
+                case TCP_CLIENT: return tcpHandler.increment(n, key, delta);
+                default: return httpAtomic(n, "_incr", atomicBody(key, "delta", delta)).thenApply(s -> Long.parseLong(s.trim()));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Double> incrementAsync(String ns, String key, double delta) {
+        String n = nss(ns);
+        try { requireJson(n, "increment"); }
+        catch (IllegalArgumentException e) { return failedFuture(e); }
+        return atomic(n, key, () -> {
+            switch (mode) {
+                case DIRECT_LIBRARY: return SC.increment(n, key, delta);
+                case TCP_CLIENT: return tcpHandler.increment(n, key, delta);
+                default: // a double is written with a '.' or exponent, which tells the endpoint to add as floating point
+                    return httpAtomic(n, "_incr", atomicBody(key, "delta", delta)).thenApply(s -> Double.parseDouble(s.trim()));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> compareAndSetAsync(String ns, String key, Object expected, Object update) {
+        String n = nss(ns);
+        return atomic(n, key, () -> {
+            switch (mode) {
+                case DIRECT_LIBRARY: return SC.compareAndSet(n, key, expected, update);
+                case TCP_CLIENT: return tcpHandler.compareAndSet(n, key, stored(n, expected), stored(n, update));
+                default:
+                    Map<String, Object> body = atomicBody(key, "expected", expected); // an omitted field means "absent"
+                    if (update != null) body.put("update", update);
+                    return httpAtomic(n, "_cas", body).thenApply(s -> Boolean.parseBoolean(s.trim()));
+            }
+        });
+    }
+
+    @Override
+    public <T> T getOrInit(String ns, String key, Class<T> type, Supplier<T> defSupplier) {
+        try {
+            return await(getOrInitAsync(ns, key, type, defSupplier));
+        } catch (Exception e) {
+            logWarn("getOrInit " + ns + "/" + key + " failed: " + e);
+            return null;
+        }
+    }
+
+    // A read first, so defSupplier only runs on a miss; then one GET_OR_INIT instead of a set, so two servers
+    // initialising the same key agree on its value. Falls back to get + set when the remote has no such operation
+    @Override
+    public <T> CompletableFuture<T> getOrInitAsync(String ns, String key, Class<T> type, Supplier<T> defSupplier) {
+        return getAsync(ns, key, type).thenCompose(v -> (v != null) ? CompletableFuture.completedFuture(v) : init(ns, key, type, defSupplier));
+    }
+
+    private <T> CompletableFuture<T> init(String ns, String key, Class<T> type, Supplier<T> defSupplier) {
+        String n = nss(ns);
+        T def;
+        try { def = defSupplier.get(); }
+        catch (Exception e) { return failedFuture(e); }
+        if (def == null) return CompletableFuture.completedFuture(null);
+        CompletableFuture<T> init = atomic(n, key, () -> {
+            switch (mode) {
+                case DIRECT_LIBRARY: return SC.getOrInit(n, key, type, def);
+                case TCP_CLIENT: return tcpHandler.getOrInit(n, key, stored(n, def)).thenApply(b -> convert(b, type));
+                default: return httpAtomic(n, "_init", atomicBody(key, "value", def)).thenApply(s -> convert(s, type));
+            }
+        });
+        return init.handle((v, t) -> (t == null) ? CompletableFuture.completedFuture(v)
+                        : unsupported(t) ? IDataManager.super.getOrInitAsync(ns, key, type, () -> def)
+                        : this.<T>failedFuture(t))
+                .thenCompose(f -> f);
+    }
+
+    // Completes once the last direct write to the key is settled and the outbox has replayed everything before it
+    private CompletableFuture<Void> writesQueued(Outbox box, String n, String key) {
+        CompletableFuture<Void> last = keyWrites.get(n + '\0' + key);
+        CompletableFuture<Void> settled = (last != null) ? last.handle((v, t) -> null) : CompletableFuture.completedFuture(null);
+        return settled.thenCompose(v -> box.drained());
+    }
+
+    private interface AtomicOp<T> {
+        CompletableFuture<T> send() throws Exception;
+    }
+
+    // Buffered writes to the key go out first, then whatever the outbox still holds, so the op sees them; cached
+    // copies are dropped around it
+    private <T> CompletableFuture<T> atomic(String n, String key, AtomicOp<T> op) {
+        Collection<String> keys = Collections.singleton(key);
+        cacheEvict(n, keys);
+        CompletableFuture<Void> before = (buffered(n, key) != null) ? writeBuffer.flush() : CompletableFuture.completedFuture(null);
+        Outbox box = outbox;
+        if (box != null) before = before.thenCompose(v -> writesQueued(box, n, key));
+        return offload(before.thenCompose(v -> window.run(() -> {
+            try { return op.send(); }
+            catch (Exception e) { return failedFuture(e); }
+        }))).whenComplete((r, t) -> cacheEvict(n, keys));
+    }
+
+    // POST /{db}/{ns}/_incr|_cas|_init with {"key": ..., ...}; the response body is the result as text
+    private CompletableFuture<String> httpAtomic(String n, String op, Map<String, Object> body) throws IOException {
+        String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, op, token);
+        return httpSend("POST", url, objectMapper.writeValueAsBytes(body)).thenApply(r -> {
+            try {
+                if (r.status >= 400) throw new HttpStatusException("POST", r.status);
+                return text(r);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    private static Map<String, Object> atomicBody(String key, String field, Object value) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("key", key);
+        if (value != null) body.put(field, value);
+        return body;
+    }
+
+    // Remote lacks the operation: SC/messenger default, master without CAP_ATOMIC, or an endpoint without the route
+    private static boolean unsupported(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) t = t.getCause();
+        if (t instanceof UnsupportedOperationException) return true;
+        if (!(t instanceof HttpStatusException)) return false;
+        int status = ((HttpStatusException) t).status;
+        return status == 404 || status == 405 || status == 501; // 400 is a bad request, not a missing route
+    }
+
+    // The master compares and stores these bytes as they are, so they are encoded like any other write to n
+    private byte[] stored(String n, Object value) throws IOException {
+        return (value != null) ? encode(n, value) : null;
+    }
+
+    // --- Partial update (JSON merge-patch) ---
+
+    @Override
+    public CompletableFuture<Void> patchAsync(String ns, String key, Object changes) {
+        String n = nss(ns);
+        Collection<String> keys = Collections.singleton(key);
+        cacheEvict(n, keys);
+        byte[] patch;
+        try {
+            patch = objectMapper.writeValueAsBytes(changes);
+            Optional<byte[]> pending = buffered(n, key);
+            if (pending != null) { // fold into the buffered value, the patch then costs nothing on the wire
+                JsonNode base = pending.isPresent() ? codecs.decode(pending.get(), JsonNode.class) : null;
+                return offload(writeBuffer.put(n, key, encode(n, JsonMergePatch.apply(base, objectMapper.readTree(patch)))));
+            }
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        if (mode == ConnectionMode.DIRECT_LIBRARY) {
+            CompletableFuture<Void> direct;
+            try { direct = SC.patch(n, key, changes); }
+            catch (UnsupportedOperationException e) { direct = failedFuture(e); }
+            return direct.handle((v, t) -> (t == null) ? CompletableFuture.<Void>completedFuture(null)
+                            : unsupported(t) ? IDataManager.super.patchAsync(ns, key, changes)
+                            : this.<Void>failedFuture(t))
+                    .thenCompose(f -> f);
+        }
+        return offload(window.run(() -> writeBehind(Outbox.PATCH, n, key, patch, () -> sendPatch(n, key, patch))))
+                .whenComplete((r, t) -> cacheEvict(n, keys));
+    }
+
+    private CompletableFuture<Void> sendPatch(String n, String key, byte[] patch) {
+        if (!remoteJson(n)) return rewritePatched(n, key, patch);
+        CompletableFuture<Void> sent;
+        try {
+            if (mode == ConnectionMode.TCP_CLIENT) {
+                sent = tcpHandler.patch(n, key, patch);
+            } else {
+                // {"key": ..., "patch": <raw>}: the patch bytes are JSON already
+                ByteArrayOutputStream body = new ByteArrayOutputStream(patch.length + key.length() + 24);
+                try (JsonGenerator g = objectMapper.getFactory().createGenerator(body)) {
+                    g.writeStartObject();
+                    g.writeStringField("key", key);
+                    g.writeFieldName("patch");
+                    g.writeRawValue(new String(patch, StandardCharsets.UTF_8));
+                    g.writeEndObject();
+                }
+                sent = httpPostAsync(String.format("%s/%s/%s/_patch?token=%s", apiBaseUrl, dbName, n, token), body.toByteArray());
+            }
+        } catch (Exception e) {
+            sent = failedFuture(e);
+        }
+        return sent.handle((v, t) -> (t == null) ? CompletableFuture.<Void>completedFuture(null)
+                        : unsupported(t) ? rewritePatched(n, key, patch)
+                        : this.<Void>failedFuture(t))
+                .thenCompose(f -> f);
+    }
+
+    // Remote cannot patch (or the value is not JSON): fetch the whole value, merge here and store it back (not atomic)
+    private CompletableFuture<Void> rewritePatched(String n, String key, byte[] patch) {
+        String url = String.format("%s/%s/%s/%s?token=%s", apiBaseUrl, dbName, n, key, token);
+        CompletableFuture<Optional<byte[]>> current = (mode == ConnectionMode.TCP_CLIENT)
+                ? tcpHandler.getRaw(n, key)
+                : httpGetAsync(url).thenApply(r -> {
+                    try { return (r != null) ? Optional.of(bytes(r)) : Optional.<byte[]>empty(); }
+                    catch (IOException e) { throw new CompletionException(e); }
+                });
+        return current.thenCompose(opt -> {
+            byte[] merged;
+            try {
+                JsonNode base = opt.isPresent() ? codecs.decode(opt.get(), JsonNode.class) : null;
+                merged = encode(n, JsonMergePatch.apply(base, objectMapper.readTree(patch)));
+            } catch (IOException e) {
+                return failedFuture(e);
+            }
+            return (mode == ConnectionMode.TCP_CLIENT) ? tcpHandler.setRaw(n, key, merged) : httpPostAsync(url, merged);
+        });
+    }
+
     @Override
     public <T> List<T> get(String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset, Class<T> type) {
         String n = nss(ns);
         try {
+            flushed(n).join();
             switch (mode) {
                 case DIRECT_LIBRARY:
                     // Use StorageClient's blocking helper
                     return SC.getBlocking(n, filters, selections, limit, offset, type, Duration.ofMillis(1000));
 
                 case TCP_CLIENT:
-                    Optional<String> res = tcpHandler.get(n, filters, selections, limit, offset).join();
-                    if (res.isPresent()) {
-                        return objectMapper.readValue(res.get(), objectMapper.getTypeFactory().constructCollectionType(List.class, type));
-                    }
-                    return new ArrayList<>();
+                    return tcpHandler.getRaw(n, filters, selections, limit, offset).join()
+                            .map(raw -> convertList(raw, type)).orElse(new ArrayList<>());
 
                 case API_CLIENT:
                     StringBuilder sb = new StringBuilder(String.format("%s/%s/%s?token=%s", apiBaseUrl, dbName, n, token));
                     appendQuery(sb, filters, selections, limit, offset);
-                    String json = httpGetString(sb.toString());
-                    if (json == null) return new ArrayList<>();
-                    return objectMapper.readValue(json, objectMapper.getTypeFactory().constructCollectionType(List.class, type));
+                    HttpResponse r = await(readQuery(sb.toString()));
+                    return (r != null) ? convertList(r, type) : new ArrayList<>();
             }
         } catch (Exception e) { return new ArrayList<>(); }
         return new ArrayList<>();
@@ -262,6 +1223,10 @@ public abstract class ADataManager implements IDataManager {
 
     @Override
     public <T> CompletableFuture<List<T>> getAsync(String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset, Class<T> type) {
+        return flushed(nss(ns)).thenCompose(v -> window.run(() -> getNow(ns, filters, selections, limit, offset, type)));
+    }
+
+    private <T> CompletableFuture<List<T>> getNow(String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset, Class<T> type) {
         String n = nss(ns);
         try {
             switch (mode) {
@@ -270,19 +1235,14 @@ public abstract class ADataManager implements IDataManager {
                             .thenApply(opt -> opt.orElse(new ArrayList<>()));
 
                 case TCP_CLIENT:
-                    return tcpHandler.get(n, filters, selections, limit, offset)
-                            .thenApply(opt -> opt.map(json -> convertList(json, type)).orElse(new ArrayList<>()));
+                    return offload(tcpHandler.getRaw(n, filters, selections, limit, offset))
+                            .thenApply(opt -> opt.map(raw -> convertList(raw, type)).orElse(new ArrayList<>()));
 
                 case API_CLIENT:
-                    return CompletableFuture.supplyAsync(() -> {
-                        try {
-                            StringBuilder sb = new StringBuilder(String.format("%s/%s/%s?token=%s", apiBaseUrl, dbName, n, token));
-                            appendQuery(sb, filters, selections, limit, offset);
-                            String json = httpGetString(sb.toString());
-                            if (json == null) return new ArrayList<>();
-                            return convertList(json, type);
-                        } catch (Exception e) { return new ArrayList<>(); }
-                    });
+                    StringBuilder sb = new StringBuilder(String.format("%s/%s/%s?token=%s", apiBaseUrl, dbName, n, token));
+                    appendQuery(sb, filters, selections, limit, offset);
+                    return readQuery(sb.toString()).handle((r, t) ->
+                            (t != null || r == null) ? new ArrayList<>() : convertList(r, type));
             }
         } catch (Exception e) {
             return failedFuture(e);
@@ -294,10 +1254,50 @@ public abstract class ADataManager implements IDataManager {
         return getAsync(ns, filters, null, 1000, 0, type);
     }
 
+    @Override
+    public <T> CompletableFuture<Integer> forEachAsync(String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset, Class<T> type, Consumer<? super T> action) {
+        return flushed(nss(ns)).thenCompose(v -> window.run(() -> forEachNow(ns, filters, selections, limit, offset, type, action)));
+    }
+
+    // Unlike the list reads, decode failures fail the future: the action may already have seen part of the results
+    private <T> CompletableFuture<Integer> forEachNow(String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset, Class<T> type, Consumer<? super T> action) {
+        String n = nss(ns);
+        try {
+            switch (mode) {
+                case DIRECT_LIBRARY:
+                    return SC.get(n, filters, selections, limit, offset, type).thenApply(opt -> {
+                        List<T> list = opt.orElse(Collections.emptyList());
+                        list.forEach(action);
+                        return list.size();
+                    });
+
+                case TCP_CLIENT:
+                    return offload(tcpHandler.getRaw(n, filters, selections, limit, offset)).thenApply(opt -> {
+                        if (!opt.isPresent()) return 0;
+                        try { return decodeEach(jsonTypes.reader(type).<T>readValues(opt.get()), action); }
+                        catch (IOException e) { throw new CompletionException(e); }
+                    });
+
+                case API_CLIENT:
+                    StringBuilder sb = new StringBuilder(String.format("%s/%s/%s?token=%s", apiBaseUrl, dbName, n, token));
+                    appendQuery(sb, filters, selections, limit, offset);
+                    return readQuery(sb.toString()).thenApply(r -> {
+                        if (r == null) return 0;
+                        try (InputStream in = body(r)) { return decodeEach(jsonTypes.reader(type).<T>readValues(in), action); }
+                        catch (IOException e) { throw new CompletionException(e); }
+                    });
+            }
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(0);
+    }
+
     @Override
     public Integer count(String ns, Map<String, String> filters, int limit, int offset) {
         String n = nss(ns);
         try {
+            flushed(n).join();
             switch (mode) {
                 case DIRECT_LIBRARY:
                     return SC.countBlocking(n, filters, limit, offset, Duration.ofMillis(1000));
@@ -317,6 +1317,10 @@ public abstract class ADataManager implements IDataManager {
 
     @Override
     public CompletableFuture<Integer> countAsync(String ns, Map<String, String> filters, int limit, int offset) {
+        return flushed(nss(ns)).thenCompose(v -> window.run(() -> countNow(ns, filters, limit, offset)));
+    }
+
+    private CompletableFuture<Integer> countNow(String ns, Map<String, String> filters, int limit, int offset) {
         String n = nss(ns);
         try {
             switch (mode) {
@@ -325,17 +1329,15 @@ public abstract class ADataManager implements IDataManager {
                             .thenApply(opt -> opt.orElse(0));
 
                 case TCP_CLIENT:
-                    return tcpHandler.count(n, filters, limit, offset)
+                    return offload(tcpHandler.count(n, filters, limit, offset))
                             .thenApply(opt -> opt.orElse(0));
 
                 case API_CLIENT:
-                    return CompletableFuture.supplyAsync(() -> {
-                        try {
-                            StringBuilder sb = new StringBuilder(String.format("%s/%s/%s?token=%s&count=true", apiBaseUrl, dbName, n, token));
-                            appendQuery(sb, filters, null, limit, offset);
-                            String resp = httpGetString(sb.toString());
-                            return (resp != null) ? Integer.parseInt(resp) : 0;
-                        } catch (Exception e) { return 0; }
+                    StringBuilder sb = new StringBuilder(String.format("%s/%s/%s?token=%s&count=true", apiBaseUrl, dbName, n, token));
+                    appendQuery(sb, filters, null, limit, offset);
+                    return readQuery(sb.toString()).handle((resp, t) -> {
+                        try { return (t == null && resp != null) ? Integer.parseInt(text(resp).trim()) : 0; }
+                        catch (NumberFormatException | IOException e) { return 0; }
                     });
             }
         } catch (Exception e) {
@@ -344,57 +1346,287 @@ public abstract class ADataManager implements IDataManager {
         return CompletableFuture.completedFuture(0);
     }
 
-    private <T> T httpGet(String urlStr, Class<T> type) throws Exception {
-        String body = httpGetString(urlStr);
-        return (body != null) ? convert(body, type) : null;
+    // --- Typed queries (pushed down to the backend, filtered here only when it cannot run them and queryFallback is on) ---
+
+    @Override
+    public <T> CompletableFuture<List<T>> queryAsync(String ns, Query query, Class<T> type) {
+        String n = nss(ns);
+        try { validate(n, query, type); }
+        catch (IllegalArgumentException e) { return failedFuture(e); }
+        return flushed(n).thenCompose(v -> window.run(() -> queryNow(n, query, type)))
+                .handle((v, t) -> (t == null) ? CompletableFuture.completedFuture(v)
+                        : unsupported(t) ? queryLocally(ns, query, type)
+                        : this.<List<T>>failedFuture(t))
+                .thenCompose(f -> f);
     }
 
-    private String httpGetString(String urlStr) throws Exception {
-        HttpURLConnection conn = null;
+    private <T> CompletableFuture<List<T>> queryNow(String n, Query q, Class<T> type) {
+        try {
+            switch (mode) {
+                case DIRECT_LIBRARY:
+                    return SC.query(n, q, type).thenApply(opt -> opt.orElse(new ArrayList<>()));
+
+                case TCP_CLIENT:
+                    return offload(tcpHandler.query(n, q)).thenApply(opt -> opt.map(raw -> convertList(raw, type)).orElse(new ArrayList<>()));
+
+                case API_CLIENT:
+                    return httpQuery(n, q, false).thenApply(r -> convertList(r, type));
+            }
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(new ArrayList<>());
+    }
+
+    // Each page is read by typed queries bounded past the cursor's sort values and row key, so it runs wherever queryAsync does
+    @Override
+    public <T> CompletableFuture<Page<T>> queryPageAsync(String ns, Query query, Class<T> type) {
+        Keyset keyset;
+        try { keyset = Keyset.of(query); }
+        catch (IllegalArgumentException e) { return failedFuture(e); }
+        return keyset.page(q -> queryAsync(ns, q, JsonNode.class)).thenApply(page -> page.map(row -> {
+            try { return jsonTypes.reader(type).<T>readValue(row); }
+            catch (IOException e) { throw new CompletionException(e); }
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Integer> queryCountAsync(String ns, Query query) {
+        String n = nss(ns);
+        try { validate(n, query, null); }
+        catch (IllegalArgumentException e) { return failedFuture(e); }
+        return flushed(n).thenCompose(v -> window.run(() -> queryCountNow(n, query)))
+                .handle((v, t) -> (t == null) ? CompletableFuture.completedFuture(v)
+                        : unsupported(t) ? countLocally(ns, query)
+                        : this.<Integer>failedFuture(t))
+                .thenCompose(f -> f);
+    }
+
+    private CompletableFuture<Integer> queryCountNow(String n, Query q) {
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setConnectTimeout(5000);
-            conn.setReadTimeout(5000);
-            if (conn.getResponseCode() == 404) return null;
-            if (conn.getResponseCode() >= 400) return null;
+            switch (mode) {
+                case DIRECT_LIBRARY:
+                    return SC.queryCount(n, q).thenApply(opt -> opt.orElse(0));
+
+                case TCP_CLIENT:
+                    return offload(tcpHandler.queryCount(n, q)).thenApply(opt -> opt.orElse(0));
+
+                case API_CLIENT:
+                    return httpQuery(n, q, true).thenApply(r -> {
+                        try { return Integer.parseInt(text(r).trim()); }
+                        catch (IOException e) { throw new CompletionException(e); }
+                    });
+            }
+        } catch (Exception e) {
+            return failedFuture(e);
+        }
+        return CompletableFuture.completedFuture(0);
+    }
+
+    // Against the model registered for n, else the requested type when it is a model itself
+    private void validate(String n, Query q, Class<?> type) {
+        requireJson(n, "query");
+        Class<?> model = models.get(n);
+        if (model == null && type != null && type.isAnnotationPresent(QLQuery.class)) model = type;
+        if (model != null) q.validate(model);
+    }
+
+    // POST /{db}/{ns}/_query {"where": [{"field", "op", "values"}], "order": [{"field", "desc"}], "fields", "limit",
+    // "offset", "count"}; the response is the JSON rows (with "_key" when ordered by it), or the count as text
+    private CompletableFuture<HttpResponse> httpQuery(String n, Query q, boolean count) throws IOException {
+        List<Map<String, Object>> where = new ArrayList<>();
+        for (Query.Condition c : q.conditions()) {
+            Map<String, Object> w = new LinkedHashMap<>();
+            w.put("field", c.field);
+            w.put("op", c.op.name().toLowerCase(Locale.ROOT));
+            w.put("values", c.values);
+            where.add(w);
+        }
+        List<Map<String, Object>> order = new ArrayList<>();
+        for (Query.Order o : q.orders()) {
+            Map<String, Object> w = new LinkedHashMap<>();
+            w.put("field", o.field);
+            w.put("desc", o.descending);
+            order.add(w);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("where", where);
+        body.put("order", order);
+        body.put("fields", q.fields());
+        body.put("limit", q.limit());
+        body.put("offset", q.offset());
+        body.put("count", count);
+        String url = String.format("%s/%s/%s/_query?token=%s", apiBaseUrl, dbName, n, token);
+        return httpSend("POST", url, objectMapper.writeValueAsBytes(body)).thenApply(r -> {
+            if (r.status >= 400) throw new CompletionException(new HttpStatusException("POST", r.status));
+            return r;
+        });
+    }
+
+    // Remote without typed queries: plain equality is a map-filter read as it is; anything else reads the rows
+    // matching its equality conditions and filters, orders and pages them here
+    private <T> CompletableFuture<List<T>> queryLocally(String ns, Query q, Class<T> type) {
+        if (q.isPlainEquality()) {
+            Map<String, String> selections = new LinkedHashMap<>();
+            for (String f : q.fields()) selections.put(f, f);
+            return getAsync(ns, q.equalityFilters(), selections, q.limit(), q.offset(), type);
+        }
+        return matching(ns, q).thenApply(rows -> {
+            int from = Math.min(q.offset(), rows.size());
+            int to = (q.limit() < 0) ? rows.size() : (int) Math.min((long) from + q.limit(), rows.size());
+            List<T> out = new ArrayList<>(to - from);
+            try {
+                for (JsonNode row : rows.subList(from, to)) out.add(jsonTypes.reader(type).readValue(q.project(row)));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+            return out;
+        });
+    }
+
+    private CompletableFuture<Integer> countLocally(String ns, Query q) {
+        if (q.isPlainEquality()) return countAsync(ns, q.equalityFilters(), -1, 0);
+        return matching(ns, q).thenApply(List::size);
+    }
+
+    private CompletableFuture<List<JsonNode>> matching(String ns, Query q) {
+        if (!queryFallback) {
+            return failedFuture(new UnsupportedOperationException("Query unsupported by the remote, and queryFallback is off: " + q));
+        }
+        if (q.uses(Query.KEY)) {
+            // map-filter reads return values only
+            return failedFuture(new UnsupportedOperationException("Query on the row key unsupported by the remote: " + q));
+        }
+        return getAsync(ns, q.equalityFilters(), null, queryScanLimit, 0, JsonNode.class).thenApply(rows -> {
+            if (rows.size() >= queryScanLimit) logWarn("Query on " + ns + " filtered client-side over the first " + queryScanLimit + " rows only: " + q);
+            List<JsonNode> out = new ArrayList<>();
+            for (JsonNode row : rows) if (q.test(row)) out.add(row);
+            if (!q.orders().isEmpty()) out.sort(q.ordering());
+            return out;
+        });
+    }
+
+    // --- HTTP (API_CLIENT) ---
+
+    private byte[] httpGetBytes(String urlStr) throws Exception {
+        HttpResponse r = await(readKey(urlStr));
+        return (r != null) ? bytes(r) : null;
+    }
 
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) response.append(line);
-                return response.toString();
+    private String httpGetString(String urlStr) throws Exception {
+        HttpResponse r = await(readQuery(urlStr));
+        return (r != null) ? text(r) : null;
+    }
+
+    // Concurrent reads of one key or one query URL share a single GET
+    private CompletableFuture<HttpResponse> readKey(String urlStr) {
+        return keyReads.run(urlStr, () -> httpGetAsync(urlStr));
+    }
+
+    private CompletableFuture<HttpResponse> readQuery(String urlStr) {
+        return queryReads.run(urlStr, () -> httpGetAsync(urlStr));
+    }
+
+    // Successful GET, null on HTTP errors (404 = missing key). Bodies are decoded by the caller, see body()
+    private CompletableFuture<HttpResponse> httpGetAsync(String urlStr) {
+        return httpSend("GET", urlStr, null).thenApply(r -> (r.status >= 400) ? null : r);
+    }
+
+    // POST whose response body matters (batch reads); null on HTTP error
+    private CompletableFuture<HttpResponse> httpPostReadAsync(String urlStr, byte[] json) {
+        return httpSend("POST", urlStr, json).thenApply(r -> (r.status >= 400) ? null : r);
+    }
+
+    private CompletableFuture<Void> httpPostAsync(String urlStr, byte[] json) {
+        return httpSend("POST", urlStr, json).thenApply(r -> {
+            if (r.status >= 400) throw new CompletionException(new HttpStatusException("POST", r.status));
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> httpDeleteAsync(String urlStr) {
+        return httpSend("DELETE", urlStr, null).thenApply(r -> {
+            if (r.status >= 400 && r.status != 404) throw new CompletionException(new HttpStatusException("DELETE", r.status)); // already gone is fine
+            return null;
+        });
+    }
+
+    private CompletableFuture<HttpResponse> httpSend(String method, String urlStr, byte[] body) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept-Encoding", "gzip");
+        if (body != null) {
+            headers.put("Content-Type", "application/json");
+            if (apiGzipRequests && compressThreshold > 0 && body.length >= compressThreshold) {
+                try {
+                    body = Compression.gzip(body);
+                    headers.put("Content-Encoding", "gzip");
+                } catch (IOException e) {
+                    return failedFuture(e);
+                }
             }
-        } finally { if (conn != null) conn.disconnect(); }
+        }
+        return offload(http.send(new HttpRequest(method, urlStr, headers, body, apiTimeoutMs)));
+    }
+
+    // Continue on the manager's executor rather than the transport thread that completed f, failures included
+    private <T> CompletableFuture<T> offload(CompletableFuture<T> f) {
+        return f.whenCompleteAsync((r, t) -> {}, executor);
+    }
+
+    // Response body, gunzipped on the fly so the parser reads it without an uncompressed copy
+    private static InputStream body(HttpResponse r) throws IOException {
+        InputStream in = new ByteArrayInputStream(r.body);
+        return "gzip".equalsIgnoreCase(r.header("Content-Encoding")) ? Compression.gunzip(in) : in;
+    }
+
+    // Whole uncompressed body, for single values the near cache keeps
+    private static byte[] bytes(HttpResponse r) throws IOException {
+        if (!"gzip".equalsIgnoreCase(r.header("Content-Encoding"))) return r.body;
+        try (InputStream is = body(r)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(r.body.length * 4);
+            byte[] buf = new byte[8192];
+            for (int n; (n = is.read(buf)) != -1; ) out.write(buf, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static String text(HttpResponse r) throws IOException {
+        return new String(bytes(r), StandardCharsets.UTF_8);
     }
 
-    private void httpPost(String urlStr, String json) throws Exception {
-        HttpURLConnection conn = null;
+    // Join for the blocking API, rethrowing the original failure
+    private static <T> T await(CompletableFuture<T> f) throws Exception {
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(5000);
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = json.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
-            conn.getResponseCode();
-        } finally { if (conn != null) conn.disconnect(); }
-    }
-
-    private void httpDelete(String urlStr) throws Exception {
-        HttpURLConnection conn = null;
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    // Error status from the REST endpoint; 5xx means the gateway is unavailable rather than the request being wrong
+    private static final class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpStatusException(String method, int status) {
+            super(method + " failed with HTTP " + status);
+            this.status = status;
+        }
+    }
+
+    // The REST endpoint advertises gzip request bodies via a response header on /_hello
+    private boolean negotiateApiCompression() {
+        if (compressThreshold <= 0) return false;
         try {
-            URL url = new URL(urlStr);
-            conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("DELETE");
-            conn.setConnectTimeout(5000);
-            conn.getResponseCode();
-        } finally { if (conn != null) conn.disconnect(); }
+            HttpResponse r = await(http.send(new HttpRequest("GET", String.format("%s/_hello?token=%s", apiBaseUrl, token), null, null, apiTimeoutMs)));
+            if (r.status >= 400) return false;
+            String accepted = r.header("X-SGW-Accept-Encoding");
+            return accepted != null && accepted.toLowerCase(Locale.ROOT).contains("gzip");
+        } catch (Exception e) {
+            return false;
+        }
     }
 
     private void appendQuery(StringBuilder sb, Map<String, String> filters, Map<String, String> selections, int limit, int offset) {
@@ -406,16 +1638,64 @@ public abstract class ADataManager implements IDataManager {
     }
 
     private <T> T convert(String json, Class<T> type) {
-        try { return objectMapper.readValue(json, type); }
+        try { return jsonTypes.reader(type).readValue(json); }
+        catch (Exception e) { return null; }
+    }
+
+    // A value from a codec this server lacks fails the read instead of looking like a missing key
+    private <T> T convert(byte[] raw, Class<T> type) {
+        codecs.checkReadable(raw);
+        try { return codecs.decode(raw, type); }
         catch (Exception e) { return null; }
     }
 
-    private <T> List<T> convertList(String json, Class<T> type) {
+    // Result lists are bound one element at a time off the parser: no String copy, no List<Map>/tree stage
+    private <T> List<T> convertList(byte[] raw, Class<T> type) {
+        List<T> out = new ArrayList<>();
+        try { decodeEach(jsonTypes.reader(type).<T>readValues(raw), out::add); }
+        catch (Exception e) { return new ArrayList<>(); }
+        return out;
+    }
+
+    private <T> List<T> convertList(HttpResponse r, Class<T> type) {
+        List<T> out = new ArrayList<>();
+        try (InputStream in = body(r)) { decodeEach(jsonTypes.reader(type).<T>readValues(in), out::add); }
+        catch (Exception e) { return new ArrayList<>(); }
+        return out;
+    }
+
+    // Feed each element of a JSON array to action as soon as it is bound; returns how many there were
+    private static <T> int decodeEach(MappingIterator<T> it, Consumer<? super T> action) throws IOException {
         try {
-            return objectMapper.readValue(json, objectMapper.getTypeFactory().constructCollectionType(List.class, type));
-        } catch (Exception e) {
-            return new ArrayList<>();
+            int n = 0;
+            while (it.hasNextValue()) {
+                action.accept(it.nextValue());
+                n++;
+            }
+            return n;
+        } finally {
+            it.close();
+        }
+    }
+
+    // Batch response is a JSON object keyed by the requested keys; absent or null entries map to null.
+    // Values are bound straight off the stream; a value that fails to bind ends the parse, the rest stay null
+    private <T> Map<String, T> convertMany(HttpResponse r, Collection<String> keys, Class<T> type) {
+        Map<String, T> found = new HashMap<>();
+        if (r != null) {
+            try (InputStream in = body(r); JsonParser p = objectMapper.getFactory().createParser(in)) {
+                if (p.nextToken() == JsonToken.START_OBJECT) {
+                    while (p.nextToken() == JsonToken.FIELD_NAME) {
+                        String k = p.getCurrentName();
+                        if (p.nextToken() == JsonToken.VALUE_NULL) continue;
+                        found.put(k, jsonTypes.reader(type).readValue(p));
+                    }
+                }
+            } catch (Exception ignored) {}
         }
+        Map<String, T> out = new LinkedHashMap<>();
+        for (String k : keys) out.put(k, found.get(k));
+        return out;
     }
 
     private <T> CompletableFuture<T> failedFuture(Throwable ex) {
@@ -431,6 +1711,21 @@ public abstract class ADataManager implements IDataManager {
             public CompletableFuture<Optional<Integer>> count(String ns, Map<String, String> f, int l, int o) { return msgr.count(db, secret, ns, f, l, o); }
             public CompletableFuture<Void> set(String ns, String key, String json) { return msgr.set(db, secret, ns, key, json); }
             public CompletableFuture<Void> delete(String ns, String key) { return msgr.delete(db, secret, ns, key); }
+            public CompletableFuture<Optional<byte[]>> getRaw(String ns, String key) { return msgr.getRaw(db, secret, ns, key); }
+            public CompletableFuture<Optional<byte[]>> getRaw(String ns, Map<String, String> f, Map<String, String> s, int l, int o) { return msgr.getRaw(db, secret, ns, f, s, l, o); }
+            public CompletableFuture<Void> setRaw(String ns, String key, byte[] value) { return msgr.setRaw(db, secret, ns, key, value); }
+            public CompletableFuture<Map<String, Optional<String>>> getMany(String ns, Collection<String> keys) { return msgr.getMany(db, secret, ns, keys); }
+            public CompletableFuture<Void> setMany(String ns, Map<String, String> jsonByKey) { return msgr.setMany(db, secret, ns, jsonByKey); }
+            public CompletableFuture<Void> deleteMany(String ns, Collection<String> keys) { return msgr.deleteMany(db, secret, ns, keys); }
+            public CompletableFuture<Map<String, Optional<byte[]>>> getManyRaw(String ns, Collection<String> keys) { return msgr.getManyRaw(db, secret, ns, keys); }
+            public CompletableFuture<Void> setManyRaw(String ns, Map<String, byte[]> valueByKey) { return msgr.setManyRaw(db, secret, ns, valueByKey); }
+            public CompletableFuture<Long> increment(String ns, String key, long delta) { return msgr.increment(db, secret, ns, key, delta); }
+            public CompletableFuture<Double> increment(String ns, String key, double delta) { return msgr.increment(db, secret, ns, key, delta); }
+            public CompletableFuture<Boolean> compareAndSet(String ns, String key, byte[] expected, byte[] update) { return msgr.compareAndSet(db, secret, ns, key, expected, update); }
+            public CompletableFuture<byte[]> getOrInit(String ns, String key, byte[] def) { return msgr.getOrInit(db, secret, ns, key, def); }
+            public CompletableFuture<Void> patch(String ns, String key, byte[] patch) { return msgr.patch(db, secret, ns, key, patch); }
+            public CompletableFuture<Optional<byte[]>> query(String ns, Query q) { return msgr.query(db, secret, ns, q); }
+            public CompletableFuture<Optional<Integer>> queryCount(String ns, Query q) { return msgr.queryCount(db, secret, ns, q); }
             public void registerModel(String ns, String type, Map<String, ModelField> fields) {} // No-op for handler, done in Manager
             public void shutdown() {}
             public boolean flushAndAwait(long timeout) { return true; }
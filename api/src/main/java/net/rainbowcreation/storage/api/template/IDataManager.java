@@ -1,13 +1,28 @@
 package net.rainbowcreation.storage.api.template;
 
+import net.rainbowcreation.storage.api.query.Page;
+import net.rainbowcreation.storage.api.query.Query;
+import net.rainbowcreation.storage.api.utils.Futures;
+import net.rainbowcreation.storage.api.utils.JsonMergePatch;
+import net.rainbowcreation.storage.api.utils.SgwExecutors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 public interface IDataManager {
+    /** Executor async results complete on, so callbacks never run on a network thread. */
+    default Executor executor() {
+        return SgwExecutors.shared();
+    }
+
     <T> T get(String ns, String key, Class<T> type);
     <T> CompletableFuture<T> getAsync(String ns, String key, Class<T> type);
 
@@ -28,6 +43,11 @@ public interface IDataManager {
         return getAsync(ns, key, Object.class).thenApply(obj -> obj != null);
     }
 
+    /** Push out writes an implementation may be holding back for batching; completes once they are written. */
+    default CompletableFuture<Void> flush() {
+        return CompletableFuture.completedFuture(null);
+    }
+
     // --- Blocking Defaults ---
     default <T> List<T> get(String ns, Map<String, String> filters, Class<T> type) { return get(ns, filters, null, 1000, 0, type); }
     default <T> List<T> get(String ns, Map<String, String> filters, int limit, Class<T> type) { return get(ns, filters, null, limit, 0, type); }
@@ -52,6 +72,17 @@ public interface IDataManager {
         throw new UnsupportedOperationException("Not implemented, require @Override");
     }
 
+    // --- Streaming (results handed to action one by one as they are decoded; completes with how many there were) ---
+    default <T> CompletableFuture<Integer> forEachAsync(String ns, Map<String, String> filters, Class<T> type, Consumer<? super T> action) { return forEachAsync(ns, filters, null, 1000, 0, type, action); }
+    default <T> CompletableFuture<Integer> forEachAsync(String ns, Map<String, String> filters, int limit, int offset, Class<T> type, Consumer<? super T> action) { return forEachAsync(ns, filters, null, limit, offset, type, action); }
+
+    default <T> CompletableFuture<Integer> forEachAsync(String ns, Map<String, String> filters, Map<String, String> selections, int limit, int offset, Class<T> type, Consumer<? super T> action) {
+        return getAsync(ns, filters, selections, limit, offset, type).thenApply(list -> {
+            list.forEach(action);
+            return list.size();
+        });
+    }
+
     default Integer count(String ns, Map<String, String> filters) { return count(ns, filters, 1000, 0); }
     default Integer count(String ns, Map<String, String> filters, int limit) { return count(ns, filters, limit, 0); }
 
@@ -69,6 +100,40 @@ public interface IDataManager {
         throw new UnsupportedOperationException("Not implemented, require @Override");
     }
 
+    // --- Typed queries (comparison, range, IN, prefix and ORDER BY on @EnableQuery fields, see Query) ---
+    default <T> List<T> query(String ns, Query query, Class<T> type) { return queryAsync(ns, query, type).join(); }
+    default <T> CompletableFuture<List<T>> queryAsync(String ns, Query query, Class<T> type) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // Keyset paging: query.limit() rows per page, query.after(page.next()) for the next one (needs an orderBy)
+    default <T> Page<T> queryPage(String ns, Query query, Class<T> type) { return queryPageAsync(ns, query, type).join(); }
+    default <T> CompletableFuture<Page<T>> queryPageAsync(String ns, Query query, Class<T> type) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // Rows matching the conditions; ordering, paging and projection are ignored
+    default Integer queryCount(String ns, Query query) { return queryCountAsync(ns, query).join(); }
+    default CompletableFuture<Integer> queryCountAsync(String ns, Query query) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // --- Batch (one entry per requested key, missing keys map to null) ---
+    default <T> Map<String, T> getMany(String ns, Collection<String> keys, Class<T> type) { return getManyAsync(ns, keys, type).join(); }
+    default <T> CompletableFuture<Map<String, T>> getManyAsync(String ns, Collection<String> keys, Class<T> type) {
+        return Futures.perKey(keys, k -> getAsync(ns, k, type));
+    }
+
+    default void setMany(String ns, Map<String, ?> values) { setManyAsync(ns, values); }
+    default CompletableFuture<Void> setManyAsync(String ns, Map<String, ?> values) {
+        return Futures.forEachKey(values.keySet(), k -> setAsync(ns, k, values.get(k)));
+    }
+
+    default void deleteMany(String ns, Collection<String> keys) { deleteManyAsync(ns, keys); }
+    default CompletableFuture<Void> deleteManyAsync(String ns, Collection<String> keys) {
+        return Futures.forEachKey(keys, k -> deleteAsync(ns, k));
+    }
+
     default <T> T getOrInit(String ns, String key, Class<T> type, Supplier<T> defSupplier) {
         T val = get(ns, key, type);
         if (val != null) return val;
@@ -87,6 +152,45 @@ public interface IDataManager {
         });
     }
 
+    // --- Identity map (AData.load): managers without one keep nothing and every load decodes a fresh instance ---
+    /** Instance already loaded for (ns, key) and still in use, or null. */
+    default <T> T liveEntity(String ns, String key, Class<T> type) { return null; }
+    /** Track a freshly loaded or saved instance; returns the one to use if another got there first. */
+    default <T> T adoptEntity(String ns, String key, T entity) { return entity; }
+    default void releaseEntity(String ns, String key) {}
+
+    // --- Partial update (JSON merge-patch, RFC 7396) ---
+    // changes is anything serializing to a JSON object (Map, JsonNode, POJO): its fields replace the stored ones,
+    // nested objects merge and null fields are removed. Applied server-side where the backend supports it
+    default void patch(String ns, String key, Object changes) { patchAsync(ns, key, changes); }
+    default CompletableFuture<Void> patchAsync(String ns, String key, Object changes) {
+        JsonNode patch = JsonMergePatch.toTree(changes); // read-modify-write fallback, not atomic
+        return getAsync(ns, key, JsonNode.class).thenCompose(current -> setAsync(ns, key, JsonMergePatch.apply(current, patch)));
+    }
+    /** Tree form of a value as this manager would write it; AData diffs these to build its patches. */
+    default JsonNode toTree(Object value) { return JsonMergePatch.toTree(value); }
+    /** False when a patch of {@code ns} costs a read and a full write anyway (e.g. non-JSON values); AData then saves whole. */
+    default boolean patchesInPlace(String ns) { return true; }
+
+    // --- Atomic (a single server-side operation: no read-modify-write round trips, safe with several writers) ---
+    // Missing keys count as 0; the new value is returned
+    default long increment(String ns, String key, long delta) { return incrementAsync(ns, key, delta).join(); }
+    default CompletableFuture<Long> incrementAsync(String ns, String key, long delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    default double increment(String ns, String key, double delta) { return incrementAsync(ns, key, delta).join(); }
+    default CompletableFuture<Double> incrementAsync(String ns, String key, double delta) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
+    // Stores update only if the current value equals expected (compared as JSON); expected == null means "absent",
+    // update == null deletes. True when the swap happened
+    default boolean compareAndSet(String ns, String key, Object expected, Object update) { return compareAndSetAsync(ns, key, expected, update).join(); }
+    default CompletableFuture<Boolean> compareAndSetAsync(String ns, String key, Object expected, Object update) {
+        throw new UnsupportedOperationException("Not implemented, require @Override");
+    }
+
     default <T, R> R derive(String ns, String key, Class<T> rawType, Function<T, R> mapper) {
         T raw = get(ns, key, rawType);
         return (raw == null) ? null : mapper.apply(raw);
@@ -123,6 +227,8 @@ public interface IDataManager {
     default void setInt(String ns, String key, int val) { set(ns, key, val); }
     default CompletableFuture<Void> setIntAsync(String ns, String key, int val) { return setAsync(ns, key, val); }
 
+    default int getIntOr(String ns, String key, int def) { Integer v = getInt(ns, key); return (v != null) ? v : def; }
+
     default int getIntOrInit(String ns, String key, int def) { return getOrInit(ns, key, Integer.class, () -> def); }
     default CompletableFuture<Integer> getIntOrInitAsync(String ns, String key, int def) { return getOrInitAsync(ns, key, Integer.class, () -> def); }
 
@@ -133,6 +239,8 @@ public interface IDataManager {
     default void setLong(String ns, String key, long val) { set(ns, key, val); }
     default CompletableFuture<Void> setLongAsync(String ns, String key, long val) { return setAsync(ns, key, val); }
 
+    default long getLongOr(String ns, String key, long def) { Long v = getLong(ns, key); return (v != null) ? v : def; }
+
     default long getLongOrInit(String ns, String key, long def) { return getOrInit(ns, key, Long.class, () -> def); }
     default CompletableFuture<Long> getLongOrInitAsync(String ns, String key, long def) { return getOrInitAsync(ns, key, Long.class, () -> def); }
 
@@ -143,6 +251,8 @@ public interface IDataManager {
     default void setBool(String ns, String key, boolean val) { set(ns, key, val); }
     default CompletableFuture<Void> setBoolAsync(String ns, String key, boolean val) { return setAsync(ns, key, val); }
 
+    default boolean getBoolOr(String ns, String key, boolean def) { Boolean v = getBool(ns, key); return (v != null) ? v : def; }
+
     default boolean getBoolOrInit(String ns, String key, boolean def) { return getOrInit(ns, key, Boolean.class, () -> def); }
     default CompletableFuture<Boolean> getBoolOrInitAsync(String ns, String key, boolean def) { return getOrInitAsync(ns, key, Boolean.class, () -> def); }
 
@@ -153,6 +263,8 @@ public interface IDataManager {
     default void setDouble(String ns, String key, double val) { set(ns, key, val); }
     default CompletableFuture<Void> setDoubleAsync(String ns, String key, double val) { return setAsync(ns, key, val); }
 
+    default double getDoubleOr(String ns, String key, double def) { Double v = getDouble(ns, key); return (v != null) ? v : def; }
+
     default double getDoubleOrInit(String ns, String key, double def) { return getOrInit(ns, key, Double.class, () -> def); }
     default CompletableFuture<Double> getDoubleOrInitAsync(String ns, String key, double def) { return getOrInitAsync(ns, key, Double.class, () -> def); }
 
@@ -0,0 +1,175 @@
+package net.rainbowcreation.storage.api.utils;
+
+import net.rainbowcreation.storage.api.network.TimingWheel;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Bounded in-flight window. Callers over the limit get a future that completes once a permit frees up,
+ * so backpressure never parks a thread. A capacity of 0 or less means unbounded.
+ * <p>
+ * Waiting tasks are started on the hand-off executor, never on the thread that completed the previous request
+ * (that is usually a socket reader, which must not end up writing). The wait queue is bounded, and waiters that
+ * get no permit within the wait timeout, or whose future is cancelled, leave the queue without taking one.
+ */
+public final class AsyncSemaphore {
+    public static final int DEFAULT_MAX_WAITING = 65_536;
+
+    private final ArrayDeque<Waiter<?>> waiters = new ArrayDeque<>();
+    private final Executor handOff;
+    private final TimingWheel timeouts = TimingWheel.shared();
+    private int capacity;
+    private int inFlight;
+    private int maxWaiting = DEFAULT_MAX_WAITING;
+    private long waitTimeoutMs;
+
+    public AsyncSemaphore(int capacity) {
+        this(capacity, SgwExecutors.shared());
+    }
+
+    public AsyncSemaphore(int capacity, Executor handOff) {
+        this.capacity = capacity;
+        this.handOff = handOff;
+    }
+
+    private static final class Waiter<T> {
+        final Supplier<CompletableFuture<T>> task;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        boolean granted; // guarded by the semaphore
+        TimingWheel.Timeout deadline;
+
+        Waiter(Supplier<CompletableFuture<T>> task) {
+            this.task = task;
+        }
+    }
+
+    /** Start the task when a permit is available and release it when the task's future completes. */
+    public <T> CompletableFuture<T> run(Supplier<CompletableFuture<T>> task) {
+        Waiter<T> w;
+        synchronized (this) {
+            if (capacity <= 0 || inFlight < capacity) {
+                inFlight++;
+                w = null;
+            } else if (maxWaiting > 0 && waiters.size() >= maxWaiting) {
+                return Futures.failed(new RejectedExecutionException("Too many requests waiting (" + waiters.size() + ")"));
+            } else {
+                w = enqueue(task);
+            }
+        }
+        return (w == null) ? start(task) : w.result;
+    }
+
+    // Caller holds the lock. The deadline is armed before the waiter can be granted, so begin() always sees it
+    private <T> Waiter<T> enqueue(Supplier<CompletableFuture<T>> task) {
+        Waiter<T> w = new Waiter<>(task);
+        long timeoutMs = waitTimeoutMs;
+        if (timeoutMs > 0) {
+            w.deadline = timeouts.schedule(() -> w.result.completeExceptionally(
+                    new TimeoutException("No request slot free within " + timeoutMs + "ms")), timeoutMs);
+        }
+        // Timed out or cancelled while still queued: leave the queue, no permit was taken
+        w.result.whenComplete((r, t) -> {
+            if (t != null) dequeue(w);
+        });
+        waiters.add(w);
+        return w;
+    }
+
+    private <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> f;
+        try {
+            f = task.get();
+        } catch (Throwable t) {
+            release();
+            return Futures.failed(t);
+        }
+        f.whenComplete((r, t) -> release());
+        return f;
+    }
+
+    private synchronized void dequeue(Waiter<?> w) {
+        if (!w.granted) waiters.remove(w);
+    }
+
+    private void release() {
+        Waiter<?> next;
+        synchronized (this) {
+            if (capacity > 0 && inFlight > capacity) { // shrunk while busy
+                inFlight--;
+                return;
+            }
+            next = nextWaiter();
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+            // permit passes straight to the waiter, inFlight stays the same
+        }
+        handOff(next);
+    }
+
+    // Caller holds the lock. Skips waiters that already gave up
+    private Waiter<?> nextWaiter() {
+        for (Waiter<?> w; (w = waiters.poll()) != null; ) {
+            if (!w.result.isDone()) {
+                w.granted = true;
+                return w;
+            }
+        }
+        return null;
+    }
+
+    private void handOff(Waiter<?> w) {
+        try {
+            handOff.execute(() -> begin(w));
+        } catch (RejectedExecutionException e) {
+            w.result.completeExceptionally(e);
+            release();
+        }
+    }
+
+    private <T> void begin(Waiter<T> w) {
+        if (w.deadline != null) w.deadline.cancel();
+        if (w.result.isDone()) { // gave up between the grant and now: pass the permit on
+            release();
+            return;
+        }
+        start(w.task).whenComplete((r, t) -> {
+            if (t != null) w.result.completeExceptionally(t);
+            else w.result.complete(r);
+        });
+    }
+
+    public void setCapacity(int capacity) {
+        ArrayDeque<Waiter<?>> granted = new ArrayDeque<>();
+        synchronized (this) {
+            this.capacity = capacity;
+            while (capacity <= 0 || inFlight < capacity) {
+                Waiter<?> w = nextWaiter();
+                if (w == null) break;
+                granted.add(w);
+                inFlight++;
+            }
+        }
+        for (Waiter<?> w : granted) handOff(w);
+    }
+
+    /** Waiters allowed in the queue, further requests fail with RejectedExecutionException. <= 0 = unbounded. */
+    public synchronized void setMaxWaiting(int maxWaiting) { this.maxWaiting = maxWaiting; }
+
+    /** Waiters without a permit after this long fail with TimeoutException. <= 0 = wait forever. */
+    public synchronized void setWaitTimeout(long timeoutMs) { this.waitTimeoutMs = timeoutMs; }
+
+    public synchronized int capacity() { return capacity; }
+
+    /** Requests currently holding a permit. */
+    public synchronized int inFlight() { return inFlight; }
+
+    /** Requests waiting for a permit. */
+    public synchronized int waiting() { return waiters.size(); }
+}
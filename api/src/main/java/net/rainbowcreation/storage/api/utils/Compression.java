@@ -0,0 +1,89 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Payload compression for large values. Deflaters and inflaters are pooled because their native state is costly to
+ * create; the pool is bounded and anything past it is end()ed, so no zlib memory outlives its use.
+ */
+public final class Compression {
+    public static final int DEFAULT_THRESHOLD = 1024;
+    public static final int MAX_RAW_LENGTH = 64 * 1024 * 1024; // largest value a frame may carry (NioTcpMessenger.MAX_FRAME_SIZE)
+
+    private static final int MAX_RATIO = 1032; // deflate cannot expand better than this, longer claims are corrupt
+    private static final int POOL_SIZE = 8;
+    private static final BlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private Compression() {}
+
+    /** Deflate the value, or return null when it does not shrink by at least 1/8 and is better sent as is. */
+    public static byte[] deflate(byte[] raw) {
+        Deflater d = DEFLATERS.poll();
+        if (d == null) d = new Deflater(Deflater.BEST_SPEED);
+        try {
+            d.setInput(raw);
+            d.finish();
+            int limit = raw.length - (raw.length >>> 3);
+            byte[] buf = new byte[limit];
+            int n = 0;
+            while (!d.finished() && n < limit) n += d.deflate(buf, n, limit - n);
+            if (!d.finished()) return null;
+            byte[] out = new byte[n];
+            System.arraycopy(buf, 0, out, 0, n);
+            return out;
+        } finally {
+            d.reset();
+            if (!DEFLATERS.offer(d)) d.end();
+        }
+    }
+
+    /** Inflate a value sent with its raw length; the length is checked before anything is allocated for it. */
+    public static byte[] inflate(byte[] data, int rawLength) throws IOException {
+        if (rawLength < 0 || rawLength > MAX_RAW_LENGTH || rawLength > (long) data.length * MAX_RATIO) {
+            throw new IOException("Bad compressed value length " + rawLength + " for " + data.length + " bytes");
+        }
+        Inflater i = INFLATERS.poll();
+        if (i == null) i = new Inflater();
+        try {
+            i.setInput(data);
+            byte[] out = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength && !i.finished()) {
+                int r = i.inflate(out, n, rawLength - n);
+                if (r == 0 && (i.needsInput() || i.needsDictionary())) break;
+                n += r;
+            }
+            if (n != rawLength) throw new IOException("Truncated compressed value (" + n + "/" + rawLength + ")");
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed value", e);
+        } finally {
+            i.reset();
+            if (!INFLATERS.offer(i)) i.end();
+        }
+    }
+
+    public static byte[] gzip(byte[] raw) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        try (OutputStream gz = new GZIPOutputStream(bout)) {
+            gz.write(raw);
+        }
+        return bout.toByteArray();
+    }
+
+    public static InputStream gunzip(InputStream in) throws IOException {
+        return new GZIPInputStream(in);
+    }
+}
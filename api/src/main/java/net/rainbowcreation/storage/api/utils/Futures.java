@@ -0,0 +1,36 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+public final class Futures {
+    private Futures() {}
+
+    public static <T> CompletableFuture<T> failed(Throwable ex) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        f.completeExceptionally(ex);
+        return f;
+    }
+
+    /** Fan out one call per key and gather the results in key order. Fallback for backends without a native batch op. */
+    public static <V> CompletableFuture<Map<String, V>> perKey(Collection<String> keys, Function<String, CompletableFuture<V>> call) {
+        Map<String, CompletableFuture<V>> calls = new LinkedHashMap<>();
+        for (String k : keys) calls.put(k, call.apply(k));
+        return CompletableFuture.allOf(calls.values().toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            Map<String, V> out = new LinkedHashMap<>();
+            calls.forEach((k, f) -> out.put(k, f.join()));
+            return out;
+        });
+    }
+
+    /** Fan out one call per key and complete once all of them did. */
+    public static CompletableFuture<Void> forEachKey(Collection<String> keys, Function<String, ? extends CompletableFuture<?>> call) {
+        CompletableFuture<?>[] calls = new CompletableFuture<?>[keys.size()];
+        int i = 0;
+        for (String k : keys) calls[i++] = call.apply(k);
+        return CompletableFuture.allOf(calls);
+    }
+}
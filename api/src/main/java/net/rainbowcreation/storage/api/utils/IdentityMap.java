@@ -0,0 +1,96 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One live instance per (ns, key). Entries are weak: an entity stays mapped while something still holds it and
+ * is dropped once the last holder lets go, so the map never keeps memory alive on its own.
+ */
+public final class IdentityMap {
+    private static final class Ref extends WeakReference<Object> {
+        final String ns;
+        final String key;
+
+        Ref(String ns, String key, Object value, ReferenceQueue<Object> queue) {
+            super(value, queue);
+            this.ns = ns;
+            this.key = key;
+        }
+    }
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Ref>> byNs = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /** The live instance, or null when there is none or it is not a {@code type}. */
+    public <T> T get(String ns, String key, Class<T> type) {
+        expunge();
+        ConcurrentHashMap<String, Ref> keys = byNs.get(ns);
+        Ref ref = (keys != null) ? keys.get(key) : null;
+        Object value = (ref != null) ? ref.get() : null;
+        if (type.isInstance(value)) {
+            hits.increment();
+            return type.cast(value);
+        }
+        misses.increment();
+        return null;
+    }
+
+    /** Map {@code value} unless a live instance is already mapped; returns whichever instance callers should use. */
+    @SuppressWarnings("unchecked")
+    public <T> T putIfAbsent(String ns, String key, T value) {
+        expunge();
+        ConcurrentHashMap<String, Ref> keys = byNs.computeIfAbsent(ns, k -> new ConcurrentHashMap<>());
+        Ref mine = new Ref(ns, key, value, collected);
+        while (true) {
+            Ref ref = keys.putIfAbsent(key, mine);
+            if (ref == null) return value;
+            Object live = ref.get();
+            if (live != null && live.getClass() == value.getClass()) return (T) live;
+            if (keys.replace(key, ref, mine)) return value;
+        }
+    }
+
+    /** Map {@code value}, replacing any earlier instance. */
+    public void put(String ns, String key, Object value) {
+        expunge();
+        byNs.computeIfAbsent(ns, k -> new ConcurrentHashMap<>()).put(key, new Ref(ns, key, value, collected));
+    }
+
+    public void invalidate(String ns, Collection<String> keys) {
+        ConcurrentHashMap<String, Ref> mapped = byNs.get(ns);
+        if (mapped != null) for (String k : keys) mapped.remove(k);
+    }
+
+    public void invalidateNamespace(String ns) {
+        byNs.remove(ns);
+    }
+
+    public void clear() {
+        byNs.clear();
+    }
+
+    public int size() {
+        expunge();
+        int n = 0;
+        for (ConcurrentHashMap<String, Ref> keys : byNs.values()) n += keys.size();
+        return n;
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+
+    // Drop entries whose instance was collected
+    private void expunge() {
+        for (Object o; (o = collected.poll()) != null; ) {
+            Ref ref = (Ref) o;
+            ConcurrentHashMap<String, Ref> keys = byNs.get(ref.ns);
+            if (keys != null) keys.remove(ref.key, ref);
+        }
+    }
+}
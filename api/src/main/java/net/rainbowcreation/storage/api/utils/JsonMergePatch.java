@@ -0,0 +1,61 @@
+package net.rainbowcreation.storage.api.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * JSON merge-patch (RFC 7396): a patch is an object whose fields replace those of the target, objects merge
+ * recursively, {@code null} removes a field and anything else (arrays included) replaces the target as a whole.
+ * A field cannot be set to an explicit {@code null}; it is removed instead, which reads back the same.
+ */
+public final class JsonMergePatch {
+    private JsonMergePatch() {}
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().registerModule(new ModelAccessors()); // for managers without a mapper of their own
+
+    /** Tree of any value: a Map, a POJO or a JsonNode (returned as is). */
+    public static JsonNode toTree(Object value) {
+        return (value instanceof JsonNode) ? (JsonNode) value : MAPPER.valueToTree(value);
+    }
+
+    /** Result of applying {@code patch} to {@code target} (null = absent). Neither argument is modified. */
+    public static JsonNode apply(JsonNode target, JsonNode patch) {
+        if (patch == null || !patch.isObject()) return patch;
+        ObjectNode result = (target != null && target.isObject()) ? ((ObjectNode) target).deepCopy() : JsonNodeFactory.instance.objectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> it = patch.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> e = it.next();
+            if (e.getValue().isNull()) result.remove(e.getKey());
+            else result.set(e.getKey(), apply(result.get(e.getKey()), e.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Smallest patch that turns {@code from} into {@code to}: an empty object when nothing changed, or null when
+     * either side is not an object and only a whole replacement will do.
+     */
+    public static ObjectNode diff(JsonNode from, JsonNode to) {
+        if (from == null || to == null || !from.isObject() || !to.isObject()) return null;
+        ObjectNode patch = JsonNodeFactory.instance.objectNode();
+        for (Iterator<String> it = from.fieldNames(); it.hasNext(); ) {
+            String name = it.next();
+            JsonNode now = to.get(name);
+            if ((now == null || now.isNull()) && !from.get(name).isNull()) patch.putNull(name);
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> it = to.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> e = it.next();
+            JsonNode was = from.get(e.getKey());
+            JsonNode now = e.getValue();
+            if (now.isNull() || now.equals(was)) continue;
+            ObjectNode nested = diff(was, now);
+            if (nested != null && nested.size() == 0) continue; // differed only in explicit nulls
+            patch.set(e.getKey(), (nested != null) ? nested : now);
+        }
+        return patch;
+    }
+}
@@ -0,0 +1,105 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Numbers and booleans read straight off, and written straight into, their JSON bytes: no ObjectMapper, no String,
+ * no boxing. Anything that is not a plain JSON scalar throws {@link NumberFormatException}, callers fall back to
+ * the generic decoder then.
+ */
+public final class JsonScalars {
+    private JsonScalars() {}
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    public static long parseLong(byte[] json) {
+        int i = skipSpace(json, 0), end = trimEnd(json);
+        if (i >= end) throw new NumberFormatException("empty");
+        boolean negative = json[i] == '-';
+        if (negative) i++;
+        if (i >= end) throw new NumberFormatException("no digits");
+        long v = 0;
+        for (; i < end; i++) {
+            int d = json[i] - '0';
+            if (d < 0 || d > 9) return (long) parseDouble(json); // 5.0, 1e3: stored by a writer that used doubles
+            if (v < -(Long.MAX_VALUE / 10)) throw new NumberFormatException("overflow");
+            v = v * 10 - d; // accumulate negatively so Long.MIN_VALUE fits
+            if (v > 0) throw new NumberFormatException("overflow");
+        }
+        if (negative) return v;
+        if (v == Long.MIN_VALUE) throw new NumberFormatException("overflow");
+        return -v;
+    }
+
+    public static int parseInt(byte[] json) {
+        long v = parseLong(json);
+        if (v != (int) v) throw new NumberFormatException("out of int range: " + v);
+        return (int) v;
+    }
+
+    public static double parseDouble(byte[] json) {
+        int i = skipSpace(json, 0), end = trimEnd(json);
+        if (i >= end) throw new NumberFormatException("empty");
+        for (int j = i; j < end; j++) {
+            byte c = json[j];
+            if (!((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E')) {
+                throw new NumberFormatException("not a JSON number");
+            }
+        }
+        return Double.parseDouble(new String(json, i, end - i, StandardCharsets.ISO_8859_1));
+    }
+
+    public static boolean parseBoolean(byte[] json) {
+        int i = skipSpace(json, 0), end = trimEnd(json);
+        if (matches(json, i, end, TRUE)) return true;
+        if (matches(json, i, end, FALSE)) return false;
+        throw new NumberFormatException("not a JSON boolean");
+    }
+
+    public static byte[] bytes(long v) {
+        if (v == Long.MIN_VALUE) return "-9223372036854775808".getBytes(StandardCharsets.ISO_8859_1);
+        int len = (v < 0) ? 2 : 1;
+        for (long x = Math.abs(v); x >= 10; x /= 10) len++;
+        byte[] out = new byte[len];
+        long x = Math.abs(v);
+        for (int i = len - 1; i >= 0; i--) {
+            out[i] = (byte) ('0' + (x % 10));
+            x /= 10;
+        }
+        if (v < 0) out[0] = '-';
+        return out;
+    }
+
+    /** JSON has no NaN or infinity; those throw like Jackson's default writer would refuse them on read. */
+    public static byte[] bytes(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) throw new NumberFormatException("not representable in JSON: " + v);
+        return Double.toString(v).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    public static byte[] bytes(boolean v) {
+        return (v ? TRUE : FALSE).clone();
+    }
+
+    private static int skipSpace(byte[] b, int i) {
+        while (i < b.length && isSpace(b[i])) i++;
+        return i;
+    }
+
+    private static int trimEnd(byte[] b) {
+        int end = b.length;
+        while (end > 0 && isSpace(b[end - 1])) end--;
+        return end;
+    }
+
+    // JSON whitespace only: a tagged non-JSON value starts with 0x00 and must not parse
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean matches(byte[] b, int from, int to, byte[] word) {
+        if (to - from != word.length) return false;
+        for (int i = 0; i < word.length; i++) if (b[from + i] != word[i]) return false;
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+package net.rainbowcreation.storage.api.utils;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-resolved {@link ObjectReader}/{@link ObjectWriter} per class. Readers and writers built for a concrete type
+ * fetch their root (de)serializer once, so after warm-up a read or write does no type resolution or introspection.
+ */
+public final class JsonTypeCache {
+    private static final class Codec {
+        final JavaType type;
+        final ObjectReader reader;
+        final ObjectWriter writer;
+
+        Codec(ObjectMapper mapper, Class<?> cls) {
+            this.type = mapper.constructType(cls);
+            this.reader = mapper.readerFor(type);
+            this.writer = mapper.writerFor(type);
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final ConcurrentHashMap<Class<?>, Codec> codecs = new ConcurrentHashMap<>();
+
+    public JsonTypeCache(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /** Resolve ahead of the first read/write, e.g. when a model class is registered. */
+    public void warm(Class<?> cls) {
+        codec(cls);
+    }
+
+    public JavaType type(Class<?> cls) {
+        return codec(cls).type;
+    }
+
+    public ObjectReader reader(Class<?> cls) {
+        return codec(cls).reader;
+    }
+
+    /** Writer for the runtime class of {@code value}; null goes through the mapper's own writer. */
+    public ObjectWriter writer(Object value) {
+        return (value == null) ? mapper.writer() : codec(value.getClass()).writer;
+    }
+
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    public int size() {
+        return codecs.size();
+    }
+
+    private Codec codec(Class<?> cls) {
+        Codec c = codecs.get(cls); // plain get first, computeIfAbsent locks the bin even on hits (Java 8)
+        return (c != null) ? c : codecs.computeIfAbsent(cls, k -> new Codec(mapper, k));
+    }
+}
@@ -0,0 +1,221 @@
+package net.rainbowcreation.storage.api.utils;
+
+import net.rainbowcreation.storage.api.annotations.QLQuery;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.SettableBeanProperty;
+import com.fasterxml.jackson.databind.deser.impl.FieldProperty;
+import com.fasterxml.jackson.databind.deser.impl.MethodProperty;
+import com.fasterxml.jackson.databind.deser.impl.NullsConstantProvider;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.databind.ser.impl.PropertySerializerMap;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Jackson module that reads and writes the properties of @QLQuery models through MethodHandles built once per
+ * property, instead of Jackson's default {@code Field.get}/{@code Method.invoke} on every value. Properties it
+ * cannot take over (inaccessible, final, builder-style setters, ...) keep Jackson's own accessors.
+ */
+public final class ModelAccessors extends SimpleModule {
+    private static final long serialVersionUID = 1L;
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    public ModelAccessors() {
+        super("sgw-model-accessors");
+        setSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription desc, List<BeanPropertyWriter> props) {
+                if (!isModel(desc.getBeanClass())) return props;
+                for (ListIterator<BeanPropertyWriter> it = props.listIterator(); it.hasNext(); ) {
+                    BeanPropertyWriter w = it.next();
+                    if (w.getClass() != BeanPropertyWriter.class) continue; // already specialised by someone else
+                    MethodHandle getter = getter(w.getMember());
+                    if (getter != null) it.set(new HandleWriter(w, getter));
+                }
+                return props;
+            }
+        });
+        setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public BeanDeserializerBuilder updateBuilder(DeserializationConfig config, BeanDescription desc, BeanDeserializerBuilder builder) {
+                if (!isModel(desc.getBeanClass())) return builder;
+                List<SettableBeanProperty> props = new ArrayList<>();
+                for (Iterator<SettableBeanProperty> it = builder.getProperties(); it.hasNext(); ) props.add(it.next());
+                for (SettableBeanProperty p : props) {
+                    if (p.getClass() != FieldProperty.class && p.getClass() != MethodProperty.class) continue;
+                    MethodHandle setter = setter(p.getMember());
+                    if (setter != null) builder.addOrReplaceProperty(new HandleProperty(p, setter), true);
+                }
+                return builder;
+            }
+        });
+    }
+
+    private static boolean isModel(Class<?> cls) {
+        return cls.isAnnotationPresent(QLQuery.class);
+    }
+
+    private static MethodHandle getter(AnnotatedMember m) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            if (m instanceof AnnotatedField) {
+                Field f = ((AnnotatedField) m).getAnnotated();
+                if (Modifier.isStatic(f.getModifiers())) return null;
+                f.setAccessible(true);
+                return lookup.unreflectGetter(f).asType(GETTER);
+            }
+            if (m instanceof AnnotatedMethod) {
+                Method g = ((AnnotatedMethod) m).getAnnotated();
+                if (Modifier.isStatic(g.getModifiers()) || g.getParameterCount() != 0) return null;
+                g.setAccessible(true);
+                return lookup.unreflect(g).asType(GETTER);
+            }
+        } catch (RuntimeException | IllegalAccessException ignored) {
+            // e.g. module access rules: stay on reflection
+        }
+        return null;
+    }
+
+    private static MethodHandle setter(AnnotatedMember m) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            if (m instanceof AnnotatedField) {
+                Field f = ((AnnotatedField) m).getAnnotated();
+                if ((f.getModifiers() & (Modifier.STATIC | Modifier.FINAL)) != 0) return null;
+                f.setAccessible(true);
+                return lookup.unreflectSetter(f).asType(SETTER);
+            }
+            if (m instanceof AnnotatedMethod) {
+                Method s = ((AnnotatedMethod) m).getAnnotated();
+                // a setter returning something may be a builder's, whose result Jackson keeps
+                if (Modifier.isStatic(s.getModifiers()) || s.getParameterCount() != 1 || s.getReturnType() != void.class) return null;
+                s.setAccessible(true);
+                return lookup.unreflect(s).asType(SETTER);
+            }
+        } catch (RuntimeException | IllegalAccessException ignored) {
+            // e.g. module access rules: stay on reflection
+        }
+        return null;
+    }
+
+    // Plain non-null values are read through the handle and written here; anything that needs more of Jackson's
+    // rules (nulls, suppression, type info, self references) goes to BeanPropertyWriter.serializeAsField as is
+    private static final class HandleWriter extends BeanPropertyWriter {
+        private static final long serialVersionUID = 1L;
+        private final transient MethodHandle getter;
+
+        HandleWriter(BeanPropertyWriter base, MethodHandle getter) {
+            super(base);
+            this.getter = getter;
+        }
+
+        private Object read(Object bean) throws Exception {
+            try {
+                return (Object) getter.invokeExact(bean);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        @Override
+        public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+            if (_suppressableValue != null || _typeSerializer != null) {
+                super.serializeAsField(bean, gen, prov);
+                return;
+            }
+            Object value = read(bean);
+            if (value == null || value == bean) {
+                super.serializeAsField(bean, gen, prov);
+                return;
+            }
+            JsonSerializer<Object> ser = _serializer;
+            if (ser == null) {
+                Class<?> cls = value.getClass();
+                PropertySerializerMap m = _dynamicSerializers;
+                ser = m.serializerFor(cls);
+                if (ser == null) ser = _findAndAddDynamic(m, cls, prov);
+            }
+            gen.writeFieldName(_name);
+            ser.serialize(value, gen, prov);
+        }
+    }
+
+    // FieldProperty/MethodProperty with the value stored through a handle
+    private static final class HandleProperty extends SettableBeanProperty.Delegating {
+        private static final long serialVersionUID = 1L;
+        private final transient MethodHandle setter;
+
+        HandleProperty(SettableBeanProperty delegate, MethodHandle setter) {
+            super(delegate);
+            this.setter = setter;
+        }
+
+        @Override
+        protected SettableBeanProperty withDelegate(SettableBeanProperty d) {
+            return new HandleProperty(d, setter);
+        }
+
+        @Override
+        public void deserializeAndSet(JsonParser p, DeserializationContext ctxt, Object instance) throws IOException {
+            boolean skipNulls = NullsConstantProvider.isSkipper(_nullProvider);
+            if (skipNulls && p.hasToken(JsonToken.VALUE_NULL)) return;
+            Object value = deserialize(p, ctxt);
+            if (value == null && skipNulls) return;
+            set(instance, value);
+        }
+
+        @Override
+        public Object deserializeSetAndReturn(JsonParser p, DeserializationContext ctxt, Object instance) throws IOException {
+            deserializeAndSet(p, ctxt, instance);
+            return instance;
+        }
+
+        @Override
+        public void set(Object instance, Object value) throws IOException {
+            try {
+                setter.invokeExact(instance, value);
+            } catch (Error e) {
+                throw e;
+            } catch (Exception e) {
+                _throwAsIOE(e, value);
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        @Override
+        public Object setAndReturn(Object instance, Object value) throws IOException {
+            set(instance, value);
+            return instance;
+        }
+    }
+}
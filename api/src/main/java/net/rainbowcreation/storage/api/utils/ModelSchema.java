@@ -0,0 +1,114 @@
+package net.rainbowcreation.storage.api.utils;
+
+import net.rainbowcreation.storage.api.ModelField;
+import net.rainbowcreation.storage.api.annotations.EnableQuery;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The @EnableQuery fields of a model class, scanned once per class: their {@link ModelField} definitions and a
+ * MethodHandle getter for each, so reading query values off an entity does no reflection after the first scan.
+ */
+public final class ModelSchema {
+    private static final ClassValue<ModelSchema> SCHEMAS = new ClassValue<ModelSchema>() {
+        @Override
+        protected ModelSchema computeValue(Class<?> type) {
+            return new ModelSchema(type);
+        }
+    };
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+    private final Class<?> type;
+    private final Map<String, ModelField> fields;
+    private final Map<String, Class<?>> types;
+    private final Map<String, MethodHandle> getters;
+
+    public static ModelSchema of(Class<?> type) {
+        return SCHEMAS.get(type);
+    }
+
+    private ModelSchema(Class<?> type) {
+        this.type = type;
+        Map<String, ModelField> fields = new LinkedHashMap<>();
+        Map<String, Class<?>> types = new LinkedHashMap<>();
+        Map<String, MethodHandle> getters = new LinkedHashMap<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (!f.isAnnotationPresent(EnableQuery.class) || Modifier.isStatic(f.getModifiers())) continue;
+                String sqlType = sqlType(f.getType());
+                if (sqlType == null || fields.containsKey(f.getName())) continue; // a subclass field hides the parent's
+                fields.put(f.getName(), new ModelField("$." + f.getName(), sqlType, true));
+                types.put(f.getName(), f.getType());
+                try {
+                    f.setAccessible(true);
+                    getters.put(f.getName(), lookup.unreflectGetter(f).asType(GETTER));
+                } catch (RuntimeException | IllegalAccessException e) {
+                    // not accessible (module rules): the field is still declared, values() just leaves it out
+                }
+            }
+        }
+        this.fields = Collections.unmodifiableMap(fields);
+        this.types = Collections.unmodifiableMap(types);
+        this.getters = getters;
+    }
+
+    public Class<?> type() { return type; }
+
+    /** Query fields by name, as sent with a model registration. */
+    public Map<String, ModelField> fields() { return fields; }
+
+    public boolean isQueryable(String field) { return fields.containsKey(field); }
+
+    /** Java type of a query field, null when {@code field} is not one. */
+    public Class<?> fieldType(String field) { return types.get(field); }
+
+    /** Value of a query field on {@code entity}. */
+    public Object value(Object entity, String field) {
+        MethodHandle getter = getters.get(field);
+        if (getter == null) throw new IllegalArgumentException(type.getSimpleName() + " has no query field " + field);
+        return get(getter, entity);
+    }
+
+    /** All query field values of {@code entity}. */
+    public Map<String, Object> values(Object entity) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (Map.Entry<String, MethodHandle> e : getters.entrySet()) out.put(e.getKey(), get(e.getValue(), entity));
+        return out;
+    }
+
+    private static Object get(MethodHandle getter, Object entity) {
+        try {
+            return (Object) getter.invokeExact(entity);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static String sqlType(Class<?> t) {
+        // Explicitly distinguish Boolean vs Numbers
+        if (t == boolean.class || t == Boolean.class) return "BOOLEAN";
+
+        // Numbers
+        if (t == byte.class || t == Byte.class)       return "TINYINT";
+        if (t == int.class || t == Integer.class)     return "INT";
+        if (t == long.class || t == Long.class)       return "BIGINT";
+        if (t == double.class || t == Double.class)   return "DOUBLE";
+        if (t == float.class || t == Float.class)     return "FLOAT";
+
+        // Strings
+        if (t == String.class) return "VARCHAR(255)";
+
+        return null;
+    }
+}
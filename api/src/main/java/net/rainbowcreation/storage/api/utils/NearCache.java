@@ -0,0 +1,91 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client-side copy of recently read values (raw JSON bytes), bounded by entry count and age.
+ * Entries are dropped on invalidation; a read racing an invalidation is not cached (see {@link #stamp()}).
+ */
+public final class NearCache {
+    private static final class Cached {
+        final byte[] value;
+        final long expiresAt;
+        Cached(byte[] value, long expiresAt) { this.value = value; this.expiresAt = expiresAt; }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos; // Long.MAX_VALUE = entries never age out
+    private final LinkedHashMap<String, Cached> entries;
+    private long epoch; // bumped by every invalidation
+    private long hits;
+    private long misses;
+
+    public NearCache(int maxEntries, long ttlMs) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMs > 0 ? ttlMs * 1_000_000L : Long.MAX_VALUE;
+        this.entries = new LinkedHashMap<String, Cached>(Math.min(maxEntries, 1024) * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                return size() > NearCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** Cached value, or null on a miss or expired entry. */
+    public synchronized byte[] get(String ns, String key) {
+        String k = id(ns, key);
+        Cached e = entries.get(k);
+        if (e != null && (ttlNanos == Long.MAX_VALUE || System.nanoTime() - e.expiresAt < 0)) {
+            hits++;
+            return e.value;
+        }
+        if (e != null) entries.remove(k);
+        misses++;
+        return null;
+    }
+
+    /** Take before fetching; {@link #put} ignores the value if anything was invalidated in between. */
+    public synchronized long stamp() {
+        return epoch;
+    }
+
+    public synchronized void put(String ns, String key, byte[] value, long stamp) {
+        if (stamp != epoch) return;
+        entries.put(id(ns, key), new Cached(value, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void invalidate(String ns, String key) {
+        epoch++;
+        entries.remove(id(ns, key));
+    }
+
+    public synchronized void invalidate(String ns, Iterable<String> keys) {
+        epoch++;
+        for (String key : keys) entries.remove(id(ns, key));
+    }
+
+    public synchronized void invalidateNamespace(String ns) {
+        epoch++;
+        String prefix = ns + '\0';
+        for (Iterator<String> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if (it.next().startsWith(prefix)) it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        epoch++;
+        entries.clear();
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public synchronized long hits() { return hits; }
+    public synchronized long misses() { return misses; }
+
+    private static String id(String ns, String key) {
+        return ns + '\0' + key;
+    }
+}
@@ -0,0 +1,296 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Durable write-behind log for writes the remote could not take.
+ * Records are appended to a file as {@code int length, int crc32, payload} and fsynced in batches; once the
+ * remote is back they are replayed strictly in order and the file is truncated when fully drained.
+ * All file work and replay steps run on one thread, callers never block.
+ */
+public final class Outbox implements Closeable {
+    public static final byte SET = 1;
+    public static final byte DELETE = 2;
+    public static final byte PATCH = 3; // value is a JSON merge-patch; replaying one twice is harmless
+
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+
+    /** One queued write. {@code value} is null for deletes. */
+    public static final class Record {
+        public final byte type;
+        public final String ns;
+        public final String key;
+        public final byte[] value;
+
+        public Record(byte type, String ns, String key, byte[] value) {
+            this.type = type;
+            this.ns = ns;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Append {
+        final Record record;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        Append(Record record) { this.record = record; }
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Queue<Append> queued = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicInteger size = new AtomicInteger(); // queued + durable, not yet replayed
+
+    // --- Executor thread state ---
+    private final ArrayDeque<Record> backlog = new ArrayDeque<>();
+    private Function<Record, CompletableFuture<Void>> sender;
+    private BooleanSupplier ready = () -> true;
+    private boolean replaying;
+    private boolean stalled; // last replay attempt failed, logged once until it succeeds
+    private final List<CompletableFuture<Void>> drainWaiters = new ArrayList<>();
+
+    public Outbox(File file) throws IOException {
+        this.file = file;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        size.set(backlog.size());
+        this.executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "SGW-Outbox");
+            t.setDaemon(true);
+            return t;
+        });
+        if (!backlog.isEmpty()) logInfo(backlog.size() + " unsent write(s) recovered from " + file);
+    }
+
+    /** Queue a write; the future completes once the record is on disk. */
+    public CompletableFuture<Void> append(Record record) {
+        Append a = new Append(record);
+        size.incrementAndGet();
+        queued.add(a);
+        if (flushScheduled.compareAndSet(false, true)) executor.execute(this::flush);
+        return a.done;
+    }
+
+    /** True while any write is queued or waiting for replay; new writes must then go through the outbox to keep order. */
+    public boolean hasBacklog() {
+        return size.get() > 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /** Completes once every write appended so far has been replayed (or failed to reach the disk). */
+    public CompletableFuture<Void> drained() {
+        if (size.get() == 0) return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (size.get() == 0) f.complete(null);
+                else drainWaiters.add(f);
+            });
+        } catch (RejectedExecutionException e) {
+            f.completeExceptionally(e);
+        }
+        return f;
+    }
+
+    /**
+     * Start replaying into {@code sender} whenever {@code ready} says the remote is up, retrying every {@code retryMs}.
+     * A failed send leaves the record at the head; the sender should complete normally for writes the remote rejected for good.
+     */
+    public void drainTo(Function<Record, CompletableFuture<Void>> sender, BooleanSupplier ready, long retryMs) {
+        executor.execute(() -> {
+            this.sender = sender;
+            this.ready = ready;
+            replayNext();
+        });
+        executor.scheduleWithFixedDelay(this::replayNext, retryMs, retryMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        executor.execute(this::flush);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try { channel.close(); } catch (IOException ignored) {}
+    }
+
+    // --- Executor thread ---
+
+    // Group commit: everything queued since the last flush costs one write and one fsync
+    private void flush() {
+        flushScheduled.set(false);
+        List<Append> batch = new ArrayList<>();
+        for (Append a; (a = queued.poll()) != null; ) batch.add(a);
+        if (batch.isEmpty()) return;
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bout);
+            for (Append a : batch) writeRecord(out, a.record);
+            ByteBuffer buf = ByteBuffer.wrap(bout.toByteArray());
+            channel.position(channel.size());
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(false);
+        } catch (IOException e) {
+            size.addAndGet(-batch.size());
+            for (Append a : batch) a.done.completeExceptionally(e);
+            if (size.get() == 0) wakeDrainWaiters();
+            return;
+        }
+        for (Append a : batch) {
+            backlog.add(a.record);
+            a.done.complete(null);
+        }
+        replayNext();
+    }
+
+    private void replayNext() {
+        if (replaying || sender == null || backlog.isEmpty() || !ready.getAsBoolean()) return;
+        replaying = true;
+        Record head = backlog.peek();
+        CompletableFuture<Void> sent;
+        try {
+            sent = sender.apply(head);
+        } catch (Throwable t) {
+            sent = Futures.failed(t);
+        }
+        sent.whenCompleteAsync((v, t) -> {
+            replaying = false;
+            if (t != null) {
+                if (!stalled) logWarn("Replay paused, " + backlog.size() + " write(s) kept: " + t);
+                stalled = true;
+                return;
+            }
+            if (stalled) logInfo("Replay resumed");
+            stalled = false;
+            backlog.poll();
+            size.decrementAndGet();
+            if (backlog.isEmpty() && queued.isEmpty()) {
+                truncate();
+                wakeDrainWaiters();
+            }
+            replayNext();
+        }, executor);
+    }
+
+    private void wakeDrainWaiters() {
+        for (CompletableFuture<Void> f : drainWaiters) f.complete(null);
+        drainWaiters.clear();
+    }
+
+    private void truncate() {
+        try {
+            channel.truncate(0);
+            channel.force(false);
+        } catch (IOException e) {
+            logWarn("Cannot truncate " + file + ": " + e.getMessage());
+        }
+    }
+
+    // --- Record format ---
+
+    private static void writeRecord(DataOutputStream out, Record r) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(64 + (r.value != null ? r.value.length : 0));
+        DataOutputStream p = new DataOutputStream(bout);
+        p.writeByte(r.type);
+        p.writeUTF(r.ns);
+        p.writeUTF(r.key);
+        if (r.value == null) {
+            p.writeInt(-1);
+        } else {
+            p.writeInt(r.value.length);
+            p.write(r.value);
+        }
+        byte[] payload = bout.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    // Load surviving records; a torn or corrupt tail (crash mid-append) is cut off
+    private void recover() throws IOException {
+        long fileSize = channel.size();
+        long pos = 0;
+        ByteBuffer head = ByteBuffer.allocate(8);
+        while (pos + 8 <= fileSize) {
+            head.clear();
+            channel.read(head, pos);
+            head.flip();
+            int len = head.getInt();
+            int crc = head.getInt();
+            if (len < 0 || len > MAX_RECORD || pos + 8 + len > fileSize) break;
+            ByteBuffer payload = ByteBuffer.allocate(len);
+            while (payload.hasRemaining() && channel.read(payload, pos + 8 + payload.position()) > 0) { }
+            CRC32 check = new CRC32();
+            check.update(payload.array(), 0, len);
+            if ((int) check.getValue() != crc) break;
+            backlog.add(readRecord(payload.array()));
+            pos += 8 + len;
+        }
+        if (pos < fileSize) {
+            logWarn("Dropping " + (fileSize - pos) + " corrupt byte(s) at the end of " + file);
+            channel.truncate(pos);
+            channel.force(false);
+        }
+    }
+
+    private static Record readRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String ns = in.readUTF();
+        String key = in.readUTF();
+        int len = in.readInt();
+        byte[] value = null;
+        if (len >= 0) {
+            value = new byte[len];
+            in.readFully(value);
+        }
+        return new Record(type, ns, key, value);
+    }
+
+    // --- Logging Stubs ---
+
+    private void logInfo(String msg) {
+        System.out.println("[Outbox] " + msg);
+    }
+
+    private void logWarn(String msg) {
+        System.err.println("[Outbox] WARN: " + msg);
+    }
+}
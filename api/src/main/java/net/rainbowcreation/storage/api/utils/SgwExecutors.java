@@ -0,0 +1,112 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors for client-side completions, kept off {@code ForkJoinPool.commonPool()} which is tiny on small
+ * servers and shared with every other plugin. Virtual threads are used when the runtime has them (Java 21+),
+ * looked up reflectively so the API still targets Java 8.
+ */
+public final class SgwExecutors {
+    private SgwExecutors() {}
+
+    private static volatile ExecutorService shared;
+
+    /** Default I/O pool size: enough threads to decode while others wait, without flooding small hosts. */
+    public static int defaultThreads() {
+        return Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /** True when {@link #newVirtual(String)} will return virtual threads. */
+    public static boolean virtualThreadsAvailable() {
+        return VirtualThreads.FACTORY != null;
+    }
+
+    /** Process-wide fallback used by {@code IDataManager.executor()} implementations that bring none. */
+    public static Executor shared() {
+        ExecutorService e = shared;
+        if (e == null) {
+            synchronized (SgwExecutors.class) {
+                if ((e = shared) == null) shared = e = newExecutor("SGW-IO", defaultThreads(), true);
+            }
+        }
+        return e;
+    }
+
+    /** Virtual threads if requested and available, a bounded daemon pool of {@code threads} otherwise ({@code <= 0} = default size). */
+    public static ExecutorService newExecutor(String name, int threads, boolean virtual) {
+        if (virtual) {
+            ExecutorService v = newVirtual(name);
+            if (v != null) return v;
+        }
+        return newBounded(name, threads > 0 ? threads : defaultThreads());
+    }
+
+    /** Fixed-size pool of daemon threads with an unbounded queue; idle threads time out. */
+    public static ThreadPoolExecutor newBounded(String name, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /** One new virtual thread per task, or null before Java 21. */
+    public static ExecutorService newVirtual(String name) {
+        if (VirtualThreads.FACTORY == null) return null;
+        try {
+            ThreadFactory tf = VirtualThreads.factory(name + "-v");
+            return (ExecutorService) VirtualThreads.PER_TASK.invoke(null, tf);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /** Threads named {@code name-1, name-2, ...} that do not keep the JVM alive. */
+    public static ThreadFactory daemonFactory(String name) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Thread.ofVirtual().name(prefix, 0).factory() + Executors.newThreadPerTaskExecutor(factory), resolved once
+    private static final class VirtualThreads {
+        static final Method OF_VIRTUAL;
+        static final Method NAME;
+        static final Method FACTORY;
+        static final Method PER_TASK;
+
+        static {
+            Method ofVirtual = null, name = null, factory = null, perTask = null;
+            try {
+                Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                ofVirtual = Thread.class.getMethod("ofVirtual");
+                name = builder.getMethod("name", String.class, long.class);
+                factory = builder.getMethod("factory");
+                perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                ofVirtual.invoke(null); // preview-only runtimes throw here
+            } catch (Throwable t) {
+                factory = null;
+            }
+            OF_VIRTUAL = ofVirtual;
+            NAME = name;
+            FACTORY = factory;
+            PER_TASK = perTask;
+        }
+
+        static ThreadFactory factory(String prefix) throws Exception {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = NAME.invoke(builder, prefix, 1L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package net.rainbowcreation.storage.api.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one request: callers arriving while it is in flight share its result.
+ * Writers must {@link #forget} the keys they touch so a read issued after the write never joins a read issued before it.
+ */
+public final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();   // calls that joined a request in flight
+    private final LongAdder misses = new LongAdder(); // calls that had to start one
+
+    public CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> f = flights.get(key);
+        if (f == null) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            f = flights.putIfAbsent(key, mine);
+            if (f == null) {
+                misses.increment();
+                start(key, mine, call);
+                return copy(mine);
+            }
+        }
+        hits.increment();
+        return copy(f);
+    }
+
+    /** Later calls for {@code key} start a new request; callers already waiting keep the current one. */
+    public void forget(K key) {
+        flights.remove(key);
+    }
+
+    public void forgetAll() {
+        flights.clear();
+    }
+
+    public long hits() { return hits.sum(); }
+    public long misses() { return misses.sum(); }
+    public int inFlight() { return flights.size(); }
+
+    private void start(K key, CompletableFuture<V> mine, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> sent;
+        try {
+            sent = call.get();
+        } catch (Throwable t) {
+            sent = Futures.failed(t);
+        }
+        sent.whenComplete((v, t) -> {
+            flights.remove(key, mine); // before completing, so callbacks that read again start fresh
+            if (t != null) mine.completeExceptionally(t);
+            else mine.complete(v);
+        });
+    }
+
+    // Every caller gets its own stage, so one cancelling or completing it cannot affect the others
+    private static <V> CompletableFuture<V> copy(CompletableFuture<V> f) {
+        return f.thenApply(v -> v);
+    }
+}
@@ -0,0 +1,152 @@
+package net.rainbowcreation.storage.api.utils;
+
+import net.rainbowcreation.storage.api.network.TimingWheel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds writes for a short window and keeps only the last value per (ns, key), then flushes them as one batch per
+ * namespace. Batches go out strictly one after another, so a later value never overtakes an earlier one, and buffered
+ * values stay readable through {@link #lookup} until their batch is acknowledged.
+ */
+public final class WriteBuffer {
+    /** Receives one namespace of a batch: values to set (JSON bytes) and keys to delete. */
+    public interface Sink {
+        CompletableFuture<Void> flush(String ns, Map<String, byte[]> sets, List<String> deletes);
+    }
+
+    private static final class Slot {
+        byte[] value; // null = delete
+        final CompletableFuture<Void> done = new CompletableFuture<>(); // shared by every write folded into this slot
+        Slot(byte[] value) { this.value = value; }
+    }
+
+    private final long windowMs;
+    private final int maxKeys;
+    private final Sink sink;
+    private final Executor executor;
+
+    // --- Guarded by this ---
+    private Map<String, Map<String, Slot>> open = new LinkedHashMap<>();
+    private final Deque<Map<String, Map<String, Slot>>> flushing = new ArrayDeque<>(); // sent, not yet acknowledged
+    private int openKeys;
+    private TimingWheel.Timeout timer;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    private long writes;
+    private long coalesced;
+
+    /** @param maxKeys a batch is flushed early once it holds this many keys */
+    public WriteBuffer(long windowMs, int maxKeys, Sink sink, Executor executor) {
+        this.windowMs = windowMs;
+        this.maxKeys = Math.max(1, maxKeys);
+        this.sink = sink;
+        this.executor = executor;
+    }
+
+    /** Buffer a write ({@code value == null} deletes); the future completes once the batch carrying it is written. */
+    public synchronized CompletableFuture<Void> put(String ns, String key, byte[] value) {
+        writes++;
+        Map<String, Slot> slots = open.computeIfAbsent(ns, k -> new HashMap<>());
+        Slot s = slots.get(key);
+        if (s != null) {
+            s.value = value; // last write wins
+            coalesced++;
+            return s.done;
+        }
+        s = new Slot(value);
+        slots.put(key, s);
+        if (++openKeys == maxKeys) {
+            executor.execute(this::flush);
+        } else if (timer == null) {
+            timer = TimingWheel.shared().schedule(() -> executor.execute(this::flush), windowMs);
+        }
+        return s.done;
+    }
+
+    /** Null when the key has no buffered write, otherwise its newest value (empty for a pending delete). */
+    public synchronized Optional<byte[]> lookup(String ns, String key) {
+        Slot s = slot(open, ns, key);
+        for (Iterator<Map<String, Map<String, Slot>>> it = flushing.descendingIterator(); s == null && it.hasNext(); ) {
+            s = slot(it.next(), ns, key);
+        }
+        return (s == null) ? null : Optional.ofNullable(s.value);
+    }
+
+    /** Send everything buffered so far; completes when it (and every earlier batch) is written. */
+    public CompletableFuture<Void> flush() {
+        Map<String, Map<String, Slot>> batch;
+        CompletableFuture<Void> done;
+        synchronized (this) {
+            if (timer != null) timer.cancel();
+            timer = null;
+            if (open.isEmpty()) return tail;
+            batch = open;
+            open = new LinkedHashMap<>();
+            openKeys = 0;
+            flushing.addLast(batch);
+            done = tail.handle((v, t) -> null).thenCompose(v -> send(batch));
+            tail = done;
+        }
+        return done;
+    }
+
+    /** Flush if {@code ns} has writes buffered or in flight, so a read that bypasses {@link #lookup} sees them. */
+    public CompletableFuture<Void> flush(String ns) {
+        synchronized (this) {
+            boolean pending = open.containsKey(ns);
+            for (Iterator<Map<String, Map<String, Slot>>> it = flushing.iterator(); !pending && it.hasNext(); ) {
+                pending = it.next().containsKey(ns);
+            }
+            if (!pending) return CompletableFuture.completedFuture(null);
+        }
+        return flush();
+    }
+
+    public synchronized long writes() { return writes; }
+    /** Writes that replaced a still-buffered value for the same key instead of costing a frame of their own. */
+    public synchronized long coalesced() { return coalesced; }
+
+    private CompletableFuture<Void> send(Map<String, Map<String, Slot>> batch) {
+        List<CompletableFuture<Void>> sent = new ArrayList<>(batch.size());
+        for (Map.Entry<String, Map<String, Slot>> ns : batch.entrySet()) {
+            Map<String, byte[]> sets = new LinkedHashMap<>();
+            List<String> deletes = new ArrayList<>();
+            for (Map.Entry<String, Slot> e : ns.getValue().entrySet()) { // swapped out of open, put() no longer touches it
+                if (e.getValue().value != null) sets.put(e.getKey(), e.getValue().value);
+                else deletes.add(e.getKey());
+            }
+            CompletableFuture<Void> f;
+            try {
+                f = sink.flush(ns.getKey(), sets, deletes);
+            } catch (Throwable t) {
+                f = Futures.failed(t);
+            }
+            sent.add(f.whenComplete((v, t) -> {
+                for (Slot s : ns.getValue().values()) {
+                    if (t == null) s.done.complete(null);
+                    else s.done.completeExceptionally(t);
+                }
+            }));
+        }
+        return CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0])).whenComplete((v, t) -> {
+            synchronized (this) {
+                flushing.remove(batch);
+            }
+        });
+    }
+
+    private static Slot slot(Map<String, Map<String, Slot>> batch, String ns, String key) {
+        Map<String, Slot> slots = batch.get(ns);
+        return (slots != null) ? slots.get(key) : null;
+    }
+}
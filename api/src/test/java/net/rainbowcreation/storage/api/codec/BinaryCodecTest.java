@@ -0,0 +1,162 @@
+package net.rainbowcreation.storage.api.codec;
+
+import net.rainbowcreation.storage.api.utils.JsonTypeCache;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private final JsonTypeCache types = new JsonTypeCache(MAPPER);
+    private final BinaryCodec codec = new BinaryCodec();
+
+    public static final class Player {
+        public String name;
+        public long coins;
+        public double ratio;
+        public boolean vip;
+        public List<String> tags = new ArrayList<>();
+        public Map<String, Integer> stats = new LinkedHashMap<>();
+        public byte[] skin;
+        public String nick; // stays null
+    }
+
+    private <T> T roundTrip(Object value, Class<T> type) throws IOException {
+        byte[] payload = codec.encode(value, types);
+        return codec.decode(payload, 0, payload.length, type, types);
+    }
+
+    private static JsonNode json(String s) throws IOException {
+        return MAPPER.readTree(s.replace('\'', '"'));
+    }
+
+    @Test
+    void pojoRoundTrips() throws IOException {
+        Player p = new Player();
+        p.name = "Steve \u00fcn\u00efcode \uD83D\uDE00";
+        p.coins = -1234567890123L;
+        p.ratio = 0.1;
+        p.vip = true;
+        p.tags.add("a");
+        p.tags.add("b");
+        p.stats.put("kills", 7);
+        p.skin = new byte[] {0, 1, (byte) 0xFF};
+        Player back = roundTrip(p, Player.class);
+        assertEquals(MAPPER.valueToTree(p), MAPPER.valueToTree(back));
+        assertArrayEquals(p.skin, back.skin);
+        assertNull(back.nick);
+    }
+
+    @Test
+    void treeRoundTripsExactly() throws IOException {
+        JsonNode tree = json("{'a':[1,-1,2147483648,-9223372036854775808,1.5,true,false,null,'s',{}],'b':{'c':[]}}");
+        assertEquals(tree, roundTrip(tree, JsonNode.class));
+    }
+
+    @Test
+    void scalarsAndBigNumbers() throws IOException {
+        assertEquals(Long.MIN_VALUE, roundTrip(Long.MIN_VALUE, Long.class));
+        assertEquals(Long.MAX_VALUE, roundTrip(Long.MAX_VALUE, Long.class));
+        assertEquals(3.25f, roundTrip(3.25f, Float.class));
+        assertEquals(Double.MIN_VALUE, roundTrip(Double.MIN_VALUE, Double.class));
+        assertEquals("", roundTrip("", String.class));
+        BigInteger big = new BigInteger("123456789012345678901234567890");
+        assertEquals(big, roundTrip(big, BigInteger.class));
+        BigDecimal dec = new BigDecimal("-12345.678900");
+        assertEquals(dec, roundTrip(dec, BigDecimal.class));
+    }
+
+    @Test
+    void repeatedFieldNamesAreSpelledOnce() throws IOException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("someLongFieldName", i);
+            row.put("anotherLongFieldName", "x");
+            rows.add(row);
+        }
+        byte[] bin = codec.encode(rows, types);
+        byte[] text = MAPPER.writeValueAsBytes(rows);
+        assertTrue(bin.length < text.length / 3, bin.length + " vs " + text.length);
+        assertEquals(MAPPER.valueToTree(rows), roundTrip(rows, JsonNode.class));
+        int spelled = 0;
+        byte[] name = "someLongFieldName".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + name.length <= bin.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bin, i, i + name.length), name)) spelled++;
+        }
+        assertEquals(1, spelled);
+    }
+
+    @Test
+    void corruptInputFailsWithIOException() throws IOException {
+        byte[] payload = codec.encode(json("{'name':'value','n':[1,2,3]}"), types);
+        for (int cut = 1; cut < payload.length; cut++) {
+            byte[] truncated = Arrays.copyOf(payload, cut);
+            try {
+                codec.decode(truncated, 0, truncated.length, JsonNode.class, types);
+            } catch (IOException expected) {
+                // truncated tokens or unbalanced structure
+            }
+        }
+        assertThrows(IOException.class, () -> codec.decode(new byte[] {99}, 0, 1, JsonNode.class, types));
+        assertThrows(IOException.class, () -> codec.decode(new byte[] {6, 0}, 0, 2, JsonNode.class, types)); // name ref before any name
+        assertThrows(IOException.class, () -> codec.decode(new byte[] {7, 10, 'a'}, 0, 3, JsonNode.class, types)); // string past the end
+    }
+
+    @Test
+    void decodesAtAnOffset() throws IOException {
+        byte[] payload = codec.encode("hi", types);
+        byte[] framed = new byte[payload.length + 4];
+        System.arraycopy(payload, 0, framed, 2, payload.length);
+        assertEquals("hi", codec.decode(framed, 2, payload.length, String.class, types));
+    }
+
+    @Test
+    void registryReadsBinValuesWhateverItWrites() throws IOException {
+        CodecRegistry writer = new CodecRegistry(types);
+        writer.use("ns", ValueCodec.load("bin"));
+        byte[] stored = writer.encode("ns", json("{'a':1}"));
+        assertEquals(0, stored[0]);
+        assertEquals(BinaryCodec.TAG, stored[1]);
+        assertFalse(writer.isJson("ns"));
+
+        CodecRegistry reader = new CodecRegistry(types); // JSON only, never used bin itself
+        assertTrue(reader.isJson("ns"));
+        assertEquals(json("{'a':1}"), reader.decode(stored, JsonNode.class));
+        reader.checkReadable(stored);
+        assertEquals(json("{'b':2}"), reader.decode("{\"b\":2}".getBytes(StandardCharsets.UTF_8), JsonNode.class));
+    }
+
+    @Test
+    void unknownTagThrows() {
+        CodecRegistry registry = new CodecRegistry(types);
+        byte[] foreign = {0, 42, 1, 2, 3};
+        assertThrows(IllegalStateException.class, () -> registry.checkReadable(foreign));
+        assertThrows(IllegalStateException.class, () -> registry.decode(foreign, JsonNode.class));
+    }
+
+    @Test
+    void tagsCannotBeShared() {
+        CodecRegistry registry = new CodecRegistry(types);
+        ValueCodec impostor = new ValueCodec() {
+            public String name() { return "other"; }
+            public byte tag() { return BinaryCodec.TAG; }
+            public byte[] encode(Object value, JsonTypeCache t) { return new byte[0]; }
+            public <T> T decode(byte[] data, int offset, int length, Class<T> type, JsonTypeCache t) { return null; }
+        };
+        assertThrows(IllegalArgumentException.class, () -> registry.use("ns", impostor));
+    }
+}
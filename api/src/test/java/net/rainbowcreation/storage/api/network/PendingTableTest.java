@@ -0,0 +1,97 @@
+package net.rainbowcreation.storage.api.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PendingTableTest {
+    private static PendingTable.Pending pending() {
+        return new PendingTable.Pending(Opcodes.GET, new CompletableFuture<>(), null);
+    }
+
+    @Test
+    void putThenRemoveReturnsTheSameEntryOnce() {
+        PendingTable table = new PendingTable();
+        PendingTable.Pending p = pending();
+        table.put(42, p);
+        assertEquals(1, table.size());
+        assertSame(p, table.remove(42));
+        assertNull(table.remove(42));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void idZeroIsReserved() {
+        assertThrows(IllegalArgumentException.class, () -> new PendingTable().put(0, pending()));
+    }
+
+    @Test
+    void randomInsertsAndRemovesMatchAHashMap() {
+        PendingTable table = new PendingTable();
+        Map<Long, PendingTable.Pending> expected = new HashMap<>();
+        Random rnd = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            long id = 1 + rnd.nextInt(4096); // dense ids: long probe chains, resizes and backward shifts
+            if (rnd.nextBoolean()) {
+                PendingTable.Pending p = pending();
+                table.put(id, p);
+                expected.put(id, p);
+            } else {
+                assertSame(expected.remove(id), table.remove(id), "id " + id);
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        for (Map.Entry<Long, PendingTable.Pending> e : expected.entrySet()) assertSame(e.getValue(), table.remove(e.getKey()));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    void drainEmptiesTheTable() {
+        PendingTable table = new PendingTable();
+        for (long id = 1; id <= 100; id++) table.put(id, pending());
+        List<PendingTable.Pending> all = table.drain();
+        assertEquals(100, all.size());
+        assertEquals(0, table.size());
+        assertNull(table.remove(1));
+    }
+
+    @Test
+    void failCompletesTheFutureAndCancelsTheDeadline() {
+        TimingWheel wheel = new TimingWheel("test-wheel", 10, 16);
+        CompletableFuture<Object> f = new CompletableFuture<>();
+        TimingWheel.Timeout t = wheel.schedule(() -> {}, 60_000);
+        new PendingTable.Pending(Opcodes.GET, f, t).fail(new IllegalStateException("link lost"));
+        assertTrue(f.isCompletedExceptionally());
+        assertTrue(t.isCancelled());
+    }
+
+    @Test
+    void concurrentWritersDoNotLoseEntries() throws Exception {
+        PendingTable table = new PendingTable();
+        int threads = 8, perThread = 10_000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger removed = new AtomicInteger();
+        Thread[] ts = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long base = (long) t * perThread + 1;
+            ts[t] = new Thread(() -> {
+                try { start.await(); } catch (InterruptedException e) { return; }
+                for (long id = base; id < base + perThread; id++) table.put(id, pending());
+                for (long id = base; id < base + perThread; id += 2) if (table.remove(id) != null) removed.incrementAndGet();
+            });
+            ts[t].start();
+        }
+        start.countDown();
+        for (Thread t : ts) t.join();
+        assertEquals(threads * perThread / 2, removed.get());
+        assertEquals(threads * perThread / 2, table.size());
+    }
+}
@@ -0,0 +1,97 @@
+package net.rainbowcreation.storage.api.network;
+
+import net.rainbowcreation.storage.api.query.Query;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryEncodingTest {
+    private final SimpleTcpMessenger messenger = new SimpleTcpMessenger("localhost", 0); // never registered
+
+    private byte[] encode(Query q) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        messenger.writeQuery(new DataOutputStream(bytes), q);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void layout() throws IOException {
+        Query q = Query.where().gt("coins", 5).between("ratio", 0.5, 1.5).in("name", "a", "b").eq("vip", true)
+                .startsWith("tag", "x").orderByDesc("coins").orderBy("name").select("name").limit(10).offset(20);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encode(q)));
+
+        assertEquals(5, in.readUnsignedShort());
+        assertEquals("coins", in.readUTF());
+        assertEquals(Query.Op.GT.code, in.readByte());
+        assertEquals(1, in.readUnsignedShort());
+        assertEquals(1, in.readByte());
+        assertEquals(5L, in.readLong());
+
+        assertEquals("ratio", in.readUTF());
+        assertEquals(Query.Op.BETWEEN.code, in.readByte());
+        assertEquals(2, in.readUnsignedShort());
+        assertEquals(2, in.readByte());
+        assertEquals(0.5, in.readDouble());
+        assertEquals(2, in.readByte());
+        assertEquals(1.5, in.readDouble());
+
+        assertEquals("name", in.readUTF());
+        assertEquals(Query.Op.IN.code, in.readByte());
+        assertEquals(2, in.readUnsignedShort());
+        assertEquals(3, in.readByte());
+        assertEquals("a", in.readUTF());
+        assertEquals(3, in.readByte());
+        assertEquals("b", in.readUTF());
+
+        assertEquals("vip", in.readUTF());
+        assertEquals(Query.Op.EQ.code, in.readByte());
+        assertEquals(1, in.readUnsignedShort());
+        assertEquals(4, in.readByte());
+        assertTrue(in.readBoolean());
+
+        assertEquals("tag", in.readUTF());
+        assertEquals(Query.Op.PREFIX.code, in.readByte());
+        assertEquals(1, in.readUnsignedShort());
+        assertEquals(3, in.readByte());
+        assertEquals("x", in.readUTF());
+
+        assertEquals(2, in.readUnsignedByte());
+        assertEquals("coins", in.readUTF());
+        assertTrue(in.readBoolean());
+        assertEquals("name", in.readUTF());
+        assertFalse(in.readBoolean());
+
+        assertEquals(1, in.readUnsignedShort());
+        assertEquals("name", in.readUTF());
+        assertEquals(10, in.readInt());
+        assertEquals(20, in.readInt());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void mostOrderingsStillFitTheCountByte() throws IOException {
+        Query q = Query.where();
+        for (int i = 0; i < 255; i++) q = q.orderBy("f" + i);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encode(q)));
+        assertEquals(0, in.readUnsignedShort());
+        assertEquals(255, in.readUnsignedByte());
+        for (int i = 0; i < 255; i++) {
+            assertEquals("f" + i, in.readUTF());
+            assertFalse(in.readBoolean());
+        }
+    }
+
+    @Test
+    void selectionsThatDoNotFitFail() {
+        String[] many = new String[0x10000];
+        for (int i = 0; i < many.length; i++) many[i] = "f";
+        assertThrows(IOException.class, () -> encode(Query.where().select(many)));
+    }
+}
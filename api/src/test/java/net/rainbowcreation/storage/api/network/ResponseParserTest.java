@@ -0,0 +1,152 @@
+package net.rainbowcreation.storage.api.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseParserTest {
+    private static ByteBuffer bytes(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static NioHttpTransport.ResponseParser parser(boolean headRequest) {
+        NioHttpTransport.ResponseParser p = new NioHttpTransport.ResponseParser();
+        p.reset(headRequest);
+        return p;
+    }
+
+    // Feeds one byte at a time, so every state sees its input split at every possible position
+    private static boolean feedBytewise(NioHttpTransport.ResponseParser p, String s) throws IOException {
+        byte[] all = s.getBytes(StandardCharsets.ISO_8859_1);
+        boolean done = false;
+        for (int i = 0; i < all.length; i++) {
+            assertFalse(done, "complete before the last byte");
+            done = p.feed(ByteBuffer.wrap(all, i, 1));
+        }
+        return done;
+    }
+
+    private static String body(NioHttpTransport.ResponseParser p) {
+        return new String(p.response().body, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void contentLengthBody() throws IOException {
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertTrue(p.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 5\r\nX-Test: a\r\n\r\nhello")));
+        HttpResponse r = p.response();
+        assertEquals(200, r.status);
+        assertEquals("a", r.header("x-test"));
+        assertEquals("hello", body(p));
+        assertTrue(p.keepAlive);
+    }
+
+    @Test
+    void headAndBodySplitAtEveryByte() throws IOException {
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertTrue(feedBytewise(p, "HTTP/1.1 201 Created\r\nContent-Type: text/plain\r\nContent-Length: 3\r\n\r\nabc"));
+        assertEquals(201, p.response().status);
+        assertEquals("text/plain", p.response().header("Content-Type"));
+        assertEquals("abc", body(p));
+    }
+
+    @Test
+    void chunkedBodyWithExtensionsAndTrailers() throws IOException {
+        String response = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "4;name=value\r\nWiki\r\n"
+                + "6\r\npedia \r\n"
+                + "E\r\nin \r\n\r\nchunks.\r\n"
+                + "0\r\nX-Trailer: t\r\n\r\n";
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertTrue(p.feed(bytes(response)));
+        assertEquals("Wikipedia in \r\n\r\nchunks.", body(p));
+
+        NioHttpTransport.ResponseParser split = parser(false);
+        assertTrue(feedBytewise(split, response));
+        assertEquals("Wikipedia in \r\n\r\nchunks.", body(split));
+    }
+
+    @Test
+    void badChunkSizeIsAnIOException() {
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertThrows(IOException.class, () -> p.feed(bytes("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n")));
+    }
+
+    @Test
+    void keepAliveDependsOnVersionAndConnectionHeader() throws IOException {
+        NioHttpTransport.ResponseParser p = parser(false);
+        p.feed(bytes("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(p.keepAlive);
+
+        p.reset(false);
+        p.feed(bytes("HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(p.keepAlive);
+
+        p.reset(false);
+        p.feed(bytes("HTTP/1.0 200 OK\r\nConnection: Keep-Alive\r\nContent-Length: 0\r\n\r\n"));
+        assertTrue(p.keepAlive);
+    }
+
+    @Test
+    void keepAliveConnectionReadsBackToBackResponses() throws IOException {
+        ByteBuffer in = bytes("HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\none"
+                + "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\ntwo\r\n0\r\n\r\n");
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertTrue(p.feed(in));
+        assertEquals("one", body(p));
+        assertTrue(in.hasRemaining()); // the next response is left for the next exchange
+
+        p.reset(false);
+        assertTrue(p.nothingReceived());
+        assertTrue(p.feed(in));
+        assertEquals("two", body(p));
+        assertTrue(p.keepAlive);
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    void bodyWithoutLengthRunsUntilClose() throws IOException {
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertFalse(p.feed(bytes("HTTP/1.1 200 OK\r\n\r\npartial ")));
+        assertFalse(p.feed(bytes("body")));
+        assertFalse(p.keepAlive);
+        assertTrue(p.endOfStream());
+        assertEquals("partial body", body(p));
+    }
+
+    @Test
+    void truncatedBodyIsNotComplete() throws IOException {
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertFalse(p.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nshort")));
+        assertFalse(p.endOfStream());
+    }
+
+    @Test
+    void headResponseAndNoContentHaveNoBody() throws IOException {
+        NioHttpTransport.ResponseParser p = parser(true);
+        assertTrue(p.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 42\r\n\r\n")));
+        assertEquals(0, p.response().body.length);
+
+        p.reset(false);
+        assertTrue(p.feed(bytes("HTTP/1.1 204 No Content\r\n\r\n")));
+        assertEquals(204, p.response().status);
+    }
+
+    @Test
+    void interimResponseIsSkipped() throws IOException {
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertTrue(p.feed(bytes("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok")));
+        assertEquals(200, p.response().status);
+        assertEquals("ok", body(p));
+    }
+
+    @Test
+    void badStatusLineIsRejected() {
+        NioHttpTransport.ResponseParser p = parser(false);
+        assertThrows(IOException.class, () -> p.feed(bytes("garbage\r\n\r\n")));
+    }
+}
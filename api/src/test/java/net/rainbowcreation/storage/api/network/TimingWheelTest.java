@@ -0,0 +1,75 @@
+package net.rainbowcreation.storage.api.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+    @Test
+    void firesAfterTheDelayNotBefore() throws Exception {
+        TimingWheel wheel = new TimingWheel("test-wheel", 10, 64);
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong at = new AtomicLong();
+        long start = System.nanoTime();
+        wheel.schedule(() -> { at.set(System.nanoTime()); fired.countDown(); }, 100);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(at.get() - start) >= 100);
+    }
+
+    @Test
+    void cancelledTimeoutNeverRuns() throws Exception {
+        TimingWheel wheel = new TimingWheel("test-wheel", 10, 64);
+        AtomicBoolean ran = new AtomicBoolean();
+        TimingWheel.Timeout t = wheel.schedule(() -> ran.set(true), 50);
+        t.cancel();
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(later::countDown, 150);
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void delaysLongerThanOneRotationWaitTheirRounds() throws Exception {
+        TimingWheel wheel = new TimingWheel("test-wheel", 10, 4); // one rotation = 40 ms
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong at = new AtomicLong();
+        long start = System.nanoTime();
+        wheel.schedule(() -> { at.set(System.nanoTime()); fired.countDown(); }, 250);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(at.get() - start) >= 250);
+    }
+
+    @Test
+    void tasksFireInDeadlineOrder() throws Exception {
+        TimingWheel wheel = new TimingWheel("test-wheel", 10, 8);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(3);
+        wheel.schedule(() -> { order.add(3); done.countDown(); }, 300);
+        wheel.schedule(() -> { order.add(1); done.countDown(); }, 20);
+        wheel.schedule(() -> { order.add(2); done.countDown(); }, 150);
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(java.util.Arrays.asList(1, 2, 3), order);
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() throws Exception {
+        TimingWheel wheel = new TimingWheel("test-wheel", 10, 16);
+        wheel.schedule(() -> { throw new IllegalStateException("boom"); }, 10);
+        CountDownLatch fired = new CountDownLatch(1);
+        wheel.schedule(fired::countDown, 60);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void bucketCountMustBeAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel("test-wheel", 10, 100));
+    }
+}
@@ -0,0 +1,191 @@
+package net.rainbowcreation.storage.api.query;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // In-memory backend: runs a query the way the remote does, returning _key when ordered by it
+    private static final class Backend implements Function<Query, CompletableFuture<List<JsonNode>>> {
+        final List<ObjectNode> rows = new ArrayList<>();
+        final List<Query> ran = new ArrayList<>();
+        int read;
+
+        ObjectNode add(String key) {
+            ObjectNode row = MAPPER.createObjectNode();
+            row.put(Query.KEY, key);
+            rows.add(row);
+            return row;
+        }
+
+        @Override
+        public CompletableFuture<List<JsonNode>> apply(Query q) {
+            ran.add(q);
+            List<JsonNode> hits = new ArrayList<>();
+            for (ObjectNode row : rows) if (q.test(row)) hits.add(row);
+            hits.sort(q.ordering());
+            boolean byKey = false;
+            for (Query.Order o : q.orders()) byKey |= o.field.equals(Query.KEY);
+            List<JsonNode> out = new ArrayList<>();
+            for (int i = q.offset(); i < hits.size() && (q.limit() < 0 || out.size() < q.limit()); i++) {
+                ObjectNode row = (ObjectNode) hits.get(i);
+                ObjectNode o = q.fields().isEmpty() ? row.deepCopy() : row.deepCopy().retain(q.fields());
+                if (byKey) o.set(Query.KEY, row.get(Query.KEY));
+                else o.remove(Query.KEY);
+                out.add(o);
+            }
+            read += out.size();
+            return CompletableFuture.completedFuture(out);
+        }
+
+        List<JsonNode> all(Query q) {
+            return apply(q.orderBy(Query.KEY).limit(-1).offset(0)).join();
+        }
+
+        List<JsonNode> walk(Query q) {
+            List<JsonNode> out = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                Page<JsonNode> page = Keyset.of(q.after(cursor)).page(this).join();
+                out.addAll(page.items());
+                cursor = page.next();
+                assertTrue(++pages < 1000, "cursor loops");
+            } while (cursor != null);
+            return out;
+        }
+    }
+
+    private static List<String> keys(List<JsonNode> rows) {
+        List<String> keys = new ArrayList<>();
+        for (JsonNode row : rows) keys.add(row.path(Query.KEY).asText());
+        return keys;
+    }
+
+    @Test
+    void allRowsTiedArePagedByKeyWithoutRereadingTies() {
+        Backend b = new Backend();
+        for (int i = 0; i < 100; i++) b.add(String.format("k%03d", (i * 37) % 100)).put("level", 1);
+        Query q = Query.where().orderBy("level").orderBy(Query.KEY).limit(7);
+        List<String> expected = keys(b.all(q));
+
+        b.ran.clear();
+        b.read = 0;
+        assertEquals(expected, keys(b.walk(q)));
+        assertEquals(100, b.read); // every row read once, however long the run of ties
+        for (Query r : b.ran) {
+            assertEquals(0, r.offset());
+            assertTrue(r.limit() <= 7);
+        }
+    }
+
+    @Test
+    void tieRunsCrossingPageBoundariesMatchTheFullOrder() {
+        Backend b = new Backend();
+        for (int i = 0; i < 40; i++) {
+            ObjectNode row = b.add("u" + i);
+            row.put("a", i % 3);
+            if (i % 5 != 0) row.put("s", "n" + (i % 4)); else row.putNull("s");
+            row.put("vip", i % 2 == 0);
+        }
+        Query[] queries = {
+                Query.where().orderBy("a"),
+                Query.where().orderByDesc("a"),
+                Query.where().orderBy("a").orderByDesc("s"),
+                Query.where().orderByDesc("s").orderBy("a"),
+                Query.where().orderBy("s"),
+                Query.where().orderBy("vip").orderByDesc("a"),
+                Query.where().orderByDesc("vip"),
+                Query.where().gt("a", 0).orderByDesc(Query.KEY),
+        };
+        for (Query q : queries) {
+            List<String> expected = keys(b.all(q));
+            for (int size = 1; size <= 9; size++) {
+                List<JsonNode> paged = b.walk(q.orderBy(Query.KEY).limit(size));
+                assertEquals(expected, keys(paged), q + " by " + size);
+            }
+        }
+    }
+
+    @Test
+    void firstPageOffsetIsHonoured() {
+        Backend b = new Backend();
+        for (int i = 0; i < 10; i++) b.add("k" + i).put("v", i / 4);
+        Query q = Query.where().orderBy("v").orderBy(Query.KEY);
+        assertEquals(keys(b.all(q)).subList(3, 10), keys(b.walk(q.offset(3).limit(2))));
+    }
+
+    @Test
+    void addedKeyAndSortFieldsAreStripped() {
+        Backend b = new Backend();
+        for (int i = 0; i < 5; i++) {
+            ObjectNode row = b.add("k" + i);
+            row.put("v", 1);
+            row.put("name", "n" + i);
+        }
+        Page<JsonNode> page = Keyset.of(Query.where().orderBy("v").select("name").limit(2)).page(b).join();
+        assertEquals(2, page.items().size());
+        assertEquals(1, page.items().get(0).size());
+        assertTrue(page.items().get(0).has("name"));
+        assertTrue(page.hasNext());
+
+        Page<JsonNode> more = Keyset.of(Query.where().orderBy("v").select("name").limit(2).after(page.next())).page(b).join();
+        assertEquals("n2", more.items().get(0).path("name").asText());
+
+        Page<JsonNode> keyed = Keyset.of(Query.where().orderBy(Query.KEY).limit(2)).page(b).join();
+        assertEquals("k0", keyed.items().get(0).path(Query.KEY).asText());
+    }
+
+    @Test
+    void lastPageHasNoCursor() {
+        Backend b = new Backend();
+        for (int i = 0; i < 4; i++) b.add("k" + i).put("v", i);
+        Page<JsonNode> page = Keyset.of(Query.where().orderBy("v").limit(5)).page(b).join();
+        assertEquals(4, page.items().size());
+        assertFalse(page.hasNext());
+        assertFalse(Keyset.of(Query.where().orderBy("v").limit(-1)).page(b).join().hasNext());
+    }
+
+    @Test
+    void rowsWithoutKeysCannotBePaged() {
+        Function<Query, CompletableFuture<List<JsonNode>>> keyless = q -> {
+            List<JsonNode> rows = new ArrayList<>();
+            for (int i = 0; i < q.limit(); i++) rows.add(MAPPER.createObjectNode().put("v", 1));
+            return CompletableFuture.completedFuture(rows);
+        };
+        CompletableFuture<Page<JsonNode>> page = Keyset.of(Query.where().orderBy("v").limit(2)).page(keyless);
+        Exception e = assertThrows(Exception.class, page::join);
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    @Test
+    void cursorIsBoundToItsQuery() {
+        Backend b = new Backend();
+        for (int i = 0; i < 5; i++) b.add("k" + i).put("v", i);
+        Query q = Query.where().gt("v", 0).orderBy("v").limit(2);
+        String next = Keyset.of(q).page(b).join().next();
+        assertNotNull(next);
+
+        Keyset.of(q.limit(3).after(next)); // page size may change
+        assertThrows(IllegalArgumentException.class, () -> Keyset.of(Query.where().gt("v", 1).orderBy("v").after(next)));
+        assertThrows(IllegalArgumentException.class, () -> Keyset.of(Query.where().gt("v", 0.0).orderBy("v").after(next)));
+        assertThrows(IllegalArgumentException.class, () -> Keyset.of(Query.where().gt("v", 0).orderByDesc("v").after(next)));
+        assertThrows(IllegalArgumentException.class, () -> Keyset.of(q.select("v").after(next)));
+        assertThrows(IllegalArgumentException.class, () -> Keyset.of(q.after("x")));
+        assertThrows(IllegalArgumentException.class, () -> Keyset.of(Query.where().limit(2)));
+
+        String forged = Base64.getUrlEncoder().encodeToString("{\"o\":0}".getBytes()); // no fingerprint
+        assertThrows(IllegalArgumentException.class, () -> Keyset.of(q.after(forged)));
+    }
+}
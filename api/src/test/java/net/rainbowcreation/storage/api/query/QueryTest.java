@@ -0,0 +1,139 @@
+package net.rainbowcreation.storage.api.query;
+
+import net.rainbowcreation.storage.api.annotations.EnableQuery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static JsonNode json(String s) throws IOException {
+        return MAPPER.readTree(s.replace('\'', '"'));
+    }
+
+    enum Rank { GOLD }
+
+    @Test
+    void comparisons() throws IOException {
+        JsonNode row = json("{'n':10,'d':2.5,'s':'bob','b':true}");
+        assertTrue(Query.where().eq("n", 10).test(row));
+        assertTrue(Query.where().eq("n", 10.0).test(row));
+        assertFalse(Query.where().ne("n", 10).test(row));
+        assertTrue(Query.where().lt("d", 3).le("n", 10).gt("n", 9).ge("s", "bob").test(row));
+        assertFalse(Query.where().gt("n", 10).test(row));
+        assertTrue(Query.where().eq("b", true).eq("s", "bob").test(row));
+        assertFalse(Query.where().eq("n", "10").test(row)); // another kind never matches
+    }
+
+    @Test
+    void betweenIsInclusive() throws IOException {
+        Query q = Query.where().between("n", 1, 3);
+        assertTrue(q.test(json("{'n':1}")));
+        assertTrue(q.test(json("{'n':3}")));
+        assertFalse(q.test(json("{'n':4}")));
+        assertFalse(q.test(json("{'n':0.5}")));
+    }
+
+    @Test
+    void inAndPrefix() throws IOException {
+        Query in = Query.where().in("s", "a", "c");
+        assertTrue(in.test(json("{'s':'c'}")));
+        assertFalse(in.test(json("{'s':'b'}")));
+        Query prefix = Query.where().startsWith("s", "ab");
+        assertTrue(prefix.test(json("{'s':'abc'}")));
+        assertFalse(prefix.test(json("{'s':'ba'}")));
+        assertFalse(prefix.test(json("{'s':12}")));
+        assertThrows(IllegalArgumentException.class, () -> Query.where().in("s", new ArrayList<>()));
+    }
+
+    @Test
+    void nullsNeverMatch() throws IOException {
+        assertFalse(Query.where().ne("n", 1).test(json("{'n':null}")));
+        assertFalse(Query.where().ne("n", 1).test(json("{}")));
+        assertFalse(Query.where().ne("n", 1).test(null));
+        assertTrue(Query.where().test(json("{}")));
+        assertThrows(IllegalArgumentException.class, () -> Query.where().eq("n", null));
+    }
+
+    @Test
+    void valuesAreNormalized() {
+        assertEquals(Query.where().eq("n", 5L), Query.where().eq("n", (byte) 5));
+        assertEquals(Arrays.asList(5L), Query.where().eq("n", 5).conditions().get(0).values);
+        assertEquals(Arrays.asList(1.5), Query.where().eq("n", 1.5f).conditions().get(0).values);
+        assertEquals(Arrays.asList("x"), Query.where().eq("n", 'x').conditions().get(0).values);
+        assertEquals(Arrays.asList("GOLD"), Query.where().eq("n", Rank.GOLD).conditions().get(0).values);
+        assertThrows(IllegalArgumentException.class, () -> Query.where().eq("n", new Object()));
+    }
+
+    @Test
+    void orderingPutsNullsFirstAscending() throws IOException {
+        List<JsonNode> rows = new ArrayList<>();
+        for (String s : new String[] {"{'a':2,'b':'x'}", "{'a':null}", "{'a':1,'b':'y'}", "{'a':2,'b':'a'}", "{}"}) rows.add(json(s));
+        rows.sort(Query.where().orderBy("a").orderByDesc("b").ordering());
+        assertTrue(rows.get(0).path("a").isMissingNode() || rows.get(0).path("a").isNull());
+        assertTrue(rows.get(1).path("a").isMissingNode() || rows.get(1).path("a").isNull());
+        assertEquals(json("{'a':1,'b':'y'}"), rows.get(2));
+        assertEquals(json("{'a':2,'b':'x'}"), rows.get(3));
+        assertEquals(json("{'a':2,'b':'a'}"), rows.get(4));
+    }
+
+    @Test
+    void orderingsAreCapped() {
+        Query q = Query.where();
+        for (int i = 0; i < 255; i++) q = q.orderBy("f" + i);
+        Query full = q;
+        assertThrows(IllegalArgumentException.class, () -> full.orderBy("one more"));
+    }
+
+    @Test
+    void plainEquality() {
+        assertTrue(Query.where().eq("a", 1).eq("b", "x").isPlainEquality());
+        assertFalse(Query.where().eq("a", 1).eq("a", 2).isPlainEquality());
+        assertFalse(Query.where().eq("a", 1.5).isPlainEquality());
+        assertFalse(Query.where().gt("a", 1).isPlainEquality());
+        assertFalse(Query.where().eq("a", 1).orderBy("a").isPlainEquality());
+        assertEquals("{a=1, b=x}", Query.where().eq("a", 1).gt("c", 2).eq("d", 0.5).eq("b", "x").equalityFilters().toString());
+    }
+
+    @Test
+    void rowKeyIsNotAMapFilter() {
+        assertFalse(Query.where().eq(Query.KEY, "k1").isPlainEquality());
+        assertFalse(Query.where().eq("a", 1).eq(Query.KEY, "k1").isPlainEquality());
+        assertEquals("{a=1}", Query.where().eq(Query.KEY, "k1").eq("a", 1).equalityFilters().toString());
+        assertTrue(Query.where().eq(Query.KEY, "k1").uses(Query.KEY));
+    }
+
+    @Test
+    void projection() throws IOException {
+        JsonNode row = json("{'a':1,'b':2,'c':3}");
+        assertSame(row, Query.where().project(row));
+        assertEquals(json("{'a':1,'c':3}"), Query.where().select("a", "c").project(row));
+        assertEquals(json("{'a':1,'b':2,'c':3}"), row);
+    }
+
+    static class Model {
+        @EnableQuery public long coins;
+        @EnableQuery public String name;
+        @EnableQuery public boolean vip;
+        public String notIndexed;
+    }
+
+    @Test
+    void validateChecksFieldsAndKinds() {
+        Query.where().gt("coins", 5).startsWith("name", "a").eq("vip", true).orderBy("coins").validate(Model.class);
+        assertThrows(IllegalArgumentException.class, () -> Query.where().eq("notIndexed", "x").validate(Model.class));
+        assertThrows(IllegalArgumentException.class, () -> Query.where().orderBy("notIndexed").validate(Model.class));
+        assertThrows(IllegalArgumentException.class, () -> Query.where().eq("coins", "5").validate(Model.class));
+        assertThrows(IllegalArgumentException.class, () -> Query.where().startsWith("coins", "5").validate(Model.class));
+        assertThrows(IllegalArgumentException.class, () -> Query.where().gt("vip", false).validate(Model.class));
+    }
+}
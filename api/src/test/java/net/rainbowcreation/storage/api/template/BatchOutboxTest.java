@@ -0,0 +1,141 @@
+package net.rainbowcreation.storage.api.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchOutboxTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @TempDir
+    File dir;
+
+    private final Map<String, String> store = new ConcurrentHashMap<>();
+    private final AtomicBoolean up = new AtomicBoolean();
+    private HttpServer server;
+    private File outbox;
+    private Manager dm;
+
+    private static final class Manager extends ADataManager {
+        Manager(String url, File outbox) {
+            apiBaseUrl = url;
+            outboxFile = outbox.getPath();
+            outboxRetryMs = 20;
+        }
+    }
+
+    // REST master whose single-key writes fail with 503 while it is down; batch writes always go through
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", ex -> {
+            String path = ex.getRequestURI().getPath();
+            String key = path.substring(path.lastIndexOf('/') + 1);
+            String body = new String(readAll(ex.getRequestBody()), StandardCharsets.UTF_8);
+            int status = 200;
+            if (key.equals("_mset")) {
+                JsonNode values = MAPPER.readTree(body);
+                for (Iterator<Map.Entry<String, JsonNode>> it = values.fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> e = it.next();
+                    store.put(e.getKey(), e.getValue().toString());
+                }
+            } else if (key.equals("_mdel")) {
+                for (JsonNode k : MAPPER.readTree(body)) store.remove(k.asText());
+            } else if (key.startsWith("_") || ex.getRequestMethod().equals("GET")) {
+                status = 404;
+            } else if (!up.get()) {
+                status = 503;
+            } else if (ex.getRequestMethod().equals("DELETE")) {
+                store.remove(key);
+            } else {
+                store.put(key, body);
+            }
+            ex.sendResponseHeaders(status, -1);
+            ex.close();
+        });
+        server.start();
+        outbox = new File(dir, "outbox.log");
+        dm = new Manager("http://127.0.0.1:" + server.getAddress().getPort(), outbox);
+        dm.initialize();
+    }
+
+    @AfterEach
+    void stop() {
+        dm.shutdown();
+        server.stop(0);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+
+    private void awaitDrained() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (outbox.length() > 0) {
+            if (System.currentTimeMillis() > deadline) fail("Outbox not drained");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void batchSetQueuesBehindTheBacklog() throws Exception {
+        dm.setAsync("ns", "a", "old").get(5, TimeUnit.SECONDS);
+        assertTrue(outbox.length() > 0);
+
+        Map<String, Object> batch = new LinkedHashMap<>();
+        batch.put("a", "new");
+        batch.put("b", "x");
+        dm.setManyAsync("ns", batch).get(5, TimeUnit.SECONDS);
+        assertFalse(store.containsKey("a")); // logged, not sent ahead of the older write
+
+        up.set(true);
+        awaitDrained();
+        assertEquals("\"new\"", store.get("a"));
+        assertEquals("\"x\"", store.get("b"));
+    }
+
+    @Test
+    void batchDeleteQueuesBehindTheBacklog() throws Exception {
+        dm.setAsync("ns", "c", "v").get(5, TimeUnit.SECONDS);
+        dm.deleteManyAsync("ns", Arrays.asList("c", "d")).get(5, TimeUnit.SECONDS);
+
+        up.set(true);
+        awaitDrained();
+        assertFalse(store.containsKey("c"));
+    }
+
+    @Test
+    void batchFailingOnTheLinkIsLogged() throws Exception {
+        Map<String, Object> batch = new LinkedHashMap<>();
+        batch.put("e", 1);
+        dm.setManyAsync("ns", batch).get(5, TimeUnit.SECONDS);
+        assertTrue(outbox.length() > 0);
+
+        up.set(true);
+        awaitDrained();
+        assertEquals("1", store.get("e"));
+    }
+}
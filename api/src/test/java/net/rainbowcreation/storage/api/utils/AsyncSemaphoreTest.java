@@ -0,0 +1,172 @@
+package net.rainbowcreation.storage.api.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncSemaphoreTest {
+    private final ExecutorService handOff = Executors.newSingleThreadExecutor(r -> new Thread(r, "hand-off"));
+
+    @AfterEach
+    void shutdown() {
+        handOff.shutdownNow();
+    }
+
+    private static void eventually(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > end) fail("condition not reached");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void limitsInFlightAndQueuesTheRest() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(2, handOff);
+        List<CompletableFuture<Integer>> tasks = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<Integer> task = new CompletableFuture<>();
+            tasks.add(task);
+            results.add(s.run(() -> task));
+        }
+        assertEquals(2, s.inFlight());
+        assertEquals(3, s.waiting());
+        for (int i = 0; i < 5; i++) {
+            int n = i;
+            eventually(() -> s.waiting() == Math.max(0, 3 - n));
+            tasks.get(i).complete(i);
+        }
+        for (int i = 0; i < 5; i++) assertEquals(i, results.get(i).get(2, TimeUnit.SECONDS));
+        eventually(() -> s.inFlight() == 0);
+    }
+
+    @Test
+    void waitersStartOnTheHandOffExecutorNotTheCompletingThread() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(1, handOff);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        s.run(() -> first);
+        AtomicReference<String> startedOn = new AtomicReference<>();
+        CompletableFuture<Void> second = s.run(() -> {
+            startedOn.set(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(null);
+        });
+        first.complete(null); // completed here, on the test thread
+        second.get(2, TimeUnit.SECONDS);
+        assertEquals("hand-off", startedOn.get());
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueueWithoutTakingAPermit() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(1, handOff);
+        CompletableFuture<Void> holder = new CompletableFuture<>();
+        s.run(() -> holder);
+        AtomicInteger started = new AtomicInteger();
+        CompletableFuture<Void> cancelled = s.run(() -> {
+            started.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+        assertEquals(1, s.waiting());
+        cancelled.cancel(false);
+        assertEquals(0, s.waiting());
+        assertEquals(1, s.inFlight());
+
+        holder.complete(null);
+        eventually(() -> s.inFlight() == 0);
+        assertEquals(0, started.get());
+        assertEquals("ok", s.run(() -> CompletableFuture.completedFuture("ok")).get(2, TimeUnit.SECONDS));
+        eventually(() -> s.inFlight() == 0);
+    }
+
+    @Test
+    void waiterTimesOutAndReturnsNothing() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(1, handOff);
+        s.setWaitTimeout(50);
+        CompletableFuture<Void> holder = new CompletableFuture<>();
+        s.run(() -> holder);
+        CompletableFuture<Void> late = s.run(() -> CompletableFuture.completedFuture(null));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(2, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+        assertEquals(0, s.waiting());
+        assertEquals(1, s.inFlight());
+        holder.complete(null);
+        eventually(() -> s.inFlight() == 0);
+    }
+
+    @Test
+    void permitsBalanceUnderMixedCancellationsAndTimeouts() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(4, handOff);
+        s.setWaitTimeout(30);
+        List<CompletableFuture<Integer>> holders = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            CompletableFuture<Integer> task = new CompletableFuture<>();
+            holders.add(task);
+            CompletableFuture<Integer> r = s.run(() -> task);
+            if (i % 3 == 0) r.cancel(false);
+            results.add(r);
+        }
+        Thread.sleep(60); // let the rest time out
+        for (CompletableFuture<Integer> h : holders) h.complete(1);
+        for (CompletableFuture<Integer> r : results) {
+            try { r.get(2, TimeUnit.SECONDS); } catch (Exception ignored) {}
+        }
+        eventually(() -> s.inFlight() == 0 && s.waiting() == 0);
+        assertEquals(Integer.valueOf(7), s.run(() -> CompletableFuture.completedFuture(7)).get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void fullQueueRejects() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(1, handOff);
+        s.setMaxWaiting(2);
+        s.run(CompletableFuture::new);
+        s.run(CompletableFuture::new);
+        s.run(CompletableFuture::new);
+        CompletableFuture<Object> rejected = s.run(CompletableFuture::new);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertEquals(2, s.waiting());
+    }
+
+    @Test
+    void throwingTaskReleasesItsPermit() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(1, handOff);
+        CompletableFuture<Object> f = s.run(() -> { throw new IllegalStateException("boom"); });
+        assertTrue(f.isCompletedExceptionally());
+        assertEquals(0, s.inFlight());
+    }
+
+    @Test
+    void growingCapacityGrantsWaiters() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(1, handOff);
+        s.run(CompletableFuture::new);
+        CompletableFuture<String> waiting = s.run(() -> CompletableFuture.completedFuture("granted"));
+        assertEquals(1, s.waiting());
+        s.setCapacity(2);
+        assertEquals("granted", waiting.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void rejectedHandOffFailsTheWaiterAndFreesThePermit() throws Exception {
+        AsyncSemaphore s = new AsyncSemaphore(1, r -> { throw new RejectedExecutionException("shut down"); });
+        CompletableFuture<Void> holder = new CompletableFuture<>();
+        s.run(() -> holder);
+        CompletableFuture<Void> waiter = s.run(() -> CompletableFuture.completedFuture(null));
+        holder.complete(null);
+        assertTrue(waiter.isCompletedExceptionally());
+        assertEquals(0, s.inFlight());
+    }
+}
@@ -0,0 +1,99 @@
+package net.rainbowcreation.storage.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionTest {
+    private static byte[] repetitive(int n) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < n) sb.append("{\"name\":\"player\",\"balance\":1000},");
+        return sb.substring(0, n).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void deflateThenInflateRoundTrips() throws IOException {
+        byte[] raw = repetitive(10_000);
+        byte[] packed = Compression.deflate(raw);
+        assertNotNull(packed);
+        assertTrue(packed.length < raw.length);
+        assertArrayEquals(raw, Compression.inflate(packed, raw.length));
+    }
+
+    @Test
+    void incompressibleValueIsLeftAlone() {
+        byte[] raw = new byte[4096];
+        new Random(1).nextBytes(raw);
+        assertNull(Compression.deflate(raw));
+    }
+
+    @Test
+    void lengthFromTheWireIsCheckedBeforeAllocating() {
+        byte[] packed = Compression.deflate(repetitive(10_000));
+        assertThrows(IOException.class, () -> Compression.inflate(packed, -1));
+        assertThrows(IOException.class, () -> Compression.inflate(packed, Integer.MAX_VALUE));
+        assertThrows(IOException.class, () -> Compression.inflate(new byte[4], Compression.MAX_RAW_LENGTH)); // beyond any deflate ratio
+    }
+
+    @Test
+    void wrongLengthOrCorruptDataFails() {
+        byte[] raw = repetitive(10_000);
+        byte[] packed = Compression.deflate(raw);
+        assertThrows(IOException.class, () -> Compression.inflate(packed, raw.length + 1));
+        byte[] corrupt = packed.clone();
+        Arrays.fill(corrupt, 0, 8, (byte) 0xFF);
+        assertThrows(IOException.class, () -> Compression.inflate(corrupt, raw.length));
+        assertThrows(IOException.class, () -> Compression.inflate(Arrays.copyOf(packed, packed.length / 2), raw.length));
+    }
+
+    @Test
+    void pooledInstancesAreResetBetweenUses() throws IOException {
+        byte[] packed = Compression.deflate(repetitive(10_000));
+        assertThrows(IOException.class, () -> Compression.inflate(Arrays.copyOf(packed, 10), 10_000)); // leaves a half-used inflater
+        byte[] raw = repetitive(5_000);
+        assertArrayEquals(raw, Compression.inflate(Compression.deflate(raw), raw.length));
+    }
+
+    @Test
+    void concurrentCallersGetIndependentInstances() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 64; t++) {
+                int size = 2_000 + t * 100;
+                results.add(pool.submit(() -> {
+                    byte[] raw = repetitive(size);
+                    for (int i = 0; i < 50; i++) if (!Arrays.equals(raw, Compression.inflate(Compression.deflate(raw), raw.length))) return false;
+                    return true;
+                }));
+            }
+            for (Future<Boolean> r : results) assertTrue(r.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void gzipRoundTrips() throws IOException {
+        byte[] raw = repetitive(3_000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = Compression.gunzip(new ByteArrayInputStream(Compression.gzip(raw)))) {
+            byte[] buf = new byte[512];
+            for (int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+        }
+        assertArrayEquals(raw, out.toByteArray());
+    }
+}
@@ -0,0 +1,106 @@
+package net.rainbowcreation.storage.api.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonMergePatchTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static JsonNode json(String s) throws IOException {
+        return MAPPER.readTree(s.replace('\'', '"'));
+    }
+
+    @Test
+    void rfc7396Examples() throws IOException {
+        String[][] cases = {
+                {"{'a':'b'}", "{'a':'c'}", "{'a':'c'}"},
+                {"{'a':'b'}", "{'b':'c'}", "{'a':'b','b':'c'}"},
+                {"{'a':'b'}", "{'a':null}", "{}"},
+                {"{'a':'b','b':'c'}", "{'a':null}", "{'b':'c'}"},
+                {"{'a':['b']}", "{'a':'c'}", "{'a':'c'}"},
+                {"{'a':'c'}", "{'a':['b']}", "{'a':['b']}"},
+                {"{'a':{'b':'c'}}", "{'a':{'b':'d','c':null}}", "{'a':{'b':'d'}}"},
+                {"{'a':[{'b':'c'}]}", "{'a':[1]}", "{'a':[1]}"},
+                {"['a','b']", "['c','d']", "['c','d']"},
+                {"{'a':'b'}", "['c']", "['c']"},
+                {"{'e':null}", "{'a':1}", "{'e':null,'a':1}"},
+                {"[1,2]", "{'a':'b','c':null}", "{'a':'b'}"},
+                {"{}", "{'a':{'bb':{'ccc':null}}}", "{'a':{'bb':{}}}"},
+        };
+        for (String[] c : cases) {
+            assertEquals(json(c[2]), JsonMergePatch.apply(json(c[0]), json(c[1])), c[0] + " + " + c[1]);
+        }
+    }
+
+    @Test
+    void applyLeavesItsArgumentsAlone() throws IOException {
+        JsonNode target = json("{'a':{'b':1}}");
+        JsonNode patch = json("{'a':{'c':2}}");
+        JsonMergePatch.apply(target, patch);
+        assertEquals(json("{'a':{'b':1}}"), target);
+        assertEquals(json("{'a':{'c':2}}"), patch);
+    }
+
+    @Test
+    void applyToAbsentTarget() throws IOException {
+        assertEquals(json("{'a':1}"), JsonMergePatch.apply(null, json("{'a':1,'b':null}")));
+        assertNull(JsonMergePatch.apply(json("{'a':1}"), null));
+    }
+
+    @Test
+    void diffIsTheSmallestPatch() throws IOException {
+        JsonNode from = json("{'name':'a','coins':1,'tags':['x'],'home':{'x':1,'y':2},'gone':true}");
+        JsonNode to = json("{'name':'a','coins':2,'tags':['x','y'],'home':{'x':1,'y':3}}");
+        assertEquals(json("{'coins':2,'tags':['x','y'],'home':{'y':3},'gone':null}"), JsonMergePatch.diff(from, to));
+    }
+
+    @Test
+    void diffOfEqualTreesIsEmpty() throws IOException {
+        ObjectNode patch = JsonMergePatch.diff(json("{'a':1,'b':{'c':[1,2]}}"), json("{'b':{'c':[1,2]},'a':1}"));
+        assertNotNull(patch);
+        assertEquals(0, patch.size());
+    }
+
+    @Test
+    void explicitNullsReadTheSameAsAbsent() throws IOException {
+        assertEquals(0, JsonMergePatch.diff(json("{'a':null}"), json("{}")).size());
+        assertEquals(0, JsonMergePatch.diff(json("{}"), json("{'a':null}")).size());
+        assertEquals(0, JsonMergePatch.diff(json("{'o':{'a':1}}"), json("{'o':{'a':1,'b':null}}")).size());
+    }
+
+    @Test
+    void diffNeedsObjectsOnBothSides() throws IOException {
+        assertNull(JsonMergePatch.diff(null, json("{}")));
+        assertNull(JsonMergePatch.diff(json("[1]"), json("{}")));
+        assertNull(JsonMergePatch.diff(json("{}"), json("5")));
+    }
+
+    @Test
+    void applyingTheDiffReproducesTheTarget() throws IOException {
+        JsonNode from = json("{'a':1,'b':{'c':{'d':[1]},'e':'x'},'f':'gone'}");
+        JsonNode to = json("{'a':1,'b':{'c':{'d':[2],'n':0}},'g':{'h':true}}");
+        assertEquals(to, JsonMergePatch.apply(from, JsonMergePatch.diff(from, to)));
+    }
+
+    @Test
+    void toTreeOfMapsPojosAndTrees() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", 1);
+        assertEquals(json("{'a':1}"), JsonMergePatch.toTree(map));
+        JsonNode tree = json("{'b':2}");
+        assertSame(tree, JsonMergePatch.toTree(tree));
+        assertEquals(json("{'x':3}"), JsonMergePatch.toTree(new Point()));
+    }
+
+    static final class Point {
+        public int x = 3;
+    }
+}
@@ -0,0 +1,104 @@
+package net.rainbowcreation.storage.api.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonScalarsTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static byte[] b(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void parsesLongs() {
+        assertEquals(0, JsonScalars.parseLong(b("0")));
+        assertEquals(42, JsonScalars.parseLong(b(" 42\n")));
+        assertEquals(-17, JsonScalars.parseLong(b("-17")));
+        assertEquals(Long.MAX_VALUE, JsonScalars.parseLong(b("9223372036854775807")));
+        assertEquals(Long.MIN_VALUE, JsonScalars.parseLong(b("-9223372036854775808")));
+    }
+
+    @Test
+    void longOverflowThrows() {
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseLong(b("9223372036854775808")));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseLong(b("-9223372036854775809")));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseLong(b("99999999999999999999")));
+    }
+
+    @Test
+    void longWrittenAsDoubleStillReads() {
+        assertEquals(5, JsonScalars.parseLong(b("5.0")));
+        assertEquals(1000, JsonScalars.parseLong(b("1e3")));
+    }
+
+    @Test
+    void nonNumbersThrow() {
+        for (String s : new String[] {"", "  ", "-", "\"5\"", "true", "null", "{}", "[1]", "12a", "0x10", "1f", "Infinity", "NaN"}) {
+            assertThrows(NumberFormatException.class, () -> JsonScalars.parseLong(b(s)), s);
+            assertThrows(NumberFormatException.class, () -> JsonScalars.parseDouble(b(s)), s);
+        }
+    }
+
+    @Test
+    void taggedBinaryValueDoesNotParse() {
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseLong(new byte[] {0, '1'}));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseBoolean(new byte[] {0, 't', 'r', 'u', 'e'}));
+    }
+
+    @Test
+    void parsesInts() {
+        assertEquals(Integer.MAX_VALUE, JsonScalars.parseInt(b("2147483647")));
+        assertEquals(Integer.MIN_VALUE, JsonScalars.parseInt(b("-2147483648")));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseInt(b("2147483648")));
+    }
+
+    @Test
+    void parsesDoubles() {
+        assertEquals(1.5, JsonScalars.parseDouble(b("1.5")));
+        assertEquals(-2.5e-3, JsonScalars.parseDouble(b(" -2.5E-3 ")));
+        assertEquals(7.0, JsonScalars.parseDouble(b("7")));
+    }
+
+    @Test
+    void parsesBooleans() {
+        assertTrue(JsonScalars.parseBoolean(b("true")));
+        assertFalse(JsonScalars.parseBoolean(b(" false\r\n")));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseBoolean(b("True")));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseBoolean(b("1")));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.parseBoolean(b("truex")));
+    }
+
+    @Test
+    void writesWhatJacksonWrites() throws IOException {
+        long[] longs = {0, 1, -1, 9, 10, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long v : longs) {
+            assertArrayEquals(MAPPER.writeValueAsBytes(v), JsonScalars.bytes(v), Long.toString(v));
+            assertEquals(v, JsonScalars.parseLong(JsonScalars.bytes(v)));
+        }
+        double[] doubles = {0.0, -0.0, 1.5, -3.25, 1e-9, 1.0e7, Double.MAX_VALUE, Double.MIN_VALUE};
+        for (double v : doubles) {
+            assertArrayEquals(MAPPER.writeValueAsBytes(v), JsonScalars.bytes(v), Double.toString(v));
+            assertEquals(v, JsonScalars.parseDouble(JsonScalars.bytes(v)));
+        }
+        assertArrayEquals(MAPPER.writeValueAsBytes(true), JsonScalars.bytes(true));
+        assertArrayEquals(MAPPER.writeValueAsBytes(false), JsonScalars.bytes(false));
+    }
+
+    @Test
+    void booleanBytesAreACopy() {
+        JsonScalars.bytes(true)[0] = 'x';
+        assertArrayEquals(b("true"), JsonScalars.bytes(true));
+    }
+
+    @Test
+    void nanAndInfinityAreNotJson() {
+        assertThrows(NumberFormatException.class, () -> JsonScalars.bytes(Double.NaN));
+        assertThrows(NumberFormatException.class, () -> JsonScalars.bytes(Double.POSITIVE_INFINITY));
+    }
+}
@@ -0,0 +1,82 @@
+package net.rainbowcreation.storage.api.utils;
+
+import net.rainbowcreation.storage.api.annotations.QLQuery;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelAccessorsTest {
+    private static final ObjectMapper PLAIN = new ObjectMapper();
+    private static final ObjectMapper FAST = new ObjectMapper().registerModule(new ModelAccessors());
+
+    @QLQuery(namespace = "test")
+    public static class Model {
+        public String name = "a";
+        public Integer boxed;                              // null, written as null
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public String skipped;                             // null, left out
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        public List<String> empty = new ArrayList<>();     // empty, left out
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        public int zero;                                   // default, left out
+        @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
+        public Object typed = 5L;                          // carries type info
+        public Object dynamic = 2.5;                       // serializer picked per value
+        private long coins = 7;
+        public final String constant = "c";
+
+        public long getCoins() { return coins; }
+        public void setCoins(long coins) { this.coins = coins; }
+    }
+
+    @Test
+    void writesWhatJacksonWrites() throws Exception {
+        Model m = new Model();
+        assertEquals(PLAIN.writeValueAsString(m), FAST.writeValueAsString(m));
+        m.boxed = 3;
+        m.skipped = "s";
+        m.empty.add("e");
+        m.zero = 4;
+        m.dynamic = "text";
+        assertEquals(PLAIN.writeValueAsString(m), FAST.writeValueAsString(m));
+    }
+
+    @Test
+    void readsWhatJacksonReads() throws Exception {
+        Model m = new Model();
+        m.name = "b";
+        m.boxed = 9;
+        m.setCoins(42);
+        m.dynamic = "x";
+        String json = PLAIN.writeValueAsString(m);
+        Model plain = PLAIN.readValue(json, Model.class);
+        Model fast = FAST.readValue(json, Model.class);
+        assertEquals(PLAIN.writeValueAsString(plain), PLAIN.writeValueAsString(fast));
+        assertEquals(42, fast.getCoins());
+        assertEquals(9, fast.boxed);
+    }
+
+    @Test
+    void nullsInJsonAreSet() throws Exception {
+        Model fast = FAST.readValue("{\"name\":null,\"boxed\":null}", Model.class);
+        assertNull(fast.name);
+        assertNull(fast.boxed);
+    }
+
+    public static class NotAModel {
+        public int v = 1;
+    }
+
+    @Test
+    void classesWithoutQLQueryAreUntouched() throws Exception {
+        assertEquals(PLAIN.writeValueAsString(new NotAModel()), FAST.writeValueAsString(new NotAModel()));
+        assertEquals(3, FAST.readValue("{\"v\":3}", NotAModel.class).v);
+    }
+}
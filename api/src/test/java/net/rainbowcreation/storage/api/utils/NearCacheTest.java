@@ -0,0 +1,73 @@
+package net.rainbowcreation.storage.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTest {
+    private static byte[] v(String s) { return s.getBytes(StandardCharsets.UTF_8); }
+
+    @Test
+    void putThenGetCountsHitsAndMisses() {
+        NearCache c = new NearCache(10, 0);
+        assertNull(c.get("ns", "k"));
+        c.put("ns", "k", v("1"), c.stamp());
+        assertArrayEquals(v("1"), c.get("ns", "k"));
+        assertEquals(1, c.hits());
+        assertEquals(1, c.misses());
+    }
+
+    @Test
+    void readRacingAnInvalidationIsNotCached() {
+        NearCache c = new NearCache(10, 0);
+        long stamp = c.stamp();     // read starts
+        c.invalidate("ns", "other"); // any invalidation meanwhile
+        c.put("ns", "k", v("stale"), stamp);
+        assertNull(c.get("ns", "k"));
+    }
+
+    @Test
+    void entriesExpireAfterTheTtl() throws InterruptedException {
+        NearCache c = new NearCache(10, 30);
+        c.put("ns", "k", v("1"), c.stamp());
+        assertNotNull(c.get("ns", "k"));
+        Thread.sleep(60);
+        assertNull(c.get("ns", "k"));
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyReadEntry() {
+        NearCache c = new NearCache(2, 0);
+        c.put("ns", "a", v("a"), c.stamp());
+        c.put("ns", "b", v("b"), c.stamp());
+        c.get("ns", "a"); // a is now the most recent
+        c.put("ns", "c", v("c"), c.stamp());
+        assertNotNull(c.get("ns", "a"));
+        assertNull(c.get("ns", "b"));
+        assertNotNull(c.get("ns", "c"));
+    }
+
+    @Test
+    void invalidatesKeysAndWholeNamespaces() {
+        NearCache c = new NearCache(10, 0);
+        for (String ns : new String[]{"p", "pp"}) {
+            for (String k : new String[]{"1", "2", "3"}) c.put(ns, k, v(k), c.stamp());
+        }
+        c.invalidate("p", "1");
+        c.invalidate("p", Arrays.asList("2"));
+        assertNull(c.get("p", "1"));
+        assertNull(c.get("p", "2"));
+        assertNotNull(c.get("p", "3"));
+
+        c.invalidateNamespace("p"); // must not touch "pp"
+        assertNull(c.get("p", "3"));
+        assertNotNull(c.get("pp", "1"));
+
+        c.clear();
+        assertEquals(0, c.size());
+    }
+}
@@ -0,0 +1,177 @@
+package net.rainbowcreation.storage.api.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboxTest {
+    @TempDir
+    File dir;
+
+    private static Outbox.Record set(String key, String value) {
+        return new Outbox.Record(Outbox.SET, "ns", key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void await(CompletableFuture<?> f) throws Exception {
+        f.get(5, TimeUnit.SECONDS);
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void appendIsDurableAndRecoveredOnReopen() throws Exception {
+        File file = new File(dir, "outbox.log");
+        try (Outbox box = new Outbox(file)) {
+            await(box.append(set("a", "1")));
+            await(box.append(new Outbox.Record(Outbox.DELETE, "ns", "b", null)));
+            assertTrue(box.hasBacklog());
+            assertEquals(2, box.size());
+            assertTrue(file.length() > 0);
+        }
+        try (Outbox box = new Outbox(file)) {
+            assertEquals(2, box.size());
+            BlockingQueue<Outbox.Record> sent = new LinkedBlockingQueue<>();
+            box.drainTo(r -> {
+                sent.add(r);
+                return CompletableFuture.completedFuture(null);
+            }, () -> true, 1000);
+            Outbox.Record first = sent.poll(5, TimeUnit.SECONDS);
+            Outbox.Record second = sent.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            assertNotNull(second);
+            assertEquals(Outbox.SET, first.type);
+            assertEquals("a", first.key);
+            assertEquals("1", new String(first.value, StandardCharsets.UTF_8));
+            assertEquals(Outbox.DELETE, second.type);
+            assertEquals("b", second.key);
+            assertNull(second.value);
+        }
+    }
+
+    @Test
+    void replaysInAppendOrderAndTruncatesWhenDrained() throws Exception {
+        File file = new File(dir, "outbox.log");
+        try (Outbox box = new Outbox(file)) {
+            for (int i = 0; i < 50; i++) box.append(set("k", Integer.toString(i)));
+            List<String> sent = new ArrayList<>();
+            box.drainTo(r -> {
+                synchronized (sent) { sent.add(new String(r.value, StandardCharsets.UTF_8)); }
+                return CompletableFuture.completedFuture(null);
+            }, () -> true, 1000);
+            waitFor(() -> !box.hasBacklog());
+            synchronized (sent) {
+                assertEquals(50, sent.size());
+                for (int i = 0; i < 50; i++) assertEquals(Integer.toString(i), sent.get(i));
+            }
+            waitFor(() -> file.length() == 0);
+        }
+    }
+
+    @Test
+    void failedSendKeepsTheHeadAndRetries() throws Exception {
+        File file = new File(dir, "outbox.log");
+        try (Outbox box = new Outbox(file)) {
+            AtomicInteger attempts = new AtomicInteger();
+            List<String> sent = new ArrayList<>();
+            box.drainTo(r -> {
+                if (attempts.incrementAndGet() <= 2) return Futures.failed(new IOException("link down"));
+                synchronized (sent) { sent.add(r.key); }
+                return CompletableFuture.completedFuture(null);
+            }, () -> true, 20);
+            await(box.append(set("a", "1")));
+            await(box.append(set("b", "2")));
+            waitFor(() -> !box.hasBacklog());
+            synchronized (sent) {
+                assertEquals(2, sent.size());
+                assertEquals("a", sent.get(0));
+                assertEquals("b", sent.get(1));
+            }
+            assertTrue(attempts.get() >= 4);
+        }
+    }
+
+    @Test
+    void nothingIsReplayedWhileNotReady() throws Exception {
+        File file = new File(dir, "outbox.log");
+        try (Outbox box = new Outbox(file)) {
+            AtomicBoolean up = new AtomicBoolean();
+            AtomicInteger sent = new AtomicInteger();
+            box.drainTo(r -> {
+                sent.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            }, up::get, 20);
+            await(box.append(set("a", "1")));
+            Thread.sleep(100);
+            assertEquals(0, sent.get());
+            assertTrue(box.hasBacklog());
+            up.set(true);
+            waitFor(() -> !box.hasBacklog());
+            assertEquals(1, sent.get());
+        }
+    }
+
+    @Test
+    void drainedWaitsForTheBacklog() throws Exception {
+        File file = new File(dir, "outbox.log");
+        try (Outbox box = new Outbox(file)) {
+            assertTrue(box.drained().isDone());
+            AtomicBoolean up = new AtomicBoolean();
+            box.drainTo(r -> CompletableFuture.completedFuture(null), up::get, 20);
+            await(box.append(set("a", "1")));
+            CompletableFuture<Void> drained = box.drained();
+            Thread.sleep(50);
+            assertFalse(drained.isDone());
+            up.set(true);
+            await(drained);
+            assertFalse(box.hasBacklog());
+        }
+    }
+
+    @Test
+    void tornTailIsCutOnRecovery() throws Exception {
+        File file = new File(dir, "outbox.log");
+        try (Outbox box = new Outbox(file)) {
+            await(box.append(set("a", "1")));
+            await(box.append(set("b", "2")));
+        }
+        long intact = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(intact - 3); // crash in the middle of the second record
+        }
+        try (Outbox box = new Outbox(file)) {
+            assertEquals(1, box.size());
+        }
+        assertTrue(file.length() < intact - 3);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int b = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(b ^ 0xFF); // flipped bits: CRC mismatch
+        }
+        try (Outbox box = new Outbox(file)) {
+            assertEquals(0, box.size());
+        }
+        assertEquals(0, file.length());
+    }
+}
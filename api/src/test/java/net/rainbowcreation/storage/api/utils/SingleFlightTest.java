@@ -0,0 +1,131 @@
+package net.rainbowcreation.storage.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    @Test
+    void concurrentCallsShareOneRequest() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> remote = new CompletableFuture<>();
+
+        CompletableFuture<String> a = flight.run("k", () -> { calls.incrementAndGet(); return remote; });
+        CompletableFuture<String> b = flight.run("k", () -> { calls.incrementAndGet(); return remote; });
+        assertEquals(1, calls.get());
+        assertEquals(1, flight.inFlight());
+        assertEquals(1, flight.misses());
+        assertEquals(1, flight.hits());
+
+        remote.complete("v");
+        assertEquals("v", a.get());
+        assertEquals("v", b.get());
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void differentKeysDoNotShare() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        flight.run("a", () -> { calls.incrementAndGet(); return new CompletableFuture<>(); });
+        flight.run("b", () -> { calls.incrementAndGet(); return new CompletableFuture<>(); });
+        assertEquals(2, calls.get());
+        assertEquals(2, flight.inFlight());
+    }
+
+    @Test
+    void callAfterCompletionStartsANewRequest() throws Exception {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals(1, flight.run("k", () -> CompletableFuture.completedFuture(calls.incrementAndGet())).get());
+        assertEquals(2, flight.run("k", () -> CompletableFuture.completedFuture(calls.incrementAndGet())).get());
+    }
+
+    @Test
+    void failureReachesEveryCallerAndIsNotCached() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> remote = new CompletableFuture<>();
+        CompletableFuture<String> a = flight.run("k", () -> remote);
+        CompletableFuture<String> b = flight.run("k", () -> remote);
+        remote.completeExceptionally(new IllegalStateException("down"));
+        assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, a::get).getCause());
+        assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, b::get).getCause());
+        assertEquals("ok", flight.run("k", () -> CompletableFuture.completedFuture("ok")).get());
+    }
+
+    @Test
+    void supplierThatThrowsFailsTheFlight() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> f = flight.run("k", () -> { throw new IllegalArgumentException("bad"); });
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(ExecutionException.class, f::get).getCause());
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void forgetMakesLaterCallsStartFresh() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> before = new CompletableFuture<>();
+        CompletableFuture<String> a = flight.run("k", () -> before);
+        flight.forget("k"); // a write happened: later reads must not see the older result
+        CompletableFuture<String> b = flight.run("k", () -> CompletableFuture.completedFuture("new"));
+        assertEquals("new", b.get());
+        before.complete("old");
+        assertEquals("old", a.get());
+
+        flight.run("x", CompletableFuture::new);
+        flight.forgetAll();
+        assertEquals(0, flight.inFlight());
+    }
+
+    @Test
+    void cancellingOneCallerLeavesTheOthers() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> remote = new CompletableFuture<>();
+        CompletableFuture<String> a = flight.run("k", () -> remote);
+        CompletableFuture<String> b = flight.run("k", () -> remote);
+        a.cancel(false);
+        remote.complete("v");
+        assertTrue(a.isCancelled());
+        assertEquals("v", b.get());
+    }
+
+    @Test
+    void racingThreadsStartOneRequest() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> remote = new CompletableFuture<>();
+        int threads = 8;
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<CompletableFuture<String>> results = new CopyOnWriteArrayList<>();
+            CountDownLatch started = new CountDownLatch(threads);
+            for (int i = 0; i < threads; i++) {
+                pool.execute(() -> {
+                    try { go.await(); } catch (InterruptedException ignored) { }
+                    results.add(flight.run("k", () -> { calls.incrementAndGet(); return remote; }));
+                    started.countDown();
+                });
+            }
+            go.countDown();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            remote.complete("v");
+            for (CompletableFuture<String> r : results) assertEquals("v", r.get(5, TimeUnit.SECONDS));
+            assertEquals(1, calls.get());
+            assertEquals(threads - 1, flight.hits());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package net.rainbowcreation.storage.api.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBufferTest {
+    // Records every namespace batch; completes them at once unless told to hold them
+    private static final class RecordingSink implements WriteBuffer.Sink {
+        final List<String> batches = new CopyOnWriteArrayList<>();
+        final List<CompletableFuture<Void>> results = new CopyOnWriteArrayList<>();
+        volatile boolean hold;
+        volatile RuntimeException failure;
+
+        @Override
+        public CompletableFuture<Void> flush(String ns, Map<String, byte[]> sets, List<String> deletes) {
+            StringBuilder sb = new StringBuilder(ns).append(':');
+            sets.forEach((k, v) -> sb.append(k).append('=').append(new String(v, StandardCharsets.UTF_8)).append(' '));
+            for (String k : deletes) sb.append('-').append(k).append(' ');
+            batches.add(sb.toString().trim());
+            if (failure != null) return Futures.failed(failure);
+            CompletableFuture<Void> f = new CompletableFuture<>();
+            results.add(f);
+            if (!hold) f.complete(null);
+            return f;
+        }
+    }
+
+    private static byte[] v(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(CompletableFuture<?> f) throws Exception {
+        f.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void flushesEarlyOnceMaxKeysAreHeld() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        WriteBuffer buffer = new WriteBuffer(60_000, 3, sink, Runnable::run);
+        CompletableFuture<Void> a = buffer.put("ns", "a", v("1"));
+        buffer.put("ns", "b", v("2"));
+        assertTrue(sink.batches.isEmpty());
+        CompletableFuture<Void> c = buffer.put("ns", "c", v("3"));
+        await(a);
+        await(c);
+        assertEquals(1, sink.batches.size());
+        assertEquals("ns:a=1 b=2 c=3", sink.batches.get(0));
+    }
+
+    @Test
+    void flushesWhenTheWindowCloses() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        WriteBuffer buffer = new WriteBuffer(50, 1000, sink, Runnable::run);
+        long start = System.nanoTime();
+        CompletableFuture<Void> f = buffer.put("ns", "a", v("1"));
+        assertFalse(f.isDone());
+        await(f);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(1, sink.batches.size());
+    }
+
+    @Test
+    void lastWriteWinsAndDeletesAreBatched() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        WriteBuffer buffer = new WriteBuffer(60_000, 1000, sink, Runnable::run);
+        CompletableFuture<Void> first = buffer.put("ns", "a", v("1"));
+        CompletableFuture<Void> second = buffer.put("ns", "a", v("2"));
+        buffer.put("ns", "b", v("x"));
+        buffer.put("ns", "b", null);
+        buffer.put("other", "c", v("3"));
+        assertEquals(2, buffer.coalesced());
+        assertEquals(5, buffer.writes());
+
+        assertArrayEquals(v("2"), buffer.lookup("ns", "a").get());
+        assertEquals(Optional.empty(), buffer.lookup("ns", "b"));
+        assertNull(buffer.lookup("ns", "missing"));
+
+        await(buffer.flush());
+        assertTrue(first.isDone() && second.isDone());
+        assertEquals(2, sink.batches.size());
+        assertTrue(sink.batches.contains("ns:a=2 -b"));
+        assertTrue(sink.batches.contains("other:c=3"));
+        assertNull(buffer.lookup("ns", "a"));
+    }
+
+    @Test
+    void failureReachesEveryWriteInTheBatch() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.failure = new IllegalStateException("remote down");
+        WriteBuffer buffer = new WriteBuffer(60_000, 1000, sink, Runnable::run);
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        writes.add(buffer.put("ns", "a", v("1")));
+        writes.add(buffer.put("ns", "a", v("2"))); // folded into the same slot
+        writes.add(buffer.put("ns", "b", null));
+        CompletableFuture<Void> flushed = buffer.flush();
+        assertThrows(ExecutionException.class, () -> flushed.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Void> w : writes) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> w.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+
+        sink.failure = null; // a failed batch does not block the ones after it
+        CompletableFuture<Void> later = buffer.put("ns", "c", v("3"));
+        await(buffer.flush());
+        await(later);
+    }
+
+    @Test
+    void batchesGoOutOneAfterAnotherAndStayReadableUntilAcknowledged() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.hold = true;
+        WriteBuffer buffer = new WriteBuffer(60_000, 1000, sink, Runnable::run);
+        buffer.put("ns", "a", v("1"));
+        CompletableFuture<Void> first = buffer.flush();
+        buffer.put("ns", "a", v("2"));
+        CompletableFuture<Void> second = buffer.flush();
+
+        assertEquals(1, sink.batches.size()); // the second waits for the first to be acknowledged
+        assertArrayEquals(v("2"), buffer.lookup("ns", "a").get());
+        sink.results.get(0).complete(null);
+        await(first);
+        assertEquals(2, sink.batches.size());
+        assertArrayEquals(v("2"), buffer.lookup("ns", "a").get());
+        sink.results.get(1).complete(null);
+        await(second);
+        assertNull(buffer.lookup("ns", "a"));
+    }
+
+    @Test
+    void namespaceFlushOnlyWhenSomethingIsPending() throws Exception {
+        RecordingSink sink = new RecordingSink();
+        sink.hold = true;
+        WriteBuffer buffer = new WriteBuffer(60_000, 1000, sink, Runnable::run);
+        assertTrue(buffer.flush("ns").isDone());
+
+        buffer.put("ns", "a", v("1"));
+        CompletableFuture<Void> f = buffer.flush("ns");
+        assertEquals(1, sink.batches.size());
+        assertFalse(f.isDone());
+        assertFalse(buffer.flush("ns").isDone()); // still in flight: waits for the acknowledgement
+        assertTrue(buffer.flush("other").isDone());
+        sink.results.get(0).complete(null);
+        await(f);
+    }
+}
@@ -13,14 +13,34 @@ public class DataManager extends ADataManager {
         // Load Config
         this.dbName = config.getString("db", "main");
         this.token = config.getString("secret", "");
+        this.compressThreshold = config.getInt("compressThreshold", 1024);
+        this.maxInFlight = config.getInt("maxInFlight", 0);
+        this.ioThreads = config.getInt("ioThreads", 0);
+        this.virtualThreads = config.getBoolean("virtualThreads", true);
+        this.nearCacheSize = config.getInt("nearCache.size", 0);
+        this.nearCacheTtlMs = config.getLong("nearCache.ttlMs", 30000);
+        this.outboxFile = config.getString("outbox.file", "");
+        this.outboxRetryMs = config.getLong("outbox.retryMs", 2000);
+        this.writeCoalesceMs = config.getLong("writeCoalesce.windowMs", 0);
+        this.writeCoalesceMaxKeys = config.getInt("writeCoalesce.maxKeys", 512);
+        this.entityCache = config.getBoolean("entityCache", false);
+        this.valueCodec = config.getString("valueCodec", "json");
+        this.queryFallback = config.getBoolean("queryFallback", false);
+        this.queryScanLimit = config.getInt("queryScanLimit", 10000);
 
         // TCP Config
         this.tcpEnabled = config.getBoolean("tcp.enabled", false);
         this.tcpHost = config.getString("tcp.host", "127.0.0.1");
         this.tcpPort = config.getInt("tcp.port", 7071);
+        this.tcpNio = config.getBoolean("tcp.nio", false);
+        this.tcpTimeoutMs = config.getLong("tcp.timeoutMs", 10000);
+        this.tcpMaxInFlight = config.getInt("tcp.maxInFlight", 4096);
 
         // API Config
         this.apiBaseUrl = config.getString("api.url", "http://localhost:7070");
+        this.apiTransport = config.getString("api.transport", "nio");
+        this.apiMaxConnections = config.getInt("api.maxConnections", 8);
+        this.apiTimeoutMs = config.getLong("api.timeoutMs", 5000);
     }
 
     @Override